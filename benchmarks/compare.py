@@ -0,0 +1,63 @@
+import sys, json
+from getopt import getopt, GetoptError
+
+USAGE = """\
+Usage: python3 compare.py [--threshold=PCT] BASE.json NEW.json
+
+Print the score of every benchmark in the JMH result files BASE.json and
+NEW.json with the same parameters, and the change from BASE to NEW.  A
+benchmark whose score (time per operation) grew by more than PCT percent
+(default 10), and by more than the error margins of both runs, is marked
+as a regression, and the exit status is 1 if there are any.
+"""
+
+def load(name):
+    with open(name) as inp:
+        results = json.load(inp)
+    scores = {}
+    for result in results:
+        params = ",".join("{}={}".format(k, v)
+                          for k, v in sorted(result.get("params", {}).items()))
+        key = result["benchmark"].rsplit(".", 1)[-1]
+        if params:
+            key += "(" + params + ")"
+        metric = result["primaryMetric"]
+        scores[key] = (metric["score"], metric["scoreError"],
+                       metric["scoreUnit"])
+    return scores
+
+def main(args):
+    try:
+        opts, args = getopt(args, "", ["threshold="])
+    except GetoptError:
+        print(USAGE, file=sys.stderr)
+        sys.exit(2)
+    threshold = 10.0
+    for opt, val in opts:
+        if opt == "--threshold":
+            threshold = float(val)
+    if len(args) != 2:
+        print(USAGE, file=sys.stderr)
+        sys.exit(2)
+
+    base, new = load(args[0]), load(args[1])
+    regressions = 0
+    width = max([len(key) for key in base] + [9])
+    for key in sorted(base.keys() & new.keys()):
+        old_score, old_error, unit = base[key]
+        new_score, new_error, _ = new[key]
+        change = 100.0 * (new_score - old_score) / old_score
+        mark = ""
+        if change > threshold and \
+           new_score - new_error > old_score + old_error:
+            mark = "  REGRESSION"
+            regressions += 1
+        print("{:<{}}  {:>12.3f}  {:>12.3f} {:<6}  {:>+7.1f}%{}"
+              .format(key, width, old_score, new_score, unit, change, mark))
+    for key in sorted(base.keys() ^ new.keys()):
+        print("{:<{}}  only in {}".format(key, width,
+                                          args[0] if key in base else args[1]))
+    sys.exit(1 if regressions else 0)
+
+if __name__ == "__main__":
+    main(sys.argv[1:])
@@ -0,0 +1,38 @@
+package gitlet;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import static gitlet.Utils.*;
+
+/**
+ *  Runs a gitlet command like Main and then writes "WALL_NANOS PEAK_HEAP"
+ *  to the file named by the gitlet.measure property: the time the command
+ *  took, leaving out the start of the JVM, and the most heap in use at once
+ *  while it ran, in bytes. The file is written from a shutdown hook, since
+ *  many commands end with System.exit.
+ *
+ *  @author Collin Bowers
+ */
+public class MeasuredMain {
+
+    public static void main(String[] args) {
+        File output = new File(System.getProperty("gitlet.measure"));
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            long wallNanos = System.nanoTime() - start;
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+            writeContents(output, wallNanos + " " + peakHeap + "\n");
+        }));
+        Main.main(args);
+    }
+}
@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Measures the operations on the hot paths of gitlet against a synthetic
+ *  repository whose shape is given by the parameters, which can be changed
+ *  from the command line with -p, e.g. -p commits=1000 -p files=10000.
+ *  Each fork builds its own repository with SyntheticRepository, whose
+ *  contents are the same from run to run, and the run settings are fixed
+ *  here, so the scores of two runs on the same machine can be compared.
+ *
+ *  Commands print to a discarded stream while they are measured.
+ *
+ *  @author Collin Bowers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RepositoryBenchmark {
+
+    /** A synthetic repository with master checked out. */
+    @State(Scope.Benchmark)
+    public static class Repo {
+        @Param("100")
+        public int commits;
+
+        @Param("1000")
+        public int files;
+
+        @Param("1024")
+        public int fileSize;
+
+        @Param("2")
+        public int branches;
+
+        @Param("0")
+        public int crosses;
+
+        File dir;
+        PrintStream stdout;
+        Commit head;
+        String headSHA1;
+        String otherSHA1;
+        String blobContents;
+        boolean onMaster = true;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            dir = SyntheticRepository.enter();
+            stdout = System.out;
+            new SyntheticRepository(commits, files, fileSize, Math.max(1, branches), crosses).generate();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            headSHA1 = Commit.getHeadCommitSHA1();
+            head = Commit.loadCommit(headSHA1);
+            otherSHA1 = Branch.loadBranch(SyntheticRepository.branchName(0)).getCommitSHA1();
+            blobContents = Blob.loadBlob(head.getTrackedFiles().id(0).name()).getContents();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            System.setOut(stdout);
+            SyntheticRepository.delete(dir);
+        }
+    }
+
+    /** The repository above, put back on its original master head before
+     *  each merge. */
+    @State(Scope.Benchmark)
+    public static class MergeRepo extends Repo {
+        @Setup(Level.Invocation)
+        public void resetMaster() {
+            if (!Commit.getHeadCommitSHA1().equals(headSHA1)) {
+                Repository.reset(headSHA1);
+            }
+        }
+    }
+
+    @Benchmark
+    public String saveCommit(Repo repo) {
+        Commit commit = new Commit(repo.head.getMessage(), repo.head.getDate(), repo.head.getParentSHA1(), null);
+        commit.setTrackedFiles(repo.head.getTrackedFiles());
+        return commit.saveCommit();
+    }
+
+    @Benchmark
+    public Commit loadCommit(Repo repo) {
+        return Commit.loadCommit(repo.headSHA1);
+    }
+
+    @Benchmark
+    public String hashBlob(Repo repo) {
+        return sha1(repo.blobContents);
+    }
+
+    @Benchmark
+    public byte[] serializeCommit(Repo repo) {
+        return serialize(repo.head);
+    }
+
+    @Benchmark
+    public void log(Repo repo) {
+        Repository.log();
+    }
+
+    @Benchmark
+    public String findLCA(Repo repo) {
+        return Repository.latestCommonAncestor(repo.headSHA1, repo.otherSHA1);
+    }
+
+    @Benchmark
+    public void merge(MergeRepo repo) {
+        Repository.merge(SyntheticRepository.branchName(0));
+    }
+
+    @Benchmark
+    public void checkoutBranch(Repo repo) {
+        Repository.checkoutBranch(repo.onMaster ? SyntheticRepository.branchName(0) : "master");
+        repo.onMaster = !repo.onMaster;
+    }
+
+    @Benchmark
+    public void status(Repo repo) {
+        Repository.status();
+    }
+}
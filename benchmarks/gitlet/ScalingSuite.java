@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Checks that commands scale linearly with the size of the repository.
+ *  For each of the two dimensions of a synthetic repository, the length of
+ *  its history and the number of its files, this builds repositories at each
+ *  scale (1x, 10x and 100x by default) with SyntheticRepository, keeping the
+ *  other dimension at its base size, and runs log, global-log, find,
+ *  checkout, merge, fetch and push on them. Every command runs in its own
+ *  JVM, as it would from the command line, through MeasuredMain, and the
+ *  best wall time and the largest peak heap of RUNS runs are kept.
+ *
+ *  Between consecutive scales, a command's growth is the exponent e for
+ *  which its measurement grew by the scale ratio to the power e, so 1 is
+ *  linear and 2 quadratic. The suite fails if any growth is above the
+ *  allowed maximum. Measurements below a floor are left out of the check,
+ *  since they are mostly fixed costs and noise.
+ *
+ *  Options, each given as --NAME=VALUE:
+ *    commits, files, file-size, branches, crosses: the base shape of the
+ *        repository, as for SyntheticRepository (20, 20, 1024, 2, 2).
+ *    scales: comma-separated scale factors (1,10,100).
+ *    runs: runs of each command per repository (3).
+ *    max-growth: the largest growth allowed (1.25).
+ *    min-millis, min-heap-mb: the floors for the check (50, 64).
+ *    keep: keep the repositories instead of deleting them (false).
+ *
+ *  @author Collin Bowers
+ */
+public class ScalingSuite {
+
+    private static final String[] COMMANDS = {"log", "global-log", "find", "checkout", "merge", "fetch", "push"};
+    private static final String[] DIMENSIONS = {"commits", "files"};
+
+    private final Map<String, String> options;
+    private final int[] scales;
+    private final int runs;
+    private final String classPath;
+    private File root;
+
+    /** Measurements of one command on one repository. */
+    private static class Measurement {
+        private long wallNanos = Long.MAX_VALUE;
+        private long peakHeap;
+    }
+
+    private ScalingSuite(Map<String, String> options) {
+        this.options = options;
+        this.scales = Arrays.stream(option("scales", "1,10,100").split(",")).mapToInt(Integer::parseInt).toArray();
+        this.runs = Integer.parseInt(option("runs", "3"));
+        StringJoiner classPath = new StringJoiner(File.pathSeparator);
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        this.classPath = classPath.toString();
+    }
+
+    public static void main(String[] args) {
+        TreeMap<String, String> options = new TreeMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                System.out.println("Usage: java gitlet.ScalingSuite [--NAME=VALUE ...]");
+                System.exit(2);
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals < 0 ? arg.length() : equals),
+                    equals < 0 ? "true" : arg.substring(equals + 1));
+        }
+        System.exit(new ScalingSuite(options).run() ? 0 : 1);
+    }
+
+    /** Return the value of option NAME, or DEFAULTVALUE if it was not given. */
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    /** Measure every command at every scale of both dimensions, print the
+     *  results and return true if every growth is allowed. */
+    private boolean run() {
+        try {
+            root = Files.createTempDirectory("gitlet-scaling").toFile();
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+        boolean passed = true;
+        try {
+            for (String dimension : DIMENSIONS) {
+                ArrayList<Map<String, Measurement>> results = new ArrayList<>();
+                for (int scale : scales) {
+                    results.add(measureAll(dimension, scale));
+                }
+                passed &= report(dimension, results);
+            }
+        } finally {
+            if (!Boolean.parseBoolean(option("keep", "false"))) {
+                SyntheticRepository.delete(root);
+            }
+            else {
+                System.out.println("Repositories kept in " + root);
+            }
+        }
+        System.out.println(passed ? "Every command scaled linearly." : "Some commands grew super-linearly.");
+        return passed;
+    }
+
+    /** Build the repository with DIMENSION at SCALE times its base size and
+     *  return the measurements of every command on it. */
+    private Map<String, Measurement> measureAll(String dimension, int scale) {
+        int commits = Integer.parseInt(option("commits", "20"));
+        int files = Integer.parseInt(option("files", "20"));
+        if (dimension.equals("commits")) {
+            commits *= scale;
+        }
+        else {
+            files *= scale;
+        }
+        File repo = join(root, dimension + "-" + scale, "origin");
+        repo.mkdirs();
+        System.out.printf("Building %d commits of %d files in %s%n", commits, files, repo);
+        exec(repo, "gitlet.SyntheticRepository", String.valueOf(commits), String.valueOf(files),
+                option("file-size", "1024"), option("branches", "2"), option("crosses", "2"));
+        String masterSHA1 = readContentsAsString(join(repo, ".gitlet", "refs", "heads", "master")).strip();
+
+        TreeMap<String, Measurement> results = new TreeMap<>();
+        for (String command : COMMANDS) {
+            Measurement measurement = new Measurement();
+            for (int i = 0; i < runs; i += 1) {
+                switch (command) {
+                    case "find":
+                        measure(measurement, repo, "find", "commit 1 on master");
+                        break;
+                    case "checkout":
+                        measure(measurement, repo, "checkout", SyntheticRepository.branchName(0));
+                        gitlet(repo, "checkout", "master");
+                        break;
+                    case "merge":
+                        measure(measurement, repo, "merge", SyntheticRepository.branchName(0));
+                        gitlet(repo, "reset", masterSHA1);
+                        break;
+                    case "fetch":
+                        File fetched = emptyRepository(repo, "fetch-" + i);
+                        gitlet(fetched, "add-remote", "origin", join(repo, ".gitlet").getPath());
+                        measure(measurement, fetched, "fetch", "origin", "master");
+                        break;
+                    case "push":
+                        File pushed = emptyRepository(repo, "push-" + i);
+                        gitlet(repo, "add-remote", pushed.getName(), join(pushed, ".gitlet").getPath());
+                        measure(measurement, repo, "push", pushed.getName(), "master");
+                        gitlet(repo, "rm-remote", pushed.getName());
+                        break;
+                    default:
+                        measure(measurement, repo, command);
+                        break;
+                }
+            }
+            results.put(command, measurement);
+        }
+        return results;
+    }
+
+    /** Return a new repository named NAME next to REPO with nothing but its
+     *  initial commit. */
+    private File emptyRepository(File repo, String name) {
+        File dir = join(repo.getParentFile(), name);
+        dir.mkdirs();
+        gitlet(dir, "init");
+        return dir;
+    }
+
+    /** Run the gitlet command ARGS in DIR, keeping its best wall time and
+     *  largest peak heap in MEASUREMENT. */
+    private void measure(Measurement measurement, File dir, String... args) {
+        File output = join(root, "measurement");
+        ArrayList<String> command = new ArrayList<>();
+        command.add("-Dgitlet.measure=" + output.getAbsolutePath());
+        command.add("gitlet.MeasuredMain");
+        command.addAll(Arrays.asList(args));
+        exec(dir, command.toArray(new String[0]));
+        String[] fields = readContentsAsString(output).strip().split(" ");
+        measurement.wallNanos = Math.min(measurement.wallNanos, Long.parseLong(fields[0]));
+        measurement.peakHeap = Math.max(measurement.peakHeap, Long.parseLong(fields[1]));
+        output.delete();
+    }
+
+    /** Run the gitlet command ARGS in DIR without measuring it. */
+    private void gitlet(File dir, String... args) {
+        String[] command = new String[args.length + 1];
+        command[0] = "gitlet.Main";
+        System.arraycopy(args, 0, command, 1, args.length);
+        exec(dir, command);
+    }
+
+    /** Run java with ARGS in DIR on the class path of this JVM, failing if it
+     *  does not exit normally. */
+    private void exec(File dir, String... args) {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(join(new File(System.getProperty("java.home")), "bin", "java").getPath());
+        command.addAll(List.of("-Xmx2g", "-XX:+UseSerialGC", "-cp", classPath));
+        command.addAll(Arrays.asList(args));
+        try {
+            Process process = new ProcessBuilder(command).directory(dir)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Failed in " + dir + ": " + String.join(" ", args));
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Print the measurements in RESULTS, one map per scale, of the repositories
+     *  grown along DIMENSION, and return true if every growth is allowed. */
+    private boolean report(String dimension, List<Map<String, Measurement>> results) {
+        double maxGrowth = Double.parseDouble(option("max-growth", "1.25"));
+        long minNanos = Long.parseLong(option("min-millis", "50")) * 1_000_000;
+        long minHeap = Long.parseLong(option("min-heap-mb", "64")) << 20;
+        boolean passed = true;
+
+        System.out.printf("%nScaling %s:%n%-12s", dimension, "");
+        for (int scale : scales) {
+            System.out.printf("  %7dx ms  %4dx MB", scale, scale);
+        }
+        System.out.printf("  %s%n", "growth (time, heap)");
+        for (String command : COMMANDS) {
+            System.out.printf("%-12s", command);
+            for (Map<String, Measurement> result : results) {
+                Measurement measurement = result.get(command);
+                System.out.printf("  %11.1f  %8.1f", measurement.wallNanos / 1e6, measurement.peakHeap / 1048576.0);
+            }
+            StringJoiner growths = new StringJoiner(" ");
+            for (int i = 1; i < scales.length; i += 1) {
+                Measurement before = results.get(i - 1).get(command);
+                Measurement after = results.get(i).get(command);
+                double ratio = Math.log((double) scales[i] / scales[i - 1]);
+                double timeGrowth = Math.log((double) after.wallNanos / before.wallNanos) / ratio;
+                double heapGrowth = Math.log((double) after.peakHeap / before.peakHeap) / ratio;
+                boolean slow = before.wallNanos >= minNanos && timeGrowth > maxGrowth;
+                boolean large = before.peakHeap >= minHeap && heapGrowth > maxGrowth;
+                growths.add(String.format("%.2f%s,%.2f%s", timeGrowth, slow ? "!" : "", heapGrowth, large ? "!" : ""));
+                passed &= !slow && !large;
+            }
+            System.out.printf("  %s%n", growths);
+        }
+        return passed;
+    }
+}
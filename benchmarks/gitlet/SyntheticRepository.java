@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ *  Builds a repository of a given shape in the working directory through the
+ *  Repository API, for benchmarks to run commands against. The master branch
+ *  gets COMMITS commits over FILES files of about FILESIZE bytes, spread over
+ *  directories of DIR_SIZE files each. Halfway through its history BRANCHES
+ *  branches named branch-0, branch-1, ... fork off, and each then gets as
+ *  many commits as master gets after the fork. Every commit changes about one
+ *  percent of the files, and master and each branch only change files of
+ *  their own, so any branch merges into master without conflicts.
+ *
+ *  With CROSSES above zero, the history after the fork is split into
+ *  CROSSES + 1 rounds, and each round but the last ends with a criss-cross
+ *  merge between master and every branch: both merge the head the other had
+ *  before either merge. Each round changes a different slice of every
+ *  side's files, since a merge of a file changed again after it was last
+ *  merged would otherwise conflict against the first-parent ancestor.
+ *  There are at most as many crosses as leave every round a commit.
+ *
+ *  Contents come from a generator seeded with SEED, so two repositories of
+ *  the same shape hold the same files and histories and only differ in their
+ *  commit dates.
+ *
+ *  Gitlet finds its repository through the user.dir property when the
+ *  Repository class is first used, so a process can only work in one
+ *  repository, and enter must be called before anything else in gitlet.
+ *  Run as a program, with the arguments COMMITS FILES FILESIZE BRANCHES
+ *  [CROSSES], this builds the repository in the current directory.
+ *
+ *  @author Collin Bowers
+ */
+public class SyntheticRepository {
+
+    public static final long SEED = 61;
+    private static final int DIR_SIZE = 100;
+
+    private final int commits;
+    private final int files;
+    private final int fileSize;
+    private final int branches;
+    private final int crosses;
+    private final Random random = new Random(SEED);
+
+    public SyntheticRepository(int commits, int files, int fileSize, int branches, int crosses) {
+        this.commits = Math.max(1, commits);
+        this.files = Math.max(branches + 1, files);
+        this.fileSize = fileSize;
+        this.branches = branches;
+        int after = this.commits - 1 - (this.commits - 1) / 2;
+        this.crosses = (branches == 0) ? 0 : Math.max(0, Math.min(crosses, after - 1));
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            System.out.println("Usage: java gitlet.SyntheticRepository COMMITS FILES FILESIZE BRANCHES [CROSSES]");
+            System.exit(1);
+        }
+        int crosses = (args.length == 5) ? Integer.parseInt(args[4]) : 0;
+        new SyntheticRepository(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), crosses).generate();
+    }
+
+    /** Create an empty directory and make it the working directory gitlet
+     *  will use, returning it. */
+    public static File enter() {
+        try {
+            File dir = Files.createTempDirectory("gitlet-bench").toFile().getCanonicalFile();
+            System.setProperty("user.dir", dir.getPath());
+            if (!Repository.CWD.equals(dir)) {
+                throw new IllegalStateException("gitlet was used before entering " + dir);
+            }
+            return dir;
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Delete DIR and everything in it. */
+    public static void delete(File dir) {
+        try {
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path path, IOException excp) throws IOException {
+                    Files.delete(path);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Initialize the repository in the working directory and build its
+     *  history, leaving master checked out. */
+    public void generate() {
+        Repository.init();
+        for (int i = 0; i < files; i += 1) {
+            write(i, content());
+            Repository.add(path(i));
+        }
+        Repository.commit("commit 0 on master", null);
+
+        int fork = (commits - 1) / 2;
+        for (int n = 1; n <= fork; n += 1) {
+            commit("master", 0, 0, n);
+        }
+        for (int b = 0; b < branches; b += 1) {
+            Repository.branch(branchName(b));
+        }
+
+        int rounds = crosses + 1;
+        int after = commits - 1 - fork;
+        for (int round = 0; round < rounds; round += 1) {
+            int first = fork + 1 + after * round / rounds;
+            int last = fork + after * (round + 1) / rounds;
+            for (int n = first; n <= last; n += 1) {
+                commit("master", 0, round, n);
+            }
+            for (int b = 0; b < branches; b += 1) {
+                Repository.checkoutBranch(branchName(b));
+                for (int n = first; n <= last; n += 1) {
+                    commit(branchName(b), b + 1, round, n);
+                }
+                Repository.checkoutBranch("master");
+            }
+            if (round < crosses) {
+                for (int b = 0; b < branches; b += 1) {
+                    crissCross(branchName(b));
+                }
+            }
+        }
+    }
+
+    /** Merge the heads of master and BRANCH into each other, starting on master. */
+    private static void crissCross(String branch) {
+        Repository.branch("cross-master");
+        Repository.checkoutBranch(branch);
+        Repository.branch("cross-branch");
+        Repository.merge("cross-master");
+        Repository.checkoutBranch("master");
+        Repository.merge("cross-branch");
+        Repository.removeBranch("cross-master");
+        Repository.removeBranch("cross-branch");
+    }
+
+    /** Return the name of the B-th branch. */
+    public static String branchName(int b) {
+        return "branch-" + b;
+    }
+
+    /** Change about one percent of the files in PART, the files whose index
+     *  is PART modulo BRANCHES + 1, choosing them from the slice of PART for
+     *  ROUND, and commit them as commit number N on BRANCH. */
+    private void commit(String branch, int part, int round, int n) {
+        int parts = branches + 1;
+        int partSize = (files - part + parts - 1) / parts;
+        int sliceStart = partSize * round / (crosses + 1);
+        int sliceSize = Math.max(1, partSize * (round + 1) / (crosses + 1) - sliceStart);
+        int changes = Math.max(1, files / 100);
+        for (int c = 0; c < changes; c += 1) {
+            int i = part + Math.min(partSize - 1, sliceStart + random.nextInt(sliceSize)) * parts;
+            write(i, content());
+            Repository.add(path(i));
+        }
+        Repository.commit("commit " + n + " on " + branch, null);
+    }
+
+    /** Return the path of the I-th file. */
+    private static String path(int i) {
+        return String.format("dir%03d/file%05d.txt", i / DIR_SIZE, i);
+    }
+
+    /** Write CONTENTS to the I-th file. */
+    private static void write(int i, String contents) {
+        WorkingTree.writeFile(path(i), contents);
+    }
+
+    /** Return about FILESIZE bytes of random lines ending with a newline. */
+    private String content() {
+        StringBuilder contents = new StringBuilder(fileSize + 64);
+        while (contents.length() < fileSize) {
+            contents.append("line ").append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        return contents.toString();
+    }
+}
@@ -1,7 +1,15 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import static gitlet.Utils.*;
 
 /**
@@ -9,14 +17,32 @@ import static gitlet.Utils.*;
  *  saving and loading blobs and retrieving various
  *  information about them.
  *
+ *  A file larger than LARGE_FILE_THRESHOLD bytes is not held as a string.
+ *  Its bytes are cut into chunks by Chunker, each chunk is stored once as
+ *  an object of its own, and the blob, stored as a manifest, only lists
+ *  them, so versions of a large file share every chunk an edit did not
+ *  touch. Such a file is checked out by streaming its chunks into place.
+ *
  *  @author Collin Bowers
  */
 public class Blob implements Serializable {
 
+    /** The ID Blob had before large files were chunked, so that blobs
+     *  stored then still load, with no chunks. */
+    private static final long serialVersionUID = -7430622308350835377L;
     public static final File BLOBS_DIR = join(Repository.OBJECTS_DIR, "blobs");
+    public static final File MANIFESTS_DIR = join(Repository.OBJECTS_DIR, Pack.MANIFEST);
+    public static final File CHUNKS_DIR = join(Repository.OBJECTS_DIR, Pack.CHUNK);
+    /** Files of more than this many bytes are stored in chunks. Set by
+     *  GITLET_LARGE_FILE_THRESHOLD; a negative value turns chunking off. */
+    public static final long LARGE_FILE_THRESHOLD = largeFileThreshold();
+    private static final long DEFAULT_LARGE_FILE_THRESHOLD = 8L << 20;
     private String name;
     private String contents;
     private String sha1;
+    /** The SHA1 IDs of the chunks of a large file in order, or null, as
+     *  in every blob stored before large files were chunked. */
+    private ArrayList<String> chunkSHA1s;
 
 
     public Blob(String fileName, String contents, String sha1) {
@@ -25,6 +51,75 @@ public class Blob implements Serializable {
         this.sha1 = sha1;
     }
 
+    private Blob(String fileName, String sha1, ArrayList<String> chunkSHA1s) {
+        this.name = fileName;
+        this.sha1 = sha1;
+        this.chunkSHA1s = chunkSHA1s;
+    }
+
+    /** Return a blob of FILE, a file of more than LARGE_FILE_THRESHOLD bytes
+     *  to be tracked as FILENAME, storing each of its chunks that is not
+     *  already stored. A file stored before is not read a second time. */
+    public static Blob fromLargeFile(String fileName, File file) {
+        String sha1 = Hasher.hashFile(file).name();
+        byte[] stored = Pack.readObjectBytes(Repository.GITLET_DIR, Pack.MANIFEST, sha1);
+        if (stored != null) {
+            return deserialize(stored, Blob.class).withName(fileName);
+        }
+        ArrayList<String> chunkSHA1s = new ArrayList<>();
+        CHUNKS_DIR.mkdirs();
+        try (Trace span = Trace.span("chunkFile");
+             InputStream in = new FileInputStream(file)) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                String chunkSHA1 = chunkSHA1(chunk);
+                if (!Pack.hasObject(Repository.GITLET_DIR, Pack.CHUNK, chunkSHA1)) {
+                    writeContents(join(CHUNKS_DIR, chunkSHA1), (Object) chunk);
+                }
+                chunkSHA1s.add(chunkSHA1);
+            }
+        } catch (IOException excp) {
+            throw error("Unable to read %s: %s", fileName, excp.getMessage());
+        }
+        return new Blob(fileName, sha1, chunkSHA1s);
+    }
+
+    /** Return the blob of a large file tracked as FILENAME whose contents,
+     *  with the given SHA1 ID, are held by the chunks CHUNKSHA1S in order. */
+    static Blob ofChunks(String fileName, String sha1, List<String> chunkSHA1s) {
+        return new Blob(fileName, sha1, new ArrayList<>(chunkSHA1s));
+    }
+
+    /** Return the ID a chunk holding BYTES is stored under. The length is
+     *  hashed ahead of the bytes so that a chunk never has the ID of a
+     *  blob with the same contents. */
+    public static String chunkSHA1(byte[] bytes) {
+        Hasher hasher = Hasher.start();
+        hasher.update("chunk " + bytes.length + "\0");
+        hasher.update(bytes);
+        return hasher.finish().name();
+    }
+
+    /** Return the number of bytes above which files are stored in chunks. */
+    private static long largeFileThreshold() {
+        String threshold = System.getenv("GITLET_LARGE_FILE_THRESHOLD");
+        if (threshold == null || threshold.isEmpty()) {
+            return DEFAULT_LARGE_FILE_THRESHOLD;
+        }
+        try {
+            long value = Long.parseLong(threshold);
+            return (value < 0) ? Long.MAX_VALUE : value;
+        } catch (NumberFormatException excp) {
+            return DEFAULT_LARGE_FILE_THRESHOLD;
+        }
+    }
+
+    /** Return this blob as the contents of the file FILENAME. */
+    public Blob withName(String fileName) {
+        return (chunkSHA1s == null) ? new Blob(fileName, contents, sha1)
+                : new Blob(fileName, sha1, chunkSHA1s);
+    }
+
     public String getName() {
         return name;
     }
@@ -33,13 +128,75 @@ public class Blob implements Serializable {
         return sha1;
     }
 
+    /** Return true if this blob, as read back, records SHA1 as its ID and,
+     *  unless it is chunked, its contents hash to SHA1. The chunks of a
+     *  chunked blob have to be hashed separately. */
+    boolean hasId(String sha1) {
+        return sha1.equals(this.sha1) && (chunkSHA1s != null || sha1.equals(sha1(contents)));
+    }
+
+    /** Return true if this blob is a large file stored in chunks. */
+    public boolean isChunked() {
+        return chunkSHA1s != null;
+    }
+
+    /** Return the SHA1 IDs of the chunks of this blob in order, which is
+     *  empty unless it is chunked. */
+    public List<String> getChunkSHA1s() {
+        return (chunkSHA1s == null) ? Collections.emptyList() : chunkSHA1s;
+    }
+
+    /** Return the contents of this blob. A chunked blob is read into memory
+     *  whole, so code that only writes it out should use writeTo. */
     public String getContents() {
-        return contents;
+        if (chunkSHA1s == null) {
+            return contents;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (String chunkSHA1 : chunkSHA1s) {
+            bytes.writeBytes(readChunk(chunkSHA1));
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Write the contents of this blob to FILE, one chunk at a time if it
+     *  is chunked. */
+    public void writeTo(File file) {
+        if (chunkSHA1s == null) {
+            writeContents(file, contents);
+            return;
+        }
+        try (Trace span = Trace.span("writeChunks");
+             OutputStream out = new FileOutputStream(file)) {
+            for (String chunkSHA1 : chunkSHA1s) {
+                out.write(readChunk(chunkSHA1));
+            }
+        } catch (IOException excp) {
+            throw error("Unable to write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the bytes of the chunk with the given SHA1 ID. */
+    private static byte[] readChunk(String chunkSHA1) {
+        byte[] chunk = Pack.readObjectBytes(Repository.GITLET_DIR, Pack.CHUNK, chunkSHA1);
+        if (chunk == null) {
+            throw error("Chunk %s is missing.", chunkSHA1);
+        }
+        return chunk;
     }
 
+    /** Save this blob, a chunked one as a manifest, unless the same
+     *  contents are already stored the other way. */
     public void saveBlob() {
-        File blobToBeSaved = new File(BLOBS_DIR, sha1);
-        writeObject(blobToBeSaved, this);
+        if (chunkSHA1s == null) {
+            if (!Pack.hasObject(Repository.GITLET_DIR, Pack.MANIFEST, sha1)) {
+                writeObject(new File(BLOBS_DIR, sha1), this);
+            }
+        }
+        else if (!Pack.hasObject(Repository.GITLET_DIR, Pack.BLOB, sha1)) {
+            MANIFESTS_DIR.mkdirs();
+            writeObject(new File(MANIFESTS_DIR, sha1), this);
+        }
     }
 
     public static Blob loadBlob(String sha1) {
@@ -47,15 +204,53 @@ public class Blob implements Serializable {
             return null;
         }
 
-        File blobToBeLoaded = new File(BLOBS_DIR, sha1);
-        Blob loadedBlob = readObject(blobToBeLoaded, Blob.class);
-        return loadedBlob;
+        byte[] serializedBlob = readBlobBytes(Repository.GITLET_DIR, sha1);
+        if (serializedBlob == null && Remote.fetchPromisedObjects(Collections.singletonList(new String[] {Pack.BLOB, sha1}))) {
+            serializedBlob = readBlobBytes(Repository.GITLET_DIR, sha1);
+        }
+        if (serializedBlob == null) {
+            throw error("Blob %s is missing.", sha1);
+        }
+        return deserialize(serializedBlob, Blob.class);
     }
 
     public static Blob loadRemoteBlob(String sha1, File remotePath) {
-        File remoteBlobPath = join(remotePath, "objects", "blobs", sha1);
-        Blob remoteBlob = readObject(remoteBlobPath, Blob.class);
-        return remoteBlob;
+        byte[] serializedBlob = readBlobBytes(remotePath, sha1);
+        if (serializedBlob == null) {
+            throw error("Blob %s is missing from %s.", sha1, remotePath);
+        }
+        return deserialize(serializedBlob, Blob.class);
+    }
+
+    /** Return the stored blob or manifest with the given SHA1 ID from the
+     *  repository at GITLETDIR, or null if it has neither. */
+    private static byte[] readBlobBytes(File gitletDir, String sha1) {
+        byte[] serializedBlob = Pack.readObjectBytes(gitletDir, Pack.BLOB, sha1);
+        if (serializedBlob == null) {
+            serializedBlob = Pack.readObjectBytes(gitletDir, Pack.MANIFEST, sha1);
+        }
+        return serializedBlob;
+    }
+
+    /** Return true if the repository at GITLETDIR stores the blob with the
+     *  given SHA1 ID, as a blob or a manifest. */
+    public static boolean hasBlob(File gitletDir, String sha1) {
+        return Pack.hasObject(gitletDir, Pack.BLOB, sha1) || Pack.hasObject(gitletDir, Pack.MANIFEST, sha1);
+    }
+
+    /** Fetch every one of the given blobs that a partial clone left on its
+     *  remote in a single transfer, so that loading them afterwards is local. */
+    public static void prefetchBlobs(Collection<String> sha1s) {
+        if (!Remote.PROMISOR_FILE.isFile()) {
+            return;
+        }
+        ArrayList<String[]> missing = new ArrayList<>();
+        for (String sha1 : new TreeSet<>(sha1s)) {
+            if (!hasBlob(Repository.GITLET_DIR, sha1)) {
+                missing.add(new String[] {Pack.BLOB, sha1});
+            }
+        }
+        Remote.fetchPromisedObjects(missing);
     }
 
     /** Return the given filename without its file extension. */
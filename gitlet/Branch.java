@@ -2,6 +2,8 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import static gitlet.Utils.*;
 
 /**
@@ -9,11 +11,47 @@ import static gitlet.Utils.*;
  *  for creating branches, updating which commit they point to, and
  *  changing which branch the HEAD pointer points to.
  *
+ *  Each branch is stored as a plain text file under refs/heads holding the
+ *  SHA1 ID of its head commit, and HEAD holds the line "ref: refs/heads/NAME".
+ *  Branches can also be collected into a single packed-refs file with one
+ *  "SHA1 refs/heads/NAME" line per branch, which is read once per command;
+ *  a loose branch file takes precedence over a packed entry of the same name.
+ *
+ *  The first version of Gitlet stored each branch as a serialized Branch and
+ *  HEAD as a serialized File naming the branch file. Such a repository is
+ *  rewritten in the current format by upgradeRefs the first time it is used,
+ *  which is the only reason Branch is still Serializable.
+ *
  *  @author Collin Bowers
  */
 public class Branch implements Serializable {
+    private static final long serialVersionUID = 9102182768697185374L;
     public static final File REFS_DIR = join(Repository.GITLET_DIR, "refs");
     public static final File HEADS_DIR = join(REFS_DIR, "heads");
+    public static final File HEAD_FILE = join(Repository.GITLET_DIR, "HEAD");
+    public static final File PACKED_REFS = join(Repository.GITLET_DIR, "packed-refs");
+    private static final String HEADS_PREFIX = "refs/heads/";
+    private static final String SYMBOLIC_PREFIX = "ref: ";
+    /** The first two bytes of a serialized object. */
+    private static final int SERIALIZED_MAGIC = 0xACED;
+
+    /** Packed branches that have been read, keyed by packed-refs path. Each is
+     *  read again only if the file has changed since, as in a running server. */
+    private static final ConcurrentHashMap<File, PackedRefs> PACKED = new ConcurrentHashMap<>();
+
+    /** The branches of one packed-refs file and the file's size and modification time. */
+    private static class PackedRefs {
+        private final long lastModified;
+        private final long length;
+        private final TreeMap<String, String> refs;
+
+        PackedRefs(long lastModified, long length, TreeMap<String, String> refs) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.refs = refs;
+        }
+    }
+
     private String branchName;
     private String commitID;
 
@@ -30,51 +68,194 @@ public class Branch implements Serializable {
         return commitID;
     }
 
-    public void createBranch() {
-        File branchToBeSaved = new File(HEADS_DIR, branchName);
-        writeObject(branchToBeSaved, this);
+    /** Return the branch with the given name, or null if there is no such branch. */
+    public static Branch loadBranch(String branchName) {
+        String commitSHA1 = readRef(Repository.GITLET_DIR, branchName);
+        return (commitSHA1 == null) ? null : new Branch(branchName, commitSHA1);
     }
 
-    public static Branch loadBranch(File branchToBeLoaded) {
-        return readObject(branchToBeLoaded, Branch.class);
+    /** Rewrite HEAD and the branches of the repository at GITLETDIR as text
+     *  if the first version of Gitlet stored them as serialized objects. HEAD
+     *  is rewritten last, so an upgrade that is cut short is finished the
+     *  next time the repository is used. */
+    public static void upgradeRefs(File gitletDir) {
+        File head = join(gitletDir, "HEAD");
+        if (!isOldFormat(gitletDir)) {
+            return;
+        }
+        upgradeLooseRefs(join(gitletDir, "refs", "heads"));
+        String path = readObject(head, File.class).getPath().replace(File.separatorChar, '/');
+        int start = path.lastIndexOf("/" + HEADS_PREFIX);
+        if (start == -1) {
+            throw error("HEAD is corrupt.");
+        }
+        LockFile.write(head, SYMBOLIC_PREFIX + path.substring(start + 1) + "\n");
     }
 
-    /** Update the current branch's head commit to be the one with the specified SHA1 ID. */
-    public void updateBranch(String sha1, File path) {
-        commitID = sha1;
-        writeObject(path, this);
+    /** Rewrite each serialized branch stored below DIR as text. */
+    private static void upgradeLooseRefs(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                upgradeLooseRefs(file);
+            }
+            else if (isSerialized(file)) {
+                LockFile.write(file, readObject(file, Branch.class).commitID + "\n");
+            }
+        }
     }
 
-    /** Update the local version of the remote branch to point to the given SHA1 ID. */
-    public void updateRemoteBranch(String remoteName, String sha1) {
-        File branchToBeUpdated = join(HEADS_DIR, remoteName, branchName);
-        commitID = sha1;
-        writeObject(branchToBeUpdated, this);
+    /** Return true if the repository at GITLETDIR was made by the first
+     *  version of Gitlet and has not been upgraded. */
+    static boolean isOldFormat(File gitletDir) {
+        return isSerialized(join(gitletDir, "HEAD"));
     }
 
-    /** Point HEAD to the current branch. */
+    /** Return true if FILE holds a serialized object rather than text. */
+    private static boolean isSerialized(File file) {
+        byte[] contents = file.isFile() ? readContents(file) : new byte[0];
+        return contents.length >= 2
+                && ((contents[0] & 0xff) << 8 | (contents[1] & 0xff)) == SERIALIZED_MAGIC;
+    }
+
+    /** Point HEAD to this branch. */
     public void updateHead() {
-        File HEAD = join(Repository.GITLET_DIR, "HEAD");
-        File pathToBranch = join(HEADS_DIR, branchName);
-        writeObject(HEAD, pathToBranch);
+        writeSymbolicRef(HEAD_FILE, branchName);
+    }
+
+    /** Point the symbolic reference stored in FILE at the branch BRANCHNAME. */
+    public static void writeSymbolicRef(File file, String branchName) {
+        LockFile.write(file, SYMBOLIC_PREFIX + HEADS_PREFIX + branchName + "\n");
     }
 
-    /** Point HEAD to the specified branch. */
-    public void updateHead(String branchName) {
-        File HEAD = join(Repository.GITLET_DIR, "HEAD");
-        File pathToBranch = join(HEADS_DIR, branchName);
-        writeObject(HEAD, pathToBranch);
+    /** Return the name of the branch HEAD points to. */
+    public static String getCurrBranchName() {
+        String head = readContentsAsString(HEAD_FILE).trim();
+        if (!head.startsWith(SYMBOLIC_PREFIX + HEADS_PREFIX)) {
+            throw error("HEAD is corrupt.");
+        }
+        return head.substring((SYMBOLIC_PREFIX + HEADS_PREFIX).length());
     }
 
-    /** Returns the filepath to the current branch. */
-    public static File getCurrBranch() {
-        File HEAD = join(Repository.GITLET_DIR, "HEAD");
-        return readObject(HEAD, File.class);
+    /** Return the branch HEAD points to. */
+    public static Branch getCurrBranch() {
+        return loadBranch(getCurrBranchName());
+    }
+
+    /** Return true if a branch with the given name exists. */
+    public static boolean exists(String branchName) {
+        return readRef(Repository.GITLET_DIR, branchName) != null;
+    }
+
+    /** Return the commit SHA1 ID the branch BRANCHNAME of the repository at
+     *  GITLETDIR points to, or null if there is no such branch. */
+    public static String readRef(File gitletDir, String branchName) {
+        File loose = refFile(gitletDir, branchName);
+        if (loose.isFile()) {
+            return readContentsAsString(loose).trim();
+        }
+        return loadPackedRefs(gitletDir).get(branchName);
+    }
+
+    /** Return the loose file of the branch BRANCHNAME of the repository at GITLETDIR. */
+    public static File refFile(File gitletDir, String branchName) {
+        return join(gitletDir, "refs", "heads", branchName);
+    }
+
+    /** Move every loose branch into the packed-refs file and remove the loose files. */
+    public static void packRefs() {
+        LockFile packedLock = LockFile.acquire(PACKED_REFS);
+        TreeMap<String, String> packed = new TreeMap<>(loadPackedRefs(Repository.GITLET_DIR));
+        TreeMap<String, String> loose = loadLooseRefs(HEADS_DIR, "");
+        packed.putAll(loose);
+        packedLock.commit(formatPackedRefs(packed));
+        forgetPackedRefs(Repository.GITLET_DIR);
+
+        for (Map.Entry<String, String> ref : loose.entrySet()) {
+            File looseFile = join(HEADS_DIR, ref.getKey());
+            LockFile lock = LockFile.acquire(looseFile);
+            if (looseFile.isFile() && readContentsAsString(looseFile).trim().equals(ref.getValue())) {
+                looseFile.delete();
+            }
+            lock.release();
+        }
+    }
+
+    /** Return the commit SHA1 ID of every branch of the repository at GITLETDIR,
+     *  keyed by branch name. Remote-tracking branches are included as
+     *  REMOTE/BRANCH when INCLUDEREMOTES is true. */
+    public static TreeMap<String, String> loadAllBranches(File gitletDir, boolean includeRemotes) {
+        TreeMap<String, String> branches = new TreeMap<>(loadPackedRefs(gitletDir));
+        branches.putAll(loadLooseRefs(join(gitletDir, "refs", "heads"), ""));
+        if (!includeRemotes) {
+            branches.keySet().removeIf(name -> name.contains("/"));
+        }
+        return branches;
+    }
+
+    /** Return the loose branches stored below DIR, named with the given PREFIX. */
+    private static TreeMap<String, String> loadLooseRefs(File dir, String prefix) {
+        TreeMap<String, String> refs = new TreeMap<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return refs;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                refs.putAll(loadLooseRefs(file, prefix + file.getName() + "/"));
+            }
+            else if (!file.getName().endsWith(".lock") && !file.getName().startsWith(".")) {
+                refs.put(prefix + file.getName(), readContentsAsString(file).trim());
+            }
+        }
+        return refs;
+    }
+
+    /** Return the branches in the packed-refs file of the repository at GITLETDIR. */
+    static TreeMap<String, String> loadPackedRefs(File gitletDir) {
+        File packedRefs = join(gitletDir, "packed-refs").getAbsoluteFile();
+        long lastModified = packedRefs.lastModified();
+        long length = packedRefs.length();
+        PackedRefs cached = PACKED.get(packedRefs);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            Trace.count(Trace.Counter.PACKED_REFS_HITS, 1);
+            return cached.refs;
+        }
+
+        TreeMap<String, String> refs = new TreeMap<>();
+        if (packedRefs.isFile()) {
+            for (String line : readContentsAsString(packedRefs).split("\n")) {
+                int space = line.indexOf(' ');
+                if (space == UID_LENGTH && line.startsWith(HEADS_PREFIX, space + 1)) {
+                    refs.put(line.substring(space + 1 + HEADS_PREFIX.length()), line.substring(0, space));
+                }
+            }
+        }
+        PACKED.put(packedRefs, new PackedRefs(lastModified, length, refs));
+        return refs;
+    }
+
+    /** Drop the cached packed branches of the repository at GITLETDIR after it was rewritten. */
+    static void forgetPackedRefs(File gitletDir) {
+        PACKED.remove(join(gitletDir, "packed-refs").getAbsoluteFile());
+    }
+
+    /** Return the contents of a packed-refs file holding the branches in PACKED. */
+    static String formatPackedRefs(Map<String, String> packed) {
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<String, String> ref : packed.entrySet()) {
+            contents.append(ref.getValue()).append(' ').append(HEADS_PREFIX)
+                    .append(ref.getKey()).append('\n');
+        }
+        return contents.toString();
     }
 
     /** Exit the program if the branch name is not unique. */
     public static void checkIfUniqueName(String name) {
-        if (join(HEADS_DIR, name).exists()) {
+        if (exists(name)) {
             System.out.println("A branch with that name already exists.");
             System.exit(0);
         }
@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents a transport to a bundle: a single file holding the history
+ *  of some branches, for moving a repository where no other transport
+ *  reaches. A bundle starts with a header of text lines, then a blank
+ *  line, then every object reachable from its branches as a pack stream:
+ *
+ *  <pre>
+ *  # gitlet bundle v1
+ *  SHA1 BRANCH          (one per branch)
+ *  shallow SHA1         (one per commit whose parents were left out)
+ *
+ *  PACK
+ *  </pre>
+ *
+ *  A bundle is written in one sequential pass, one object at a time, and
+ *  read back the same way through Pack.receive, which checks its checksum
+ *  before installing it. A bundle is a remote like any other, so it can be
+ *  cloned and fetched from, though it always brings all of its objects and
+ *  cannot be pushed to.
+ *
+ *  @author Collin Bowers
+ */
+public class BundleTransport implements Transport {
+
+    private static final String SIGNATURE = "# gitlet bundle v1";
+    private static final String SHALLOW = "shallow ";
+
+    private File path;
+    private TreeMap<String, String> refs;
+    private ArrayList<String> shallow;
+
+    public BundleTransport(File path) {
+        this.path = path;
+    }
+
+    /** Write the history of the branches BRANCHNAMES of the local repository
+     *  to a new bundle at FILE. The bundle is moved into place once it is
+     *  complete. */
+    public static void create(File file, List<String> branchNames) {
+        if (file.isDirectory()) {
+            throw error("Unable to write bundle: %s is a directory.", file.getPath());
+        }
+        TreeMap<String, String> heads = new TreeMap<>();
+        for (String branchName : branchNames) {
+            String sha1 = Branch.readRef(Repository.GITLET_DIR, branchName);
+            if (sha1 == null) {
+                throw error("A branch with that name does not exist.");
+            }
+            heads.put(branchName, sha1);
+        }
+        List<String[]> objects = Pack.findMissing(Repository.GITLET_DIR, heads.values(),
+                List.of(), 0, new ArrayList<>());
+
+        StringBuilder header = new StringBuilder(SIGNATURE).append('\n');
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            header.append(head.getValue()).append(' ').append(head.getKey()).append('\n');
+        }
+        for (String[] obj : objects) {
+            if (obj[0].equals(Pack.COMMIT) && Shallow.isBoundary(Repository.GITLET_DIR, obj[1])) {
+                header.append(SHALLOW).append(obj[1]).append('\n');
+            }
+        }
+        header.append('\n');
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        File temp = null;
+        try {
+            temp = File.createTempFile("." + file.getName() + "-", ".tmp", dir);
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+                Pack.send(Repository.GITLET_DIR, objects, out);
+                out.getChannel().force(true);
+            }
+            renameAtomically(temp, file);
+        } catch (IOException | IllegalArgumentException excp) {
+            throw error("Unable to write bundle: %s", excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> listRefs() {
+        if (refs == null) {
+            try (InputStream in = openBundle()) {
+                return refs;
+            } catch (IOException excp) {
+                throw error("Unable to read bundle: %s", excp.getMessage());
+            }
+        }
+        return refs;
+    }
+
+    /** Install every object in the bundle, whatever WANTS, HAVES, CLAIM,
+     *  DEPTH and BLOBLIMIT ask for, after checking that it is intact and
+     *  holds its branches. Returns the commits of the bundle whose parents
+     *  it left out and the local repository does not have. */
+    @Override
+    public List<String> fetch(Collection<String> wants, Collection<String> haves,
+                              Predicate<String> claim, int depth, long blobLimit) {
+        try (InputStream in = openBundle()) {
+            Pack.receive(Repository.GITLET_DIR, in);
+        } catch (IOException excp) {
+            throw error("Unable to read bundle: %s", excp.getMessage());
+        }
+        for (String sha1 : refs.values()) {
+            if (!Pack.hasObject(Repository.GITLET_DIR, Pack.COMMIT, sha1)) {
+                throw error("Bundle %s does not hold commit %s.", path, sha1);
+            }
+        }
+        ArrayList<String> boundary = new ArrayList<>();
+        for (String sha1 : shallow) {
+            for (String parentSHA1 : Commit.loadCommit(sha1).getParentSHA1s()) {
+                if (!Pack.hasObject(Repository.GITLET_DIR, Pack.COMMIT, parentSHA1)) {
+                    boundary.add(sha1);
+                    break;
+                }
+            }
+        }
+        return boundary;
+    }
+
+    @Override
+    public void fetchObjects(List<String[]> objects) {
+        throw error("Objects cannot be fetched one at a time from bundle %s.", path);
+    }
+
+    @Override
+    public void push(String branchName, String oldSHA1, String newSHA1) {
+        throw error("Cannot push to bundle %s.", path);
+    }
+
+    /** Open the bundle and read its header, returning the stream positioned
+     *  at the start of its pack. */
+    private InputStream openBundle() throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path), 1 << 16);
+        try {
+            if (!SIGNATURE.equals(readLine(in))) {
+                throw error("%s is not a gitlet bundle.", path);
+            }
+            refs = new TreeMap<>();
+            shallow = new ArrayList<>();
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                if (line.startsWith(SHALLOW) && line.length() == SHALLOW.length() + UID_LENGTH) {
+                    shallow.add(line.substring(SHALLOW.length()));
+                }
+                else if (line.length() > UID_LENGTH + 1 && line.charAt(UID_LENGTH) == ' '
+                        && ObjectId.parse(line.substring(0, UID_LENGTH)) != null) {
+                    refs.put(line.substring(UID_LENGTH + 1), line.substring(0, UID_LENGTH));
+                }
+                else {
+                    throw error("Bundle %s has a corrupt header.", path);
+                }
+            }
+            return in;
+        } catch (IOException | GitletException excp) {
+            in.close();
+            throw excp;
+        }
+    }
+
+    /** Return the next line of IN without its newline, failing at the end
+     *  of the stream. */
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw error("Bundle %s has a corrupt header.", path);
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
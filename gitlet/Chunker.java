@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ *  Splits a stream into chunks at boundaries chosen by its contents, using
+ *  FastCDC: a gear hash is rolled over the bytes, one shift and one add per
+ *  byte, and a chunk ends where the hash has enough zero bits. Because a
+ *  boundary depends only on the bytes just before it, an edit only changes
+ *  the chunks around it, and the chunks of the rest of the file come out
+ *  the same as before.
+ *
+ *  No boundary is looked for in the first MIN_SIZE bytes of a chunk, and
+ *  one is forced at MAX_SIZE. Until a chunk reaches AVERAGE_SIZE a
+ *  boundary needs more zero bits than after it, which keeps chunk sizes
+ *  close to the average. The gear table comes from a fixed seed, so every
+ *  repository cuts the same file into the same chunks.
+ *
+ *  @author Collin Bowers
+ */
+public class Chunker {
+
+    static final int MIN_SIZE = 1 << 14;
+    static final int AVERAGE_SIZE = 1 << 16;
+    static final int MAX_SIZE = 1 << 18;
+
+    /** Boundary masks below and above the average size, taken from the top
+     *  bits of the hash, which depend on the most recent bytes. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long state = 0x6769746c65744344L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[MAX_SIZE];
+    private int start;
+    private int end;
+    private boolean finished;
+
+    public Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Return the next chunk of the stream, or null once it is used up. */
+    public byte[] next() throws IOException {
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+        while (!finished && end < buffer.length) {
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                finished = true;
+            }
+            else {
+                end += read;
+            }
+        }
+        if (end == 0) {
+            return null;
+        }
+        start = cut(buffer, end);
+        return Arrays.copyOf(buffer, start);
+    }
+
+    /** Return the length of the chunk at the start of the first LENGTH bytes of BYTES. */
+    static int cut(byte[] bytes, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int limit = Math.min(length, MAX_SIZE);
+        int normal = Math.min(limit, AVERAGE_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[bytes[i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[bytes[i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -1,7 +1,15 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import static gitlet.Utils.*;
 
@@ -16,12 +24,37 @@ public class Commit implements Serializable {
 
     public static final File COMMITS_DIR = join(Repository.OBJECTS_DIR, "commits");
     private static final long serialVersionUID = -7360817244070965409L;
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z");
+
+    /** Commits are stored with their tracked files as a HashMap of strings,
+     *  as they always have been, and held as a FileTree once loaded. The map
+     *  stored is a LinkedHashMap in name order, which loads without sorting. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("message", String.class),
+        new ObjectStreamField("date", String.class),
+        new ObjectStreamField("parentSHA1", String.class),
+        new ObjectStreamField("otherParentSHA1", String.class),
+        new ObjectStreamField("moreParentSHA1s", ArrayList.class),
+        new ObjectStreamField("currSHA1", String.class),
+        new ObjectStreamField("trackedFiles", HashMap.class),
+    };
+
     private String message;
     private String date;
     private String parentSHA1;
     private String otherParentSHA1;
+    /** The parents after the second of an octopus merge, or null. Commits
+     *  made before octopus merges do not store this at all. */
+    private ArrayList<String> moreParentSHA1s;
     private String currSHA1;
-    private HashMap<String, String> trackedFiles;
+    private FileTree trackedFiles;
+    private transient boolean shallow;
+    /** The tracked files as they are stored, while seal serializes them twice. */
+    private transient LinkedHashMap<String, String> storedFiles;
+    /** True if this commit was read back in a form older Gitlets stored,
+     *  which serializing it again does not reproduce. */
+    private transient boolean legacy;
 
     public Commit(String message, String date, String parentSHA1, String otherParentSHA1) {
         this.message = message;
@@ -29,7 +62,7 @@ public class Commit implements Serializable {
         this.parentSHA1 = parentSHA1;
         setOtherParentSHA1(otherParentSHA1);
         this.currSHA1 = null;
-        this.trackedFiles = new HashMap<>();
+        this.trackedFiles = FileTree.EMPTY;
     }
 
     public void setOtherParentSHA1(String otherParentSHA1) {
@@ -41,54 +74,165 @@ public class Commit implements Serializable {
         }
     }
 
+    /** Set the parents of this merge commit after the first to OTHERPARENTSHA1S,
+     *  in order. */
+    public void setOtherParentSHA1s(List<String> otherParentSHA1s) {
+        setOtherParentSHA1(otherParentSHA1s.isEmpty() ? null : otherParentSHA1s.get(0));
+        this.moreParentSHA1s = (otherParentSHA1s.size() <= 1) ? null
+                : new ArrayList<>(otherParentSHA1s.subList(1, otherParentSHA1s.size()));
+    }
+
     public String getDate() {
         return date;
     }
 
+    /** Return the time this commit was made in milliseconds since the epoch,
+     *  or 0 if its date cannot be read. */
+    public long getTime() {
+        try {
+            return ZonedDateTime.parse(date, DATE_FORMAT).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            return 0;
+        }
+    }
+
     public String getMessage() {
         return message;
     }
 
+    /** Return the first parent, or null if this commit has none or sits
+     *  on the shallow boundary of the repository it was loaded from. */
     public String getParentSHA1() {
-        return parentSHA1;
+        return shallow ? null : parentSHA1;
     }
 
     public String getOtherParentSHA1() {
-        return otherParentSHA1;
+        return shallow ? null : otherParentSHA1;
+    }
+
+    /** Return every parent of this commit, first parent first, or none if it
+     *  sits on the shallow boundary. */
+    public List<String> getParentSHA1s() {
+        ArrayList<String> parents = new ArrayList<>();
+        if (shallow) {
+            return parents;
+        }
+        if (parentSHA1 != null) {
+            parents.add(parentSHA1);
+        }
+        if (otherParentSHA1 != null) {
+            parents.add(otherParentSHA1);
+        }
+        if (moreParentSHA1s != null) {
+            parents.addAll(moreParentSHA1s);
+        }
+        return parents;
     }
 
     public String getCurrSHA1() {
         return currSHA1;
     }
 
-    public HashMap<String, String> getTrackedFiles() {
+    public FileTree getTrackedFiles() {
         return trackedFiles;
     }
 
-    public String saveCommit() {
-        byte[] serializedCommit = serialize(this);
-        currSHA1 = sha1(serializedCommit);
+    public void setTrackedFiles(FileTree trackedFiles) {
+        this.trackedFiles = trackedFiles;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("message", message);
+        fields.put("date", date);
+        fields.put("parentSHA1", parentSHA1);
+        fields.put("otherParentSHA1", otherParentSHA1);
+        fields.put("moreParentSHA1s", moreParentSHA1s);
+        fields.put("currSHA1", currSHA1);
+        fields.put("trackedFiles", (storedFiles != null) ? storedFiles
+                : (trackedFiles == null) ? null : trackedFiles.toStoredMap());
+        out.writeFields();
+    }
 
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        message = (String) fields.get("message", null);
+        date = (String) fields.get("date", null);
+        parentSHA1 = (String) fields.get("parentSHA1", null);
+        otherParentSHA1 = (String) fields.get("otherParentSHA1", null);
+        moreParentSHA1s = (ArrayList<String>) fields.get("moreParentSHA1s", null);
+        currSHA1 = (String) fields.get("currSHA1", null);
+        HashMap<String, String> files = (HashMap<String, String>) fields.get("trackedFiles", null);
+        legacy = fields.defaulted("moreParentSHA1s")
+                || (files != null && files.getClass() != LinkedHashMap.class);
+        try {
+            trackedFiles = (files == null) ? null : FileTree.of(files);
+        } catch (IllegalArgumentException | ClassCastException excp) {
+            throw new InvalidObjectException("corrupt tracked files: " + excp.getMessage());
+        }
+    }
+
+    public String saveCommit() {
+        byte[] serializedCommit = seal();
         File commitToBeSaved = new File(COMMITS_DIR, currSHA1);
-        writeObject(commitToBeSaved, this);
+        writeContents(commitToBeSaved, serializedCommit);
+        Trace.count(Trace.Counter.OBJECTS_WRITTEN, 1);
+        Trace.count(Trace.Counter.OBJECT_BYTES_WRITTEN, serializedCommit.length);
 
         return currSHA1;
     }
 
+    /** Record the ID of this new commit, the SHA1 of it serialized without
+     *  one, and return it serialized with its ID, as it is stored. */
+    byte[] seal() {
+        storedFiles = (trackedFiles == null) ? null : trackedFiles.toStoredMap();
+        try {
+            byte[] serializedCommit = serialize(this);
+            currSHA1 = sha1(serializedCommit);
+            return serialize(this);
+        } finally {
+            storedFiles = null;
+        }
+    }
+
+    /** Return true if this commit, as read back, records SHA1 as its ID and
+     *  serializes without it to bytes that hash to SHA1. Only the recorded
+     *  ID of a commit stored by an older Gitlet can be checked. */
+    boolean hasId(String sha1) {
+        if (!sha1.equals(currSHA1) || trackedFiles == null) {
+            return false;
+        }
+        else if (legacy) {
+            return true;
+        }
+        currSHA1 = null;
+        try {
+            return sha1.equals(sha1(serialize(this)));
+        } finally {
+            currSHA1 = sha1;
+        }
+    }
+
     public static Commit loadCommit(String sha1) {
-        if (sha1 == null || !(new File(COMMITS_DIR, sha1)).exists()) {
+        byte[] serializedCommit = (sha1 == null) ? null
+                : Pack.readObjectBytes(Repository.GITLET_DIR, Pack.COMMIT, sha1);
+        if (serializedCommit == null) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
         }
-
-        File commitToBeLoaded = new File(COMMITS_DIR, sha1);
-        Commit loadedCommit = readObject(commitToBeLoaded, Commit.class);
+        Commit loadedCommit = deserialize(serializedCommit, Commit.class);
+        loadedCommit.shallow = Shallow.isBoundary(Repository.GITLET_DIR, sha1);
         return loadedCommit;
     }
 
     public static Commit loadRemoteCommit(String sha1, File remotePath) {
-        File remoteCommitPath = join(remotePath, "objects", "commits", sha1);
-        Commit remoteCommit = readObject(remoteCommitPath, Commit.class);
+        byte[] serializedCommit = Pack.readObjectBytes(remotePath, Pack.COMMIT, sha1);
+        if (serializedCommit == null) {
+            throw error("Commit %s is missing from %s.", sha1, remotePath);
+        }
+        Commit remoteCommit = deserialize(serializedCommit, Commit.class);
+        remoteCommit.shallow = Shallow.isBoundary(remotePath, sha1);
         return remoteCommit;
     }
 
@@ -97,57 +241,51 @@ public class Commit implements Serializable {
         Commit parentCommit = loadCommit(parentSHA1);
         this.trackedFiles = parentCommit.trackedFiles;
 
+        TreeMap<String, String> added = new TreeMap<>();
         ArrayList<String> addedFiles = new ArrayList<>(plainFilenamesIn(Stage.ADDITION_DIR));
-
         for (String fileName : addedFiles) {
             Stage stagedFile = Stage.loadStagedFile(fileName, "add");
             Blob addedFile = stagedFile.getCurrFile();
 
-            updateHashMap(addedFile);
+            updateAddedFiles(added, addedFile);
         }
 
+        HashSet<String> removed = new HashSet<>();
         ArrayList<String> removedFiles = new ArrayList<>(plainFilenamesIn(Stage.REMOVAL_DIR));
         for (String fileName : removedFiles) {
             Stage stagedFile = Stage.loadStagedFile(fileName, "remove");
             Blob removedFile = stagedFile.getCurrFile();
 
-            trackedFiles.remove(removedFile.getName());
+            removed.add(removedFile.getName());
         }
+        trackedFiles = trackedFiles.with(added, removed);
     }
 
-    /** Update the hashmap to include the specified blob if the blob is not already in it. */
-    private void updateHashMap(Blob addedFile) {
-        String name = addedFile.getName();
-        String sha1 = addedFile.getSHA1();
-        if (trackedFiles.containsKey(name) && trackedFiles.get(name).equals(sha1)) {
+    /** Add the specified blob to ADDED if the commit does not already track it. */
+    private void updateAddedFiles(TreeMap<String, String> added, Blob addedFile) {
+        if (checkIfUnupdatedFile(addedFile)) {
             return;
         }
         else {
-            trackedFiles.put(name, sha1);
+            added.put(addedFile.getName(), addedFile.getSHA1());
             addedFile.saveBlob();
         }
     }
 
     /** Return the current head commit. */
     public static Commit getHeadCommit() {
-        File pathToBranch = Branch.getCurrBranch();
-        Branch currBranch = Branch.loadBranch(pathToBranch);
-        String commitSHA1 = currBranch.getCommitSHA1();
+        String commitSHA1 = Branch.getCurrBranch().getCommitSHA1();
         return Commit.loadCommit(commitSHA1);
     }
 
     /** Return the current head commit's SHA1 ID. */
     public static String getHeadCommitSHA1() {
-        File pathToBranch = Branch.getCurrBranch();
-        Branch currBranch = Branch.loadBranch(pathToBranch);
-        return currBranch.getCommitSHA1();
+        return Branch.getCurrBranch().getCommitSHA1();
     }
 
     /** Return the head commit of the specified branch. */
     public static Commit getBranchHeadCommit(String branchName) {
-        File pathToBranch = join(Branch.HEADS_DIR, branchName);
-        Branch currBranch = Branch.loadBranch(pathToBranch);
-        String commitSHA1 = currBranch.getCommitSHA1();
+        String commitSHA1 = Branch.loadBranch(branchName).getCommitSHA1();
         return Commit.loadCommit(commitSHA1);
     }
 
@@ -157,7 +295,7 @@ public class Commit implements Serializable {
             return commitID;
         }
 
-        ArrayList<String> commitSHA1s = new ArrayList<>(plainFilenamesIn(Commit.COMMITS_DIR));
+        List<String> commitSHA1s = Pack.listObjects(Repository.GITLET_DIR, Pack.COMMIT);
         for (String sha1 : commitSHA1s) {
             String shortenedSHA1 = sha1.substring(0, commitID.length());
             if (shortenedSHA1.equals(commitID)) {
@@ -171,7 +309,7 @@ public class Commit implements Serializable {
     public boolean checkIfUnupdatedFile(Blob addedFile) {
         String name = addedFile.getName();
         String sha1 = addedFile.getSHA1();
-        return trackedFiles.containsKey(name) && trackedFiles.get(name).equals(sha1);
+        return sha1.equals(trackedFiles.get(name));
     }
 
 }
@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Function;
+import static gitlet.Utils.*;
+
+/**
+ *  Prints the differences between two snapshots of the tracked files as
+ *  unified diffs. A snapshot is a tree of file names and blob SHA1 IDs
+ *  along with a way to load a file's contents; the two trees are walked
+ *  together in name order, and only files whose IDs differ are loaded and
+ *  compared line by line with LineDiff.
+ *
+ *  @author Collin Bowers
+ */
+public class Diff {
+
+    private static final int CONTEXT = 3;
+    private static final String NO_NEWLINE = "\\ No newline at end of file";
+
+    /** Represents one side of a diff: the SHA1 ID of each file, by name, and
+     *  how to read a file's contents. */
+    public static class Snapshot {
+        private final FileTree files;
+        private final Function<String, String> contents;
+
+        public Snapshot(FileTree files, Function<String, String> contents) {
+            this.files = files;
+            this.contents = contents;
+        }
+
+        /** Return the snapshot of the files tracked by COMMIT. */
+        public static Snapshot of(Commit commit) {
+            FileTree files = commit.getTrackedFiles();
+            return new Snapshot(files, name -> Blob.loadBlob(files.get(name)).getContents());
+        }
+
+        /** Return the snapshot of the staging area: the files tracked by the
+         *  head commit with staged additions and removals applied. */
+        public static Snapshot ofIndex() {
+            TreeMap<String, String> files = new TreeMap<>(Commit.getHeadCommit().getTrackedFiles());
+            HashMap<String, Blob> staged = new HashMap<>();
+            for (String fileName : plainFilenamesIn(Stage.ADDITION_DIR)) {
+                Blob blob = Stage.loadStagedFile(fileName, "add").getCurrFile();
+                staged.put(blob.getName(), blob);
+                files.put(blob.getName(), blob.getSHA1());
+            }
+            for (String fileName : plainFilenamesIn(Stage.REMOVAL_DIR)) {
+                files.remove(Stage.loadStagedFile(fileName, "remove").getCurrFile().getName());
+            }
+            return new Snapshot(FileTree.of(files), name -> staged.containsKey(name)
+                    ? staged.get(name).getContents() : Blob.loadBlob(files.get(name)).getContents());
+        }
+
+        /** Return this snapshot limited to the files in the sparse cone SPARSE. */
+        public Snapshot select(SparseCheckout sparse) {
+            return sparse.isFull() ? this : new Snapshot(sparse.select(files), contents);
+        }
+
+        /** Return the snapshot of the working directory, limited to the files in INDEX. */
+        public static Snapshot ofWorkingTree(Snapshot index) {
+            TreeMap<String, String> files = new TreeMap<>();
+            StatCache cache = StatCache.load();
+            for (String name : index.files.keySet()) {
+                BasicFileAttributes attributes = StatCache.stat(name);
+                if (attributes != null) {
+                    files.put(name, cache.hash(name, attributes).name());
+                }
+            }
+            cache.save();
+            return new Snapshot(FileTree.of(files), name -> readContentsAsString(join(Repository.CWD, name)));
+        }
+    }
+
+    /** Print the differences from OLDSNAPSHOT to NEWSNAPSHOT, showing files
+     *  that were renamed as such and, if COPIES, files copied from a file
+     *  that was also modified. */
+    public static void print(Snapshot oldSnapshot, Snapshot newSnapshot, boolean copies) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        TreeMap<String, RenameDetector.Rename> renames = new RenameDetector(oldSnapshot.files,
+                newSnapshot.files, oldSnapshot.contents, newSnapshot.contents).detect(copies);
+        HashSet<String> renamed = new HashSet<>();
+        for (RenameDetector.Rename rename : renames.values()) {
+            if (!rename.copy) {
+                renamed.add(rename.oldName);
+            }
+        }
+
+        FileTree.Walk walk = new FileTree.Walk(oldSnapshot.files, newSnapshot.files);
+        while (walk.next()) {
+            String name = walk.path();
+            if (!walk.has(1)) {
+                if (!renamed.contains(name)) {
+                    printFile(out, name, oldSnapshot.contents.apply(name), null);
+                }
+            }
+            else if (!walk.has(0)) {
+                RenameDetector.Rename rename = renames.get(name);
+                if (rename != null) {
+                    printRename(out, rename, oldSnapshot.contents.apply(rename.oldName),
+                            newSnapshot.contents.apply(rename.newName));
+                }
+                else {
+                    printFile(out, name, null, newSnapshot.contents.apply(name));
+                }
+            }
+            else if (!walk.same(0, 1)) {
+                printFile(out, name, oldSnapshot.contents.apply(name), newSnapshot.contents.apply(name));
+            }
+        }
+        out.flush();
+    }
+
+    /** Print the unified diff of the file NAME from OLDCONTENTS to NEWCONTENTS,
+     *  either of which is null if the file does not exist on that side. */
+    private static void printFile(PrintWriter out, String name, String oldContents, String newContents) {
+        out.println("diff --gitlet a/" + name + " b/" + name);
+        if (oldContents == null) {
+            out.println("new file");
+        }
+        else if (newContents == null) {
+            out.println("deleted file");
+        }
+        out.println("--- " + ((oldContents == null) ? "/dev/null" : "a/" + name));
+        out.println("+++ " + ((newContents == null) ? "/dev/null" : "b/" + name));
+        printChanges(out, oldContents, newContents);
+    }
+
+    /** Print RENAME, a file renamed or copied from OLDCONTENTS to NEWCONTENTS,
+     *  followed by its unified diff if the contents changed. */
+    private static void printRename(PrintWriter out, RenameDetector.Rename rename,
+                                    String oldContents, String newContents) {
+        String kind = rename.copy ? "copy" : "rename";
+        out.println("diff --gitlet a/" + rename.oldName + " b/" + rename.newName);
+        out.println("similarity index " + rename.similarity + "%");
+        out.println(kind + " from " + rename.oldName);
+        out.println(kind + " to " + rename.newName);
+        if (oldContents.equals(newContents)) {
+            return;
+        }
+        out.println("--- a/" + rename.oldName);
+        out.println("+++ b/" + rename.newName);
+        printChanges(out, oldContents, newContents);
+    }
+
+    /** Print the hunks changing OLDCONTENTS to NEWCONTENTS, either of which is
+     *  null if the file does not exist on that side. */
+    private static void printChanges(PrintWriter out, String oldContents, String newContents) {
+
+        String[] oldLines = splitLines(oldContents);
+        String[] newLines = splitLines(newContents);
+        boolean oldNewline = oldContents == null || oldContents.isEmpty() || oldContents.endsWith("\n");
+        boolean newNewline = newContents == null || newContents.isEmpty() || newContents.endsWith("\n");
+        LineDiff diff;
+        if (oldNewline == newNewline) {
+            diff = new LineDiff(oldLines, newLines);
+        }
+        else {
+            diff = new LineDiff(markLastLine(oldLines, oldNewline), markLastLine(newLines, newNewline));
+        }
+        printHunks(out, diff.getChanges(), oldLines, newLines, oldNewline, newNewline);
+    }
+
+    /** Return LINES with its last line made different from any other line if
+     *  the file does not end with a newline, so that a last line which only
+     *  gained or lost its newline is still reported as changed. */
+    private static String[] markLastLine(String[] lines, boolean endsWithNewline) {
+        if (endsWithNewline || lines.length == 0) {
+            return lines;
+        }
+        String[] marked = Arrays.copyOf(lines, lines.length);
+        marked[lines.length - 1] = lines[lines.length - 1] + "\n" + NO_NEWLINE;
+        return marked;
+    }
+
+    /** Print CHANGES from OLDLINES to NEWLINES as hunks, each with up to CONTEXT
+     *  unchanged lines around its changes. OLDNEWLINE and NEWNEWLINE tell
+     *  whether each side ends with a newline. */
+    private static void printHunks(PrintWriter out, List<LineDiff.Change> changes, String[] oldLines,
+                                   String[] newLines, boolean oldNewline, boolean newNewline) {
+        int first = 0;
+        while (first < changes.size()) {
+            int last = first;
+            while (last + 1 < changes.size()
+                    && changes.get(last + 1).oldStart - changes.get(last).oldEnd <= 2 * CONTEXT) {
+                last += 1;
+            }
+            LineDiff.Change start = changes.get(first);
+            LineDiff.Change end = changes.get(last);
+            int oldStart = Math.max(0, start.oldStart - CONTEXT);
+            int newStart = start.newStart - (start.oldStart - oldStart);
+            int oldEnd = Math.min(oldLines.length, end.oldEnd + CONTEXT);
+            int newEnd = end.newEnd + (oldEnd - end.oldEnd);
+            out.println("@@ -" + range(oldStart, oldEnd) + " +" + range(newStart, newEnd) + " @@");
+
+            int i = oldStart;
+            for (int c = first; c <= last; c += 1) {
+                LineDiff.Change change = changes.get(c);
+                for (; i < change.oldStart; i += 1) {
+                    printLine(out, ' ', oldLines, i, oldNewline && newNewline);
+                }
+                for (int j = change.oldStart; j < change.oldEnd; j += 1) {
+                    printLine(out, '-', oldLines, j, oldNewline);
+                }
+                for (int j = change.newStart; j < change.newEnd; j += 1) {
+                    printLine(out, '+', newLines, j, newNewline);
+                }
+                i = change.oldEnd;
+            }
+            for (; i < oldEnd; i += 1) {
+                printLine(out, ' ', oldLines, i, oldNewline && newNewline);
+            }
+            first = last + 1;
+        }
+    }
+
+    /** Print line I of LINES with the given PREFIX, marking the last line of
+     *  a file that does not end with a newline unless ENDSWITHNEWLINE. */
+    private static void printLine(PrintWriter out, char prefix, String[] lines, int i, boolean endsWithNewline) {
+        out.print(prefix);
+        out.println(lines[i]);
+        if (i == lines.length - 1 && !endsWithNewline) {
+            out.println(NO_NEWLINE);
+        }
+    }
+
+    /** Return the unified diff range of lines [START, END). */
+    private static String range(int start, int end) {
+        int length = end - start;
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    /** Return the lines of CONTENTS without their newlines; no lines if CONTENTS is null. */
+    private static String[] splitLines(String contents) {
+        if (contents == null || contents.isEmpty()) {
+            return new String[0];
+        }
+        String[] lines = contents.split("\n", -1);
+        if (contents.endsWith("\n")) {
+            return Arrays.copyOf(lines, lines.length - 1);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,453 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Imports history from a stream of commands, for moving a project from
+ *  another version-control system. Every object is appended to one pack as
+ *  it is made, without going through the staging area or writing a file
+ *  per object, and the branches are moved once at the end in a single
+ *  transaction, so an import either moves all of its branches or none.
+ *
+ *  The stream is a series of commands, one per line, in the style of git
+ *  fast-import. Wherever DATA appears, a line "data N" is followed by
+ *  exactly N bytes and an optional newline.
+ *
+ *  <pre>
+ *  blob
+ *  mark :MARK                       (optional)
+ *  DATA
+ *
+ *  commit BRANCH
+ *  mark :MARK                       (optional)
+ *  date SECONDS +HHMM               (optional; now if left out)
+ *  DATA                             (the message)
+ *  from COMMIT                      (optional; the tip of BRANCH if left out)
+ *  merge COMMIT                     (any number, for a merge)
+ *  M BLOB PATH  or  M inline PATH followed by DATA
+ *  D PATH
+ *  deleteall
+ *
+ *  reset BRANCH
+ *  from COMMIT                      (optional)
+ *
+ *  done                             (optional)
+ *  </pre>
+ *
+ *  A COMMIT or BLOB is a :MARK given earlier or the SHA1 ID of an object
+ *  already in the repository. A commit starts from the files of its first
+ *  parent and ends at the next blank line or command. The trees of recent
+ *  commits are kept, so a commit is only read back when its parent is far
+ *  behind, in which case the objects imported so far are installed first.
+ *
+ *  @author Collin Bowers
+ */
+public class FastImport {
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z");
+    /** Commits whose trees are kept for their children. */
+    private static final int TREE_CACHE_SIZE = 256;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] lineBytes = new byte[256];
+    /** A line read ahead of the command it belongs to, or null. */
+    private String pending;
+
+    private Pack pack;
+    /** The objects written to the pack not yet installed. */
+    private final HashSet<ObjectId> packed = new HashSet<>();
+    private final HashMap<Integer, ObjectId> commitMarks = new HashMap<>();
+    private final HashMap<Integer, ObjectId> blobMarks = new HashMap<>();
+    private final TreeMap<String, String> tips = new TreeMap<>();
+    private final HashMap<String, String> oldTips = new HashMap<>();
+    private final LinkedHashMap<String, FileTree> trees =
+        new LinkedHashMap<>(TREE_CACHE_SIZE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileTree> eldest) {
+                return size() > TREE_CACHE_SIZE;
+            }
+        };
+    private int commits;
+    private int blobs;
+
+    private FastImport(InputStream in) {
+        this.in = in;
+    }
+
+    /** Import the commands read from IN into the local repository, then move
+     *  the branches they name. */
+    public static void run(InputStream in) {
+        FastImport importer = new FastImport(in);
+        importer.pack = new Pack(Repository.GITLET_DIR, "Importing objects");
+        try {
+            importer.readCommands();
+        } catch (IOException excp) {
+            importer.pack.abort();
+            throw error("Unable to read import stream: %s", excp.getMessage());
+        } catch (RuntimeException excp) {
+            importer.pack.abort();
+            throw excp;
+        }
+        importer.pack.install();
+        importer.updateBranches();
+        System.out.printf("Imported %d commits and %d blobs.%n", importer.commits, importer.blobs);
+    }
+
+    /** Read and carry out commands until the stream or a done command ends. */
+    private void readCommands() throws IOException {
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            else if (line.equals("blob")) {
+                readBlob();
+            }
+            else if (line.startsWith("commit ")) {
+                readCommit(line.substring("commit ".length()));
+            }
+            else if (line.startsWith("reset ")) {
+                readReset(line.substring("reset ".length()));
+            }
+            else if (line.equals("done")) {
+                return;
+            }
+            else {
+                throw error("Unknown import command: %s", line);
+            }
+        }
+    }
+
+    /** Read a blob command and write the blob. */
+    private void readBlob() throws IOException {
+        Integer mark = readMark();
+        ObjectId id = writeBlob(readData(), "");
+        if (mark != null) {
+            blobMarks.put(mark, id);
+        }
+    }
+
+    /** Read a commit command on BRANCH and write the commit. */
+    private void readCommit(String branch) throws IOException {
+        RefTransaction.checkBranchName(branch);
+        Integer mark = readMark();
+        String date = DATE_FORMAT.format(ZonedDateTime.now());
+        String line = nextLine();
+        if (line != null && line.startsWith("date ")) {
+            date = parseDate(line.substring("date ".length()));
+        }
+        else {
+            pending = line;
+        }
+        String message = new String(readData(), StandardCharsets.UTF_8);
+
+        String parentSHA1 = tip(branch);
+        ArrayList<String> otherParents = new ArrayList<>();
+        line = nextLine();
+        if (line != null && line.startsWith("from ")) {
+            parentSHA1 = resolveCommit(line.substring("from ".length()));
+            line = nextLine();
+        }
+        while (line != null && line.startsWith("merge ")) {
+            otherParents.add(resolveCommit(line.substring("merge ".length())));
+            line = nextLine();
+        }
+
+        FileTree files = (parentSHA1 == null) ? FileTree.EMPTY : treeOf(parentSHA1);
+        TreeMap<String, String> added = new TreeMap<>();
+        HashSet<String> removed = new HashSet<>();
+        for (; line != null && !line.isEmpty(); line = nextLine()) {
+            if (line.startsWith("M ")) {
+                int space = line.indexOf(' ', 2);
+                if (space < 0) {
+                    throw error("Invalid import file command: %s", line);
+                }
+                String ref = line.substring(2, space);
+                String path = checkPath(line.substring(space + 1));
+                ObjectId id = ref.equals("inline") ? writeBlob(readData(), path) : resolveBlob(ref);
+                added.put(path, id.name());
+                removed.remove(path);
+            }
+            else if (line.startsWith("D ")) {
+                String path = checkPath(line.substring(2));
+                added.remove(path);
+                removed.add(path);
+            }
+            else if (line.equals("deleteall")) {
+                files = FileTree.EMPTY;
+                added.clear();
+                removed.clear();
+            }
+            else {
+                pending = line;
+                break;
+            }
+        }
+
+        Commit commit = new Commit(message, date, parentSHA1, null);
+        commit.setOtherParentSHA1s(otherParents);
+        commit.setTrackedFiles(files.with(added, removed));
+        byte[] serializedCommit = commit.seal();
+        String sha1 = commit.getCurrSHA1();
+        ObjectId id = ObjectId.fromHex(sha1);
+        if (packed.add(id)) {
+            pack.add(Pack.COMMIT, sha1, serializedCommit);
+            commits += 1;
+        }
+        trees.put(sha1, commit.getTrackedFiles());
+        tips.put(branch, sha1);
+        if (mark != null) {
+            commitMarks.put(mark, id);
+        }
+    }
+
+    /** Read a reset command, which points BRANCH at the commit it names, or
+     *  leaves the next commit on BRANCH without a parent. A branch reset
+     *  without a commit after it is left where it was. */
+    private void readReset(String branch) throws IOException {
+        RefTransaction.checkBranchName(branch);
+        tip(branch);
+        String line = nextLine();
+        if (line != null && line.startsWith("from ")) {
+            tips.put(branch, resolveCommit(line.substring("from ".length())));
+        }
+        else {
+            tips.put(branch, null);
+            pending = line;
+        }
+    }
+
+    /** Move every branch the import committed to or reset in one transaction. */
+    private void updateBranches() {
+        RefTransaction transaction = new RefTransaction("fast-import");
+        for (Map.Entry<String, String> tip : tips.entrySet()) {
+            String oldSHA1 = oldTips.get(tip.getKey());
+            if (tip.getValue() != null && !tip.getValue().equals(oldSHA1)) {
+                transaction.update(tip.getKey(), oldSHA1, tip.getValue());
+            }
+        }
+        transaction.commit();
+    }
+
+    /** Return the commit BRANCH points at so far in the import, or null. */
+    private String tip(String branch) {
+        if (!tips.containsKey(branch)) {
+            String sha1 = Branch.readRef(Repository.GITLET_DIR, branch);
+            oldTips.put(branch, sha1);
+            tips.put(branch, sha1);
+        }
+        return tips.get(branch);
+    }
+
+    /** Return the files of the commit with the given SHA1 ID, installing the
+     *  objects imported so far first if it has to be read back from them. */
+    private FileTree treeOf(String sha1) {
+        FileTree files = trees.get(sha1);
+        if (files == null) {
+            if (packed.contains(ObjectId.fromHex(sha1))) {
+                checkpoint();
+            }
+            files = Commit.loadCommit(sha1).getTrackedFiles();
+            trees.put(sha1, files);
+        }
+        return files;
+    }
+
+    /** Install the objects written so far and start a new pack. */
+    private void checkpoint() {
+        pack.install();
+        packed.clear();
+        pack = new Pack(Repository.GITLET_DIR, "Importing objects");
+    }
+
+    /** Return the SHA1 ID of the commit REF names. */
+    private String resolveCommit(String ref) {
+        ObjectId id = ref.startsWith(":") ? commitMarks.get(parseMark(ref)) : ObjectId.parse(ref);
+        if (id == null || !(packed.contains(id) || Pack.hasObject(Repository.GITLET_DIR, Pack.COMMIT, id.name()))) {
+            throw error("No commit %s in the import or the repository.", ref);
+        }
+        return id.name();
+    }
+
+    /** Return the ID of the blob REF names. */
+    private ObjectId resolveBlob(String ref) {
+        ObjectId id = ref.startsWith(":") ? blobMarks.get(parseMark(ref)) : ObjectId.parse(ref);
+        if (id == null || !(packed.contains(id) || Blob.hasBlob(Repository.GITLET_DIR, id.name()))) {
+            throw error("No blob %s in the import or the repository.", ref);
+        }
+        return id;
+    }
+
+    /** Write DATA to the pack as a blob tracked as PATH, unless it is stored
+     *  already, and return its ID. Blobs are looked up by ID alone, so one
+     *  read by a blob command is written at once under an empty name rather
+     *  than held until a file names it. Large files are written in chunks. */
+    private ObjectId writeBlob(byte[] data, String path) {
+        ObjectId id = blobId(data);
+        if (packed.contains(id) || Blob.hasBlob(Repository.GITLET_DIR, id.name())) {
+            return id;
+        }
+        String sha1 = id.name();
+        Blob blob;
+        if (data.length > Blob.LARGE_FILE_THRESHOLD) {
+            ArrayList<String> chunkSHA1s = new ArrayList<>();
+            try {
+                Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+                for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                    String chunkSHA1 = Blob.chunkSHA1(chunk);
+                    if (!Pack.hasObject(Repository.GITLET_DIR, Pack.CHUNK, chunkSHA1)
+                            && packed.add(ObjectId.fromHex(chunkSHA1))) {
+                        pack.add(Pack.CHUNK, chunkSHA1, chunk);
+                    }
+                    chunkSHA1s.add(chunkSHA1);
+                }
+            } catch (IOException excp) {
+                throw error("Unable to chunk %s: %s", path, excp.getMessage());
+            }
+            blob = Blob.ofChunks(path, sha1, chunkSHA1s);
+            pack.add(Pack.MANIFEST, sha1, serialize(blob));
+        }
+        else {
+            blob = new Blob(path, new String(data, StandardCharsets.UTF_8), sha1);
+            pack.add(Pack.BLOB, sha1, serialize(blob));
+        }
+        packed.add(id);
+        blobs += 1;
+        return id;
+    }
+
+    /** Return the ID DATA is tracked under: that of its bytes if it is large
+     *  enough to be stored in chunks, and otherwise that of its contents as
+     *  a string, as for files that are added. */
+    private static ObjectId blobId(byte[] data) {
+        if (data.length > Blob.LARGE_FILE_THRESHOLD) {
+            return Hasher.hash(data);
+        }
+        return Hasher.hash(new String(data, StandardCharsets.UTF_8));
+    }
+
+    /** Return the commit date "SECONDS +HHMM" formatted as commits store it. */
+    private static String parseDate(String date) {
+        String[] words = date.split(" ");
+        try {
+            Instant instant = Instant.ofEpochSecond(Long.parseLong(words[0]));
+            ZoneOffset zone = (words.length > 1) ? ZoneOffset.of(words[1]) : ZoneOffset.UTC;
+            return DATE_FORMAT.format(instant.atZone(zone));
+        } catch (NumberFormatException | DateTimeException excp) {
+            throw error("Invalid import date: %s", date);
+        }
+    }
+
+    /** Return PATH if it names a file inside the working directory. */
+    private static String checkPath(String path) {
+        String normalized = WorkingTree.normalize(path);
+        if (normalized == null || !normalized.equals(path) || path.endsWith("/")
+                || path.contains("//") || path.equals(".gitlet") || path.startsWith(".gitlet/")) {
+            throw error("Invalid import path: %s", path);
+        }
+        return path;
+    }
+
+    /** Read an optional "mark :MARK" line, returning MARK or null. */
+    private Integer readMark() throws IOException {
+        String line = nextLine();
+        if (line != null && line.startsWith("mark ")) {
+            return parseMark(line.substring("mark ".length()));
+        }
+        pending = line;
+        return null;
+    }
+
+    /** Return the number of the mark written as ":MARK". */
+    private static int parseMark(String mark) {
+        try {
+            if (mark.startsWith(":")) {
+                return Integer.parseInt(mark.substring(1));
+            }
+        } catch (NumberFormatException excp) {
+            // Reported below.
+        }
+        throw error("Invalid import mark: %s", mark);
+    }
+
+    /** Read a "data N" line and the N bytes after it, along with the
+     *  newline that may follow them. */
+    private byte[] readData() throws IOException {
+        String line = nextLine();
+        if (line == null || !line.startsWith("data ")) {
+            throw error("Expected data in import stream, found: %s", line);
+        }
+        int length;
+        try {
+            length = Integer.parseInt(line.substring("data ".length()));
+        } catch (NumberFormatException excp) {
+            throw error("Invalid import data length: %s", line);
+        }
+        if (length < 0) {
+            throw error("Invalid import data length: %s", line);
+        }
+        byte[] data = new byte[length];
+        int filled = 0;
+        while (filled < length) {
+            if (position == limit && !fill()) {
+                throw error("Import stream ends inside data.");
+            }
+            int count = Math.min(length - filled, limit - position);
+            System.arraycopy(buffer, position, data, filled, count);
+            position += count;
+            filled += count;
+        }
+        if ((position < limit || fill()) && buffer[position] == '\n') {
+            position += 1;
+        }
+        return data;
+    }
+
+    /** Return the line read ahead, or else the next line without its
+     *  newline, or null at the end of the stream. */
+    private String nextLine() throws IOException {
+        if (pending != null) {
+            String line = pending;
+            pending = null;
+            return line;
+        }
+        int length = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                return (length == 0) ? null : new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+            }
+            byte b = buffer[position];
+            position += 1;
+            if (b == '\n') {
+                return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+            }
+            if (length == lineBytes.length) {
+                lineBytes = Arrays.copyOf(lineBytes, length * 2);
+            }
+            lineBytes[length] = b;
+            length += 1;
+        }
+    }
+
+    /** Refill the buffer, returning false at the end of the stream. */
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
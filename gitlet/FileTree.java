@@ -0,0 +1,344 @@
+package gitlet;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ *  Represents the files tracked by a commit as an immutable map from file
+ *  name to blob SHA1 ID, sorted by name. The names are interned and kept in
+ *  one array, and the IDs are packed 20 bytes apiece into another, so a
+ *  tree of a hundred thousand files takes a few megabytes instead of the
+ *  tens that a HashMap of strings does, and the trees of a merge share their
+ *  names. Names are found by binary search. Trees are stored in name order,
+ *  so loading one only checks the order rather than sorting, except for
+ *  commits made before trees were.
+ *
+ *  As a Map, a tree gives each ID as its 40-character name, made when it is
+ *  asked for. Code that compares whole trees walks them together in name
+ *  order with a Walk, which compares IDs without making their names.
+ *
+ *  @author Collin Bowers
+ */
+public final class FileTree extends AbstractMap<String, String> {
+
+    public static final FileTree EMPTY = new FileTree(new String[0], new byte[0]);
+
+    /** The one copy of each file name in the trees this process holds. The
+     *  names are held weakly, so those no tree uses any more are dropped. */
+    private static final WeakHashMap<String, WeakReference<String>> NAMES = new WeakHashMap<>();
+
+    private final String[] paths;
+    private final byte[] ids;
+
+    private FileTree(String[] paths, byte[] ids) {
+        this.paths = paths;
+        this.ids = ids;
+    }
+
+    /** Return the tree of FILES, a map from file name to blob SHA1 ID. */
+    public static FileTree of(Map<String, String> files) {
+        String[] paths = new String[files.size()];
+        String[] sha1s = new String[files.size()];
+        boolean sorted = true;
+        int n = 0;
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            paths[n] = file.getKey();
+            sha1s[n] = file.getValue();
+            sorted = sorted && (n == 0 || paths[n - 1].compareTo(paths[n]) < 0);
+            n += 1;
+        }
+        if (!sorted) {
+            Arrays.sort(paths);
+            for (int i = 0; i < n; i += 1) {
+                sha1s[i] = files.get(paths[i]);
+            }
+        }
+        byte[] ids = new byte[n * ObjectId.LENGTH];
+        for (int i = 0; i < n; i += 1) {
+            if (!ObjectId.parse(sha1s[i], ids, i * ObjectId.LENGTH)) {
+                throw new IllegalArgumentException("not a SHA1 ID: " + sha1s[i]);
+            }
+        }
+        intern(paths);
+        return new FileTree(paths, ids);
+    }
+
+    /** Replace each of PATHS with the copy of it already held, if any. */
+    private static void intern(String[] paths) {
+        synchronized (NAMES) {
+            for (int i = 0; i < paths.length; i += 1) {
+                WeakReference<String> held = NAMES.get(paths[i]);
+                String name = (held == null) ? null : held.get();
+                if (name == null) {
+                    NAMES.put(paths[i], new WeakReference<>(paths[i]));
+                }
+                else {
+                    paths[i] = name;
+                }
+            }
+        }
+    }
+
+    /** Return this tree as a map that iterates in name order, to be stored
+     *  where commits have always stored a HashMap. */
+    LinkedHashMap<String, String> toStoredMap() {
+        LinkedHashMap<String, String> files = new LinkedHashMap<>(paths.length * 4 / 3 + 1);
+        for (int i = 0; i < paths.length; i += 1) {
+            files.put(paths[i], id(i).name());
+        }
+        return files;
+    }
+
+    /** Return this tree with the files in ADDED, a map from file name to
+     *  blob SHA1 ID, added or replaced and then the files named in REMOVED
+     *  taken out. */
+    public FileTree with(SortedMap<String, String> added, Set<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        FileTree changes = of(added);
+        ArrayList<String> newPaths = new ArrayList<>(paths.length + changes.size());
+        byte[] newIds = new byte[(paths.length + changes.size()) * ObjectId.LENGTH];
+        Walk walk = new Walk(this, changes);
+        while (walk.next()) {
+            if (removed.contains(walk.path())) {
+                continue;
+            }
+            FileTree source = walk.has(1) ? changes : this;
+            int index = walk.index(walk.has(1) ? 1 : 0);
+            System.arraycopy(source.ids, index * ObjectId.LENGTH, newIds,
+                    newPaths.size() * ObjectId.LENGTH, ObjectId.LENGTH);
+            newPaths.add(walk.path());
+        }
+        return new FileTree(newPaths.toArray(new String[0]),
+                Arrays.copyOf(newIds, newPaths.size() * ObjectId.LENGTH));
+    }
+
+    /** Return the files of this tree that are named in PATHS or are below a
+     *  directory named in PATHS, none of which is below another. Each path
+     *  is found by binary search and the files below it are copied as one
+     *  run, so this costs as much as the files it returns. */
+    public FileTree within(Collection<String> paths) {
+        ArrayList<int[]> runs = new ArrayList<>();
+        for (String path : paths) {
+            int i = indexOf(path);
+            if (i >= 0) {
+                runs.add(new int[] {i, i + 1});
+            }
+            int start = lowerBound(path + "/");
+            int end = lowerBound(path + "0");
+            if (start < end) {
+                runs.add(new int[] {start, end});
+            }
+        }
+        runs.sort(Comparator.comparingInt(run -> run[0]));
+        int size = 0;
+        for (int[] run : runs) {
+            size += run[1] - run[0];
+        }
+        String[] newPaths = new String[size];
+        byte[] newIds = new byte[size * ObjectId.LENGTH];
+        int n = 0;
+        for (int[] run : runs) {
+            System.arraycopy(this.paths, run[0], newPaths, n, run[1] - run[0]);
+            System.arraycopy(ids, run[0] * ObjectId.LENGTH, newIds, n * ObjectId.LENGTH,
+                    (run[1] - run[0]) * ObjectId.LENGTH);
+            n += run[1] - run[0];
+        }
+        return new FileTree(newPaths, newIds);
+    }
+
+    /** Return the position of the first file whose name is not before NAME. */
+    private int lowerBound(String name) {
+        int i = Arrays.binarySearch(paths, name);
+        return (i < 0) ? -i - 1 : i;
+    }
+
+    @Override
+    public int size() {
+        return paths.length;
+    }
+
+    /** Return the name of the Ith file in name order. */
+    public String path(int i) {
+        return paths[i];
+    }
+
+    /** Return the blob ID of the Ith file in name order. */
+    public ObjectId id(int i) {
+        return ObjectId.fromBytes(ids, i * ObjectId.LENGTH);
+    }
+
+    /** Return the position of the file NAME in name order, or a negative
+     *  number if this tree does not have it. */
+    public int indexOf(Object name) {
+        return (name instanceof String) ? Arrays.binarySearch(paths, name) : -1;
+    }
+
+    /** Return the blob ID of the file NAME, or null if this tree does not have it. */
+    public ObjectId getId(String name) {
+        int i = indexOf(name);
+        return (i < 0) ? null : id(i);
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public String get(Object name) {
+        int i = indexOf(name);
+        return (i < 0) ? null : id(i).name();
+    }
+
+    /** Return true if the Ith file of this tree has the same blob as the Jth
+     *  file of OTHER. */
+    private boolean sameId(int i, FileTree other, int j) {
+        return Arrays.equals(ids, i * ObjectId.LENGTH, (i + 1) * ObjectId.LENGTH,
+                other.ids, j * ObjectId.LENGTH, (j + 1) * ObjectId.LENGTH);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                return Arrays.asList(paths).iterator();
+            }
+
+            @Override
+            public int size() {
+                return paths.length;
+            }
+
+            @Override
+            public boolean contains(Object name) {
+                return indexOf(name) >= 0;
+            }
+        };
+    }
+
+    @Override
+    public List<String> values() {
+        return new AbstractList<>() {
+            @Override
+            public String get(int i) {
+                return id(i).name();
+            }
+
+            @Override
+            public int size() {
+                return paths.length;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < paths.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (next >= paths.length) {
+                            throw new NoSuchElementException();
+                        }
+                        next += 1;
+                        return new SimpleImmutableEntry<>(paths[next - 1], id(next - 1).name());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return paths.length;
+            }
+        };
+    }
+
+    /**
+     *  Walks several trees together in name order, stopping once at every
+     *  name in any of them. At each stop, tree T either has the file or not,
+     *  and two trees can be asked whether they agree on it without making
+     *  the names of its IDs, so trees that mostly agree are compared in one
+     *  pass that allocates nothing for the files they agree on.
+     */
+    public static class Walk {
+        private final FileTree[] trees;
+        private final int[] next;
+        private final int[] current;
+        private String path;
+
+        public Walk(FileTree... trees) {
+            this.trees = trees;
+            this.next = new int[trees.length];
+            this.current = new int[trees.length];
+        }
+
+        /** Advance to the next name in any tree, returning false if there is none. */
+        public boolean next() {
+            path = null;
+            for (int t = 0; t < trees.length; t += 1) {
+                if (next[t] < trees[t].paths.length) {
+                    String candidate = trees[t].paths[next[t]];
+                    if (path == null || candidate.compareTo(path) < 0) {
+                        path = candidate;
+                    }
+                }
+            }
+            if (path == null) {
+                return false;
+            }
+            for (int t = 0; t < trees.length; t += 1) {
+                if (next[t] < trees[t].paths.length && trees[t].paths[next[t]].equals(path)) {
+                    current[t] = next[t];
+                    next[t] += 1;
+                }
+                else {
+                    current[t] = -1;
+                }
+            }
+            return true;
+        }
+
+        /** Return the name the walk is at. */
+        public String path() {
+            return path;
+        }
+
+        /** Return true if tree T has the file the walk is at. */
+        public boolean has(int t) {
+            return current[t] >= 0;
+        }
+
+        /** Return the position of the file the walk is at in tree T, or -1
+         *  if tree T does not have it. */
+        public int index(int t) {
+            return current[t];
+        }
+
+        /** Return the blob SHA1 ID of the file the walk is at in tree T, or
+         *  null if tree T does not have it. */
+        public String sha1(int t) {
+            return has(t) ? trees[t].id(current[t]).name() : null;
+        }
+
+        /** Return true if trees T and U both have the file the walk is at
+         *  with the same blob, or both do not have it. */
+        public boolean same(int t, int u) {
+            if (!has(t) || !has(u)) {
+                return has(t) == has(u);
+            }
+            return trees[t].sameId(current[t], trees[u], current[u]);
+        }
+    }
+}
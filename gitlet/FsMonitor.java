@@ -0,0 +1,342 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents what a running file system monitor reports about the working
+ *  directory. The monitor is a separate gitlet process, started with the
+ *  fsmonitor command, that watches every directory of the working tree that
+ *  is not ignored with a WatchService and appends the path of every entry
+ *  created, changed or deleted to .gitlet/fsmonitor/log, or OVERFLOW if
+ *  it cannot tell which entries changed. The
+ *  monitor holds a lock on .gitlet/fsmonitor/daemon, which also records an
+ *  ID that changes every time it starts, for as long as it runs.
+ *
+ *  A command that wants to avoid stat'ing every working file asks the monitor
+ *  for the names changed since its token: the monitor's ID and an offset into
+ *  its log, saved along with the plain files the command last saw. To be sure
+ *  the monitor has caught up, the command first creates a cookie file and
+ *  waits for its name to show up in the log. If no monitor is running, it
+ *  restarted, the log overflowed or the cookie never shows up, the command
+ *  falls back to scanning the whole working directory.
+ *
+ *  @author Collin Bowers
+ */
+public class FsMonitor {
+
+    public static final File FSMONITOR_DIR = join(Repository.GITLET_DIR, "fsmonitor");
+    public static final File DAEMON_FILE = join(FSMONITOR_DIR, "daemon");
+    public static final File LOG_FILE = join(FSMONITOR_DIR, "log");
+    public static final File TOKEN_FILE = join(FSMONITOR_DIR, "token");
+    /** Names of the cookie files commands create in the working directory. */
+    public static final String COOKIE_PREFIX = ".gitlet-cookie-";
+    private static final String OVERFLOW = "/";
+    private static final long COOKIE_TIMEOUT_MILLIS = 1000;
+    private static final long POLL_MILLIS = 2;
+
+    private final String instance;
+    private final long offset;
+    private final SortedSet<String> changed;
+    private final List<String> knownFiles;
+
+    private FsMonitor(String instance, long offset, SortedSet<String> changed, List<String> knownFiles) {
+        this.instance = instance;
+        this.offset = offset;
+        this.changed = changed;
+        this.knownFiles = knownFiles;
+    }
+
+    /** Watch the working directory and log every change until the process is
+     *  killed. Exits if another monitor is already running. */
+    public static void run() {
+        FSMONITOR_DIR.mkdir();
+        try (FileChannel daemon = FileChannel.open(DAEMON_FILE.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            FileLock lock = daemon.tryLock();
+            if (lock == null) {
+                System.out.println("A file system monitor is already running.");
+                System.exit(0);
+            }
+            Watcher watching = new Watcher(watcher);
+            watching.register("");
+            String instance = sha1(Long.toString(ProcessHandle.current().pid()),
+                    Long.toString(System.nanoTime()));
+            try (FileOutputStream log = new FileOutputStream(LOG_FILE)) {
+                daemon.truncate(0);
+                daemon.write(StandardCharsets.UTF_8.encode(instance + "\n"), 0);
+                daemon.force(true);
+                System.out.println("Watching " + Repository.CWD + ".");
+                watching.watch(log);
+            }
+        } catch (IOException excp) {
+            System.out.println("Unable to watch " + Repository.CWD + ": " + excp.getMessage());
+            System.exit(0);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Watches every directory of the working tree that is not ignored. A
+     *  WatchService only reports the entries of a directory it was given, so
+     *  each directory is registered on its own and new ones as they appear. */
+    private static class Watcher {
+        private final WatchService watcher;
+        private final HashMap<WatchKey, String> dirs = new HashMap<>();
+        private final HashMap<String, WatchKey> keys = new HashMap<>();
+        private IgnoreRules rules = WorkingTree.ignoreRules();
+
+        Watcher(WatchService watcher) {
+            this.watcher = watcher;
+        }
+
+        /** Watch the directory PREFIX, empty or ending with /, and every
+         *  directory below it, returning the files found in them. */
+        List<String> register(String prefix) {
+            ArrayList<String> files = new ArrayList<>();
+            WorkingTree.walk(prefix, rules, new WorkingTree.Visitor() {
+                @Override
+                public void file(String path, BasicFileAttributes attributes) {
+                    files.add(path);
+                }
+
+                @Override
+                public void directory(String path, Path dir) {
+                    if (keys.containsKey(path)) {
+                        return;
+                    }
+                    try {
+                        WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                        dirs.put(key, path);
+                        keys.put(path, key);
+                    } catch (IOException excp) {
+                        throw error("Unable to watch %s: %s", dir, excp.getMessage());
+                    }
+                }
+            });
+            return files;
+        }
+
+        /** Stop watching the directory PREFIX and every directory below it. */
+        void unregister(String prefix) {
+            for (Iterator<Map.Entry<String, WatchKey>> it = keys.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, WatchKey> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    entry.getValue().cancel();
+                    dirs.remove(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        /** Append the path of every entry reported changed to LOG until the
+         *  top of the working directory goes away. A directory that appears
+         *  is watched and every file in it logged. A directory that goes away
+         *  or a change to the ignore file is logged as OVERFLOW, since the
+         *  changes below it or what is ignored cannot be known. */
+        void watch(FileOutputStream log) throws IOException, InterruptedException {
+            while (true) {
+                WatchKey key = watcher.take();
+                String prefix = dirs.get(key);
+                if (prefix == null) {
+                    key.reset();
+                    continue;
+                }
+                StringBuilder paths = new StringBuilder();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        paths.append(OVERFLOW).append('\n');
+                        continue;
+                    }
+                    String path = prefix + event.context();
+                    if (path.equals(Repository.GITLET_DIR.getName()) || rules.isIgnored(path)) {
+                        continue;
+                    }
+                    paths.append(path).append('\n');
+                    if (path.equals(WorkingTree.IGNORE_FILE_NAME)) {
+                        rules = WorkingTree.ignoreRules();
+                        register("");
+                        paths.append(OVERFLOW).append('\n');
+                    }
+                    else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && keys.containsKey(path + "/")) {
+                        unregister(path + "/");
+                        paths.append(OVERFLOW).append('\n');
+                    }
+                    else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                            && join(Repository.CWD, path).isDirectory()) {
+                        for (String file : register(path + "/")) {
+                            paths.append(file).append('\n');
+                        }
+                    }
+                }
+                log.write(paths.toString().getBytes(StandardCharsets.UTF_8));
+                if (!key.reset()) {
+                    dirs.remove(key);
+                    keys.remove(prefix);
+                    if (prefix.isEmpty()) {
+                        log.write((OVERFLOW + "\n").getBytes(StandardCharsets.UTF_8));
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return what the running monitor reports, or null if no monitor is
+     *  running or it does not answer in time. */
+    public static FsMonitor query() {
+        String instance = runningInstance();
+        if (instance == null) {
+            return null;
+        }
+        String[] token = readToken();
+        long start = (token != null && token[0].equals(instance)) ? Long.parseLong(token[1]) : 0;
+
+        File cookie = join(Repository.CWD, COOKIE_PREFIX + ProcessHandle.current().pid()
+                + "-" + System.nanoTime());
+        try {
+            if (!cookie.createNewFile()) {
+                return null;
+            }
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT_MILLIS;
+            while (System.currentTimeMillis() < deadline) {
+                FsMonitor monitor = readLog(instance, start, token, cookie.getName());
+                if (monitor != null) {
+                    return monitor;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+            return null;
+        } catch (IOException excp) {
+            return null;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Return the monitor's report made of the log of INSTANCE from offset
+     *  START up to the line COOKIE, using the saved TOKEN, or null if the
+     *  cookie is not in the log yet. */
+    private static FsMonitor readLog(String instance, long start, String[] token, String cookie) {
+        String log;
+        try (RandomAccessFile file = new RandomAccessFile(LOG_FILE, "r")) {
+            long length = file.length();
+            if (length < start) {
+                return new FsMonitor(instance, 0, null, null);
+            }
+            byte[] bytes = new byte[(int) (length - start)];
+            file.seek(start);
+            file.readFully(bytes);
+            log = new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            return null;
+        }
+
+        TreeSet<String> changed = new TreeSet<>();
+        boolean overflow = false;
+        int lineStart = 0;
+        for (int end = log.indexOf('\n'); end >= 0; end = log.indexOf('\n', lineStart)) {
+            String name = log.substring(lineStart, end);
+            lineStart = end + 1;
+            if (name.equals(cookie)) {
+                long offset = start + log.substring(0, lineStart).getBytes(StandardCharsets.UTF_8).length;
+                if (overflow || token == null || !token[0].equals(instance)) {
+                    return new FsMonitor(instance, offset, null, null);
+                }
+                List<String> known = Arrays.asList(token).subList(2, token.length);
+                return new FsMonitor(instance, offset, changed, known);
+            }
+            if (name.equals(OVERFLOW)) {
+                overflow = true;
+            }
+            else if (!name.startsWith(COOKIE_PREFIX)) {
+                changed.add(name);
+            }
+        }
+        return null;
+    }
+
+    /** Return the ID of the running monitor, or null if none is running. */
+    private static String runningInstance() {
+        if (!DAEMON_FILE.isFile()) {
+            return null;
+        }
+        try (FileChannel daemon = FileChannel.open(DAEMON_FILE.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = daemon.tryLock();
+            if (lock != null) {
+                lock.release();
+                return null;
+            }
+        } catch (IOException | OverlappingFileLockException excp) {
+            return null;
+        }
+        String instance = readContentsAsString(DAEMON_FILE).trim();
+        return instance.length() == UID_LENGTH ? instance : null;
+    }
+
+    /** Return the saved token as its monitor ID, log offset and known files,
+     *  or null if there is none. */
+    private static String[] readToken() {
+        if (!TOKEN_FILE.isFile()) {
+            return null;
+        }
+        String[] lines = readContentsAsString(TOKEN_FILE).split("\n");
+        String[] header = lines[0].split(" ");
+        if (header.length != 2 || !header[1].matches("\\d+")) {
+            return null;
+        }
+        String[] token = new String[lines.length + 1];
+        token[0] = header[0];
+        token[1] = header[1];
+        System.arraycopy(lines, 1, token, 2, lines.length - 1);
+        return token;
+    }
+
+    /** Return true if the monitor can say which files changed, and false if
+     *  the whole working directory has to be scanned. */
+    public boolean hasChanges() {
+        return changed != null;
+    }
+
+    /** Return the names of the entries changed since the saved token, in order. */
+    public SortedSet<String> getChanged() {
+        return changed;
+    }
+
+    /** Return the plain files, in order, that were in the working directory
+     *  when the saved token was taken. */
+    public List<String> getKnownFiles() {
+        return knownFiles;
+    }
+
+    /** Save a new token recording that FILES, in order, are the plain files in
+     *  the working directory as of this report. Nothing is saved if another
+     *  process is saving one. */
+    public void save(List<String> files) {
+        StringBuilder token = new StringBuilder();
+        token.append(instance).append(' ').append(offset).append('\n');
+        for (String file : files) {
+            token.append(file).append('\n');
+        }
+        LockFile lock = LockFile.tryAcquire(TOKEN_FILE, 0);
+        if (lock != null) {
+            lock.commit(token.toString());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import static gitlet.Utils.*;
+
+/**
+ *  Removes loose commits and blobs that can no longer be reached. Every
+ *  branch, remote-tracking branch and unexpired reflog entry is a root;
+ *  the history below the roots is marked in parallel by Reachability, and
+ *  every loose object that was not marked is deleted. The chunks of large
+ *  files are kept while a reachable or staged manifest lists them. Packs
+ *  are left alone.
+ *
+ *  @author Collin Bowers
+ */
+public class GarbageCollector {
+
+    /** How long reflog entries keep the commits they mention alive. */
+    public static final long REFLOG_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(90);
+    /** How old an unreachable loose object must be before it is removed,
+     *  so that objects another command is still writing are not swept. */
+    public static final long PRUNE_GRACE_MILLIS = TimeUnit.DAYS.toMillis(14);
+
+    /** Expire old reflog entries and delete every unreachable loose object
+     *  last modified more than PRUNEGRACE milliseconds ago. Nothing is
+     *  deleted if a reachable commit is missing. Returns the number of
+     *  objects deleted. */
+    public static int collect(long pruneGrace) {
+        long now = System.currentTimeMillis();
+        for (String branchName : Reflog.branches(Repository.GITLET_DIR)) {
+            Reflog.expire(branchName, now - REFLOG_EXPIRY_MILLIS);
+        }
+
+        Reachability reachable = Reachability.walk(Repository.GITLET_DIR,
+                Reachability.refRoots(Repository.GITLET_DIR));
+        if (!reachable.getBrokenCommits().isEmpty()) {
+            throw error("Commit %s is missing or corrupt; not removing anything.",
+                    reachable.getBrokenCommits().iterator().next());
+        }
+        Set<String> chunks = reachableChunks(reachable.getBlobs());
+        return sweep(Pack.COMMIT, reachable.getCommits(), now - pruneGrace)
+                + sweep(Pack.BLOB, reachable.getBlobs(), now - pruneGrace)
+                + sweep(Pack.MANIFEST, reachable.getBlobs(), now - pruneGrace)
+                + sweep(Pack.CHUNK, chunks, now - pruneGrace);
+    }
+
+    /** Return the SHA1 IDs of the chunks listed by the manifests in BLOBS
+     *  and by large files staged for addition. Throws if one of those
+     *  manifests cannot be read, so that its chunks are not removed. */
+    private static Set<String> reachableChunks(Set<String> blobs) {
+        HashSet<String> chunks = new HashSet<>();
+        for (String sha1 : Pack.listObjects(Repository.GITLET_DIR, Pack.MANIFEST)) {
+            if (!blobs.contains(sha1)) {
+                continue;
+            }
+            try {
+                chunks.addAll(Blob.loadRemoteBlob(sha1, Repository.GITLET_DIR).getChunkSHA1s());
+            } catch (RuntimeException excp) {
+                throw error("Manifest %s is corrupt; not removing anything.", sha1);
+            }
+        }
+        for (String key : plainFilenamesIn(Stage.ADDITION_DIR)) {
+            chunks.addAll(Stage.loadStagedFile(key, "add").getCurrFile().getChunkSHA1s());
+        }
+        return chunks;
+    }
+
+    /** Delete every loose object of the given type that is not in REACHABLE
+     *  and was last modified before CUTOFF, returning how many were deleted. */
+    private static int sweep(String type, Set<String> reachable, long cutoff) {
+        int removed = 0;
+        File dir = join(Repository.OBJECTS_DIR, type);
+        List<String> loose = plainFilenamesIn(dir);
+        if (loose == null) {
+            return 0;
+        }
+        for (String sha1 : loose) {
+            File object = join(dir, sha1);
+            if (!reachable.contains(sha1) && object.lastModified() < cutoff && object.delete()) {
+                removed += 1;
+            }
+        }
+        return removed;
+    }
+}
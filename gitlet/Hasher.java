@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ *  Computes SHA1 IDs without allocating on the way. Each thread keeps one
+ *  digest, a scratch array that strings are encoded into and a direct
+ *  buffer that small files are read into; larger files are mapped a window
+ *  at a time and fed to the digest directly. The digest is the platform's,
+ *  which the JVM compiles to the processor's SHA instructions where there
+ *  are any.
+ *
+ *  The ID of a file is the ID of its contents as a string, as add has
+ *  always computed it. For valid UTF-8 that is the ID of its bytes, so a
+ *  file is checked for valid UTF-8 as it is hashed and decoded and encoded
+ *  again only if it is not. A file larger than Blob.LARGE_FILE_THRESHOLD is
+ *  stored as its bytes in chunks rather than as a string, so its ID is
+ *  always the ID of its bytes.
+ *
+ *  @author Collin Bowers
+ */
+public class Hasher {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_WINDOW = 1L << 26;
+    private static final ThreadLocal<Hasher> LOCAL = ThreadLocal.withInitial(Hasher::new);
+
+    private final MessageDigest digest;
+    private final byte[] scratch = new byte[8192];
+    private final byte[] result = new byte[ObjectId.LENGTH];
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long length;
+
+    /** The continuation bytes the UTF-8 check still expects, and the range
+     *  the next one must be in. */
+    private int expected;
+    private int nextLow;
+    private int nextHigh;
+
+    private Hasher() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Return this thread's hasher, ready for a new ID. */
+    static Hasher start() {
+        Hasher hasher = LOCAL.get();
+        hasher.digest.reset();
+        hasher.length = 0;
+        return hasher;
+    }
+
+    /** Add BYTES to the ID. */
+    void update(byte[] bytes) {
+        digest.update(bytes);
+        length += bytes.length;
+    }
+
+    /** Add the UTF-8 encoding of S to the ID. */
+    void update(String s) {
+        int n = s.length();
+        int filled = 0;
+        for (int i = 0; i < n; i += 1) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                digest.update(scratch, 0, filled);
+                length += filled;
+                update(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            scratch[filled] = (byte) c;
+            filled += 1;
+            if (filled == scratch.length) {
+                digest.update(scratch, 0, filled);
+                length += filled;
+                filled = 0;
+            }
+        }
+        digest.update(scratch, 0, filled);
+        length += filled;
+    }
+
+    /** Add the remaining bytes of BYTES to the ID, consuming them. */
+    void update(ByteBuffer bytes) {
+        length += bytes.remaining();
+        digest.update(bytes);
+    }
+
+    /** Return the ID of everything added since start. */
+    ObjectId finish() {
+        try {
+            digest.digest(result, 0, result.length);
+        } catch (DigestException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.Counter.HASHES, 1);
+        Trace.count(Trace.Counter.BYTES_HASHED, length);
+        return ObjectId.fromBytes(result, 0);
+    }
+
+    /** Return the ID of BYTES. */
+    public static ObjectId hash(byte[] bytes) {
+        try (Trace span = Trace.span("sha1")) {
+            Hasher hasher = start();
+            hasher.update(bytes);
+            return hasher.finish();
+        }
+    }
+
+    /** Return the ID of the UTF-8 encoding of S. */
+    public static ObjectId hash(String s) {
+        try (Trace span = Trace.span("sha1")) {
+            Hasher hasher = start();
+            hasher.update(s);
+            return hasher.finish();
+        }
+    }
+
+    /** Return the ID of the remaining bytes of BYTES, consuming them. */
+    public static ObjectId hash(ByteBuffer bytes) {
+        try (Trace span = Trace.span("sha1")) {
+            Hasher hasher = start();
+            hasher.update(bytes);
+            return hasher.finish();
+        }
+    }
+
+    /** Return the ID of the contents of FILE as a string, which must be a
+     *  plain file. Throws IllegalArgumentException in case of problems. */
+    public static ObjectId hashFile(File file) {
+        ObjectId id;
+        try (Trace span = Trace.span("hashFile");
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Hasher hasher = start();
+            id = hasher.hashChannel(channel);
+            Trace.count(Trace.Counter.FILES_READ, 1);
+            Trace.count(Trace.Counter.FILE_BYTES_READ, hasher.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (id == null) {
+            id = hash(Utils.readContentsAsString(file));
+        }
+        return id;
+    }
+
+    /** Return the ID of what is left in CHANNEL, or null if it is not valid
+     *  UTF-8 and is not large enough to be stored in chunks. */
+    private ObjectId hashChannel(FileChannel channel) throws IOException {
+        expected = 0;
+        long size = channel.size();
+        boolean large = size > Blob.LARGE_FILE_THRESHOLD;
+        if (size < BUFFER_SIZE) {
+            buffer.clear();
+            while (channel.read(buffer) > 0) {
+                if (!buffer.hasRemaining()) {
+                    return null;
+                }
+            }
+            buffer.flip();
+            if (!large && !isUTF8(buffer)) {
+                return null;
+            }
+            update(buffer);
+        }
+        else {
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                if (!large && !isUTF8(window)) {
+                    return null;
+                }
+                update(window);
+            }
+        }
+        return (expected == 0 || large) ? finish() : null;
+    }
+
+    /** Return true if the remaining bytes of BYTES continue valid UTF-8 from
+     *  where the bytes checked before them left off, without consuming them. */
+    private boolean isUTF8(ByteBuffer bytes) {
+        for (int i = bytes.position(); i < bytes.limit(); i += 1) {
+            int b = bytes.get(i) & 0xff;
+            if (expected > 0) {
+                if (b < nextLow || b > nextHigh) {
+                    return false;
+                }
+                expected -= 1;
+                nextLow = 0x80;
+                nextHigh = 0xbf;
+            }
+            else if (b >= 0x80) {
+                nextLow = 0x80;
+                nextHigh = 0xbf;
+                if (b >= 0xc2 && b <= 0xdf) {
+                    expected = 1;
+                }
+                else if (b >= 0xe0 && b <= 0xef) {
+                    expected = 2;
+                    if (b == 0xe0) {
+                        nextLow = 0xa0;
+                    }
+                    else if (b == 0xed) {
+                        nextHigh = 0x9f;
+                    }
+                }
+                else if (b >= 0xf0 && b <= 0xf4) {
+                    expected = 3;
+                    if (b == 0xf0) {
+                        nextLow = 0x90;
+                    }
+                    else if (b == 0xf4) {
+                        nextHigh = 0x8f;
+                    }
+                }
+                else {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Pattern;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents the patterns in a .gitletignore file, compiled into a trie of
+ *  path components. Each line is a glob pattern: blank lines and lines
+ *  starting with # are skipped, * and ? match within one component, [...]
+ *  matches a set of characters, ** matches any number of components, a
+ *  trailing / matches only directories, and a pattern with a / anywhere
+ *  else is anchored at the top of the working directory while one without
+ *  matches at any depth.
+ *
+ *  Components without wildcards are followed through a hash map and the
+ *  rest through their compiled regular expressions. A walk keeps the set of
+ *  trie nodes its current directory has reached, so checking an entry only
+ *  costs one step from its parent, and an ignored directory is never entered.
+ *
+ *  @author Collin Bowers
+ */
+public class IgnoreRules {
+
+    private static final IgnoreRules NONE = new IgnoreRules();
+
+    private final Node root = new Node();
+
+    /** A node of the trie, reached by matching some components of a path. */
+    private static class Node {
+        private final HashMap<String, Node> literals = new HashMap<>();
+        private final ArrayList<Glob> globs = new ArrayList<>();
+        private Node anyDepth;
+        private boolean matchesFile;
+        private boolean matchesDir;
+        private boolean isAnyDepth;
+    }
+
+    /** An edge of the trie for a component with wildcards in it. */
+    private static class Glob {
+        private final String glob;
+        private final Pattern pattern;
+        private final Node node = new Node();
+
+        Glob(String glob) {
+            this.glob = glob;
+            this.pattern = Pattern.compile(globToRegex(glob));
+        }
+    }
+
+    /** Represents the trie nodes reached by the components of a directory. */
+    public static class State {
+        private final List<Node> nodes;
+
+        private State(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    /** Return the rules in FILE, or rules that ignore nothing if it does not exist. */
+    public static IgnoreRules load(File file) {
+        if (!file.isFile()) {
+            return NONE;
+        }
+        return parse(readContentsAsString(file));
+    }
+
+    /** Return the rules given by the lines of TEXT. */
+    public static IgnoreRules parse(String text) {
+        IgnoreRules rules = new IgnoreRules();
+        for (String line : text.split("\n")) {
+            rules.addPattern(line.strip());
+        }
+        return rules;
+    }
+
+    /** Add PATTERN, one line of an ignore file, to the trie. */
+    private void addPattern(String pattern) {
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        boolean dirOnly = pattern.endsWith("/");
+        if (dirOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+
+        Node node = anchored ? root : anyDepth(root);
+        for (String component : pattern.split("/")) {
+            if (component.isEmpty()) {
+                continue;
+            }
+            node = component.equals("**") ? anyDepth(node) : child(node, component);
+        }
+        node.matchesDir = true;
+        node.matchesFile |= !dirOnly;
+    }
+
+    /** Return the node under NODE that matches any number of components. */
+    private static Node anyDepth(Node node) {
+        if (node.anyDepth == null) {
+            node.anyDepth = new Node();
+            node.anyDepth.isAnyDepth = true;
+        }
+        return node.anyDepth;
+    }
+
+    /** Return the node under NODE that matches the glob COMPONENT. */
+    private static Node child(Node node, String component) {
+        if (!hasWildcard(component)) {
+            return node.literals.computeIfAbsent(component, c -> new Node());
+        }
+        for (Glob glob : node.globs) {
+            if (glob.glob.equals(component)) {
+                return glob.node;
+            }
+        }
+        Glob glob = new Glob(component);
+        node.globs.add(glob);
+        return glob.node;
+    }
+
+    /** Return the state of the top of the working directory. */
+    public State start() {
+        ArrayList<Node> nodes = new ArrayList<>();
+        addWithAnyDepth(nodes, root);
+        return new State(nodes);
+    }
+
+    /** Return the state of the entry NAME inside the directory whose state is
+     *  PARENT, or null if no pattern can match it or anything below it. */
+    public State step(State parent, String name) {
+        if (parent == null) {
+            return null;
+        }
+        ArrayList<Node> nodes = new ArrayList<>();
+        for (Node node : parent.nodes) {
+            if (node.isAnyDepth && !nodes.contains(node)) {
+                nodes.add(node);
+            }
+            Node literal = node.literals.get(name);
+            if (literal != null) {
+                addWithAnyDepth(nodes, literal);
+            }
+            for (Glob glob : node.globs) {
+                if (glob.pattern.matcher(name).matches()) {
+                    addWithAnyDepth(nodes, glob.node);
+                }
+            }
+        }
+        return nodes.isEmpty() ? null : new State(nodes);
+    }
+
+    /** Return true if an entry whose state is STATE is ignored, given whether
+     *  it IS a DIRECTORY. */
+    public static boolean isIgnored(State state, boolean isDirectory) {
+        if (state == null) {
+            return false;
+        }
+        for (Node node : state.nodes) {
+            if (isDirectory ? node.matchesDir : node.matchesFile) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true if the file at PATH, relative to the top of the working
+     *  directory and separated by /, or any directory above it is ignored. */
+    public boolean isIgnored(String path) {
+        State state = start();
+        String[] components = path.split("/");
+        for (int i = 0; i < components.length; i += 1) {
+            state = step(state, components[i]);
+            if (isIgnored(state, i < components.length - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add NODE to NODES along with the any-depth node below it, which also
+     *  matches zero components. */
+    private static void addWithAnyDepth(List<Node> nodes, Node node) {
+        if (!nodes.contains(node)) {
+            nodes.add(node);
+        }
+        if (node.anyDepth != null && !nodes.contains(node.anyDepth)) {
+            nodes.add(node.anyDepth);
+        }
+    }
+
+    /** Return true if the glob COMPONENT has a wildcard in it. */
+    private static boolean hasWildcard(String component) {
+        return component.indexOf('*') >= 0 || component.indexOf('?') >= 0 || component.indexOf('[') >= 0;
+    }
+
+    /** Return the regular expression matching the same names as the glob COMPONENT. */
+    private static String globToRegex(String component) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < component.length(); i += 1) {
+            char c = component.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            }
+            else if (c == '?') {
+                regex.append('.');
+            }
+            else if (c == '[' && component.indexOf(']', i + 1) > i + 1) {
+                int end = component.indexOf(']', i + 1);
+                String set = component.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\")).append(']');
+                i = end;
+            }
+            else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import static gitlet.Utils.*;
+
+/**
+ *  Checks that the objects in a repository are intact and connected, and
+ *  reports every problem found as a line such as "missing blob SHA1",
+ *  "corrupt commit SHA1", "dangling commit SHA1" or "corrupt pack NAME".
+ *
+ *  Every pack is checked against its checksum. Unless the check is fast,
+ *  every commit and blob is also read back on a parallel pool: a blob must
+ *  hash to its ID, and a commit must be readable and, serialized without
+ *  its ID, hash to it.
+ *  The chunks of a large file must hash to their own IDs and, read in the
+ *  order its manifest lists them, to the ID of the file.
+ *  Objects are read one at a time per worker, so memory use depends on
+ *  the number of objects rather than on their size. Blobs left on the
+ *  remote by a partial clone are not reported missing.
+ *
+ *  @author Collin Bowers
+ */
+public class IntegrityChecker {
+
+    private final File gitletDir;
+    private final Set<String> problems = new ConcurrentSkipListSet<>();
+
+    private IntegrityChecker(File gitletDir) {
+        this.gitletDir = gitletDir;
+    }
+
+    /** Check the local repository, reading every object unless FAST is true,
+     *  and return the problems found in sorted order. */
+    public static Set<String> check(boolean fast) {
+        IntegrityChecker checker = new IntegrityChecker(Repository.GITLET_DIR);
+        for (String pack : Pack.findCorruptPacks(checker.gitletDir)) {
+            checker.problems.add("corrupt pack " + pack);
+        }
+
+        List<String> commits = Pack.listObjects(checker.gitletDir, Pack.COMMIT);
+        List<String> blobs = Pack.listObjects(checker.gitletDir, Pack.BLOB);
+        List<String> manifests = Pack.listObjects(checker.gitletDir, Pack.MANIFEST);
+        List<String> chunks = Pack.listObjects(checker.gitletDir, Pack.CHUNK);
+        if (!fast) {
+            commits.parallelStream().forEach(checker::checkCommit);
+            blobs.parallelStream().forEach(checker::checkBlob);
+            manifests.parallelStream().forEach(checker::checkManifest);
+            chunks.parallelStream().forEach(checker::checkChunk);
+        }
+        checker.checkConnectivity(commits, blobs, manifests);
+        checker.checkChunks(manifests, chunks);
+        return checker.problems;
+    }
+
+    /** Report the commit with the given SHA1 ID if it cannot be read or does
+     *  not hash to SHA1. */
+    private void checkCommit(String sha1) {
+        try {
+            byte[] contents = Pack.readObjectBytes(gitletDir, Pack.COMMIT, sha1);
+            Commit commit = deserialize(contents, Commit.class);
+            if (!commit.hasId(sha1)) {
+                problems.add("corrupt commit " + sha1);
+            }
+        } catch (RuntimeException excp) {
+            problems.add("corrupt commit " + sha1);
+        }
+    }
+
+    /** Report the blob with the given SHA1 ID if it cannot be read or its
+     *  contents do not hash to SHA1. */
+    private void checkBlob(String sha1) {
+        try {
+            byte[] contents = Pack.readObjectBytes(gitletDir, Pack.BLOB, sha1);
+            Blob blob = deserialize(contents, Blob.class);
+            if (blob.isChunked() || !blob.hasId(sha1)) {
+                problems.add("corrupt blob " + sha1);
+            }
+        } catch (RuntimeException excp) {
+            problems.add("corrupt blob " + sha1);
+        }
+    }
+
+    /** Report the manifest with the given SHA1 ID if it cannot be read or
+     *  its chunks, read one after another, do not hash to SHA1. A missing
+     *  chunk is left to checkChunks. */
+    private void checkManifest(String sha1) {
+        try {
+            byte[] contents = Pack.readObjectBytes(gitletDir, Pack.MANIFEST, sha1);
+            Blob blob = deserialize(contents, Blob.class);
+            if (!blob.isChunked() || !blob.hasId(sha1)) {
+                problems.add("corrupt manifest " + sha1);
+                return;
+            }
+            Hasher hasher = Hasher.start();
+            for (String chunkSHA1 : blob.getChunkSHA1s()) {
+                byte[] chunk = Pack.readObjectBytes(gitletDir, Pack.CHUNK, chunkSHA1);
+                if (chunk == null) {
+                    return;
+                }
+                hasher.update(chunk);
+            }
+            if (!sha1.equals(hasher.finish().name())) {
+                problems.add("corrupt manifest " + sha1);
+            }
+        } catch (RuntimeException excp) {
+            problems.add("corrupt manifest " + sha1);
+        }
+    }
+
+    /** Report the chunk with the given SHA1 ID if its bytes do not hash to SHA1. */
+    private void checkChunk(String sha1) {
+        byte[] contents = Pack.readObjectBytes(gitletDir, Pack.CHUNK, sha1);
+        if (contents == null || !sha1.equals(Blob.chunkSHA1(contents))) {
+            problems.add("corrupt chunk " + sha1);
+        }
+    }
+
+    /** Report the chunks listed by the stored MANIFESTS that are missing,
+     *  and the stored CHUNKS that no manifest lists as dangling. */
+    private void checkChunks(List<String> manifests, List<String> chunks) {
+        HashSet<String> listed = new HashSet<>();
+        for (String sha1 : manifests) {
+            try {
+                byte[] contents = Pack.readObjectBytes(gitletDir, Pack.MANIFEST, sha1);
+                listed.addAll(deserialize(contents, Blob.class).getChunkSHA1s());
+            } catch (RuntimeException excp) {
+                problems.add("corrupt manifest " + sha1);
+            }
+        }
+        for (String sha1 : listed) {
+            if (!Pack.hasObject(gitletDir, Pack.CHUNK, sha1)) {
+                problems.add("missing chunk " + sha1);
+            }
+        }
+        for (String sha1 : chunks) {
+            if (!listed.contains(sha1)) {
+                problems.add("dangling chunk " + sha1);
+            }
+        }
+    }
+
+    /** Walk the history of every branch, remote-tracking branch and reflog,
+     *  reporting reachable objects that are missing or unreadable, and report
+     *  the stored COMMITS, BLOBS and MANIFESTS that nothing reaches as dangling. */
+    private void checkConnectivity(List<String> commits, List<String> blobs, List<String> manifests) {
+        Reachability reachable = Reachability.walk(gitletDir, Reachability.refRoots(gitletDir));
+        for (String sha1 : reachable.getBrokenCommits()) {
+            boolean stored = Pack.hasObject(gitletDir, Pack.COMMIT, sha1);
+            problems.add((stored ? "corrupt commit " : "missing commit ") + sha1);
+        }
+
+        boolean promisor = join(gitletDir, "promisor").isFile();
+        for (String sha1 : reachable.getBlobs()) {
+            if (!promisor && !Blob.hasBlob(gitletDir, sha1)) {
+                problems.add("missing blob " + sha1);
+            }
+        }
+
+        for (String sha1 : commits) {
+            if (!reachable.getCommits().contains(sha1) && !reachable.getBrokenCommits().contains(sha1)) {
+                problems.add("dangling commit " + sha1);
+            }
+        }
+        for (String sha1 : blobs) {
+            if (!reachable.getBlobs().contains(sha1)) {
+                problems.add("dangling blob " + sha1);
+            }
+        }
+        for (String sha1 : manifests) {
+            if (!reachable.getBlobs().contains(sha1)) {
+                problems.add("dangling manifest " + sha1);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package gitlet;
+
+import java.util.*;
+
+/**
+ *  Computes the lines that differ between two versions of a file using
+ *  Myers' linear-space algorithm. Every distinct line is interned to an int
+ *  ID first, so the algorithm compares ints instead of strings. Lines that
+ *  appear in only one version can never match, so they are marked changed
+ *  up front and left out of the search, and the common prefix and suffix
+ *  of each subproblem are trimmed before searching for its middle snake.
+ *  Memory use is proportional to the number of lines.
+ *
+ *  Once the search for a subproblem has cost more edits than the square
+ *  root of the number of lines searched, or MIN_COST if that is more, it
+ *  is split at the furthest point reached so far, as xdiff does. This keeps
+ *  wildly different files from taking quadratic time at the price of a
+ *  diff that may not be minimal.
+ *
+ *  @author Collin Bowers
+ */
+public class LineDiff {
+
+    private static final int MIN_COST = 256;
+
+    private final int[] a;
+    private final int[] b;
+    private final int[] aLines;
+    private final int[] bLines;
+    private final boolean[] deleted;
+    private final boolean[] added;
+    /** The most edits the search for one middle snake may cost. */
+    private final int maxCost;
+
+    /** Represents a run of consecutive changed lines: old lines
+     *  [oldStart, oldEnd) are replaced by new lines [newStart, newEnd). */
+    public static class Change {
+        public final int oldStart;
+        public final int oldEnd;
+        public final int newStart;
+        public final int newEnd;
+
+        Change(int oldStart, int oldEnd, int newStart, int newEnd) {
+            this.oldStart = oldStart;
+            this.oldEnd = oldEnd;
+            this.newStart = newStart;
+            this.newEnd = newEnd;
+        }
+    }
+
+    /** Compare OLDLINES with NEWLINES. */
+    public LineDiff(String[] oldLines, String[] newLines) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] oldIDs = intern(oldLines, ids);
+        int[] newIDs = intern(newLines, ids);
+        this.deleted = new boolean[oldIDs.length];
+        this.added = new boolean[newIDs.length];
+
+        boolean[] inOld = new boolean[ids.size()];
+        boolean[] inNew = new boolean[ids.size()];
+        for (int id : oldIDs) {
+            inOld[id] = true;
+        }
+        for (int id : newIDs) {
+            inNew[id] = true;
+        }
+        this.aLines = keepMatchable(oldIDs, inNew, deleted);
+        this.bLines = keepMatchable(newIDs, inOld, added);
+        this.a = new int[aLines.length];
+        this.b = new int[bLines.length];
+        for (int i = 0; i < a.length; i += 1) {
+            a[i] = oldIDs[aLines[i]];
+        }
+        for (int i = 0; i < b.length; i += 1) {
+            b[i] = newIDs[bLines[i]];
+        }
+        this.maxCost = Math.max(MIN_COST, (int) Math.sqrt(a.length + b.length + 3));
+        compare();
+    }
+
+    /** Return the positions of the lines in IDS that also appear in the
+     *  other version according to INOTHER, marking the rest in CHANGED. */
+    private static int[] keepMatchable(int[] ids, boolean[] inOther, boolean[] changed) {
+        int[] kept = new int[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i += 1) {
+            if (inOther[ids[i]]) {
+                kept[count] = i;
+                count += 1;
+            }
+            else {
+                changed[i] = true;
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /** Return the runs of changed lines, in order. */
+    public List<Change> getChanges() {
+        ArrayList<Change> changes = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < deleted.length || j < added.length) {
+            if ((i < deleted.length && deleted[i]) || (j < added.length && added[j])) {
+                int oldStart = i;
+                int newStart = j;
+                while (i < deleted.length && deleted[i]) {
+                    i += 1;
+                }
+                while (j < added.length && added[j]) {
+                    j += 1;
+                }
+                changes.add(new Change(oldStart, i, newStart, j));
+            }
+            else {
+                i += 1;
+                j += 1;
+            }
+        }
+        return changes;
+    }
+
+    /** Return the ID of each of LINES, giving equal lines equal IDs. */
+    private static int[] intern(String[] lines, HashMap<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /** Mark every deleted and added line, splitting the problem at middle
+     *  snakes until every piece is trivial. An explicit stack of
+     *  {aLo, aHi, bLo, bHi} pieces keeps deep splits off the call stack. */
+    private void compare() {
+        ArrayDeque<int[]> pieces = new ArrayDeque<>();
+        pieces.push(new int[] {0, a.length, 0, b.length});
+        while (!pieces.isEmpty()) {
+            int[] piece = pieces.pop();
+            int aLo = piece[0];
+            int aHi = piece[1];
+            int bLo = piece[2];
+            int bHi = piece[3];
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                markChanged(aLo, aHi, bLo, bHi);
+                continue;
+            }
+
+            int[] split = middleSnake(aLo, aHi, bLo, bHi);
+            if (split == null || (split[0] == 0 && split[1] == 0)
+                    || (split[0] == aHi - aLo && split[1] == bHi - bLo)) {
+                markChanged(aLo, aHi, bLo, bHi);
+                continue;
+            }
+            pieces.push(new int[] {aLo + split[0], aHi, bLo + split[1], bHi});
+            pieces.push(new int[] {aLo, aLo + split[0], bLo, bLo + split[1]});
+        }
+    }
+
+    /** Mark the searched lines [ALO, AHI) as deleted and [BLO, BHI) as added. */
+    private void markChanged(int aLo, int aHi, int bLo, int bHi) {
+        for (int i = aLo; i < aHi; i += 1) {
+            deleted[aLines[i]] = true;
+        }
+        for (int i = bLo; i < bHi; i += 1) {
+            added[bLines[i]] = true;
+        }
+    }
+
+    /** Return the point {x, y}, relative to (ALO, BLO), at which an optimal
+     *  path through the piece crosses from its forward half to its backward
+     *  half, or null if the two ranges have no line in common. The piece
+     *  must not start or end with a common line. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int reach = Math.min(maxD, maxCost + 1);
+        int offset = reach + 1;
+        int[] forward = new int[2 * reach + 3];
+        int[] backward = new int[2 * reach + 3];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int kStartF = 0;
+        int kEndF = 0;
+        int kStartB = 0;
+        int kEndB = 0;
+
+        for (int d = 0; d < maxD; d += 1) {
+            if (d > maxCost) {
+                return furthestReached(forward, offset, d, n, m);
+            }
+            for (int k = -d + kStartF; k <= d - kEndF; k += 2) {
+                int x = (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                if (x > n) {
+                    kEndF += 2;
+                }
+                else if (y > m) {
+                    kStartF += 2;
+                }
+                else if (odd) {
+                    int kB = offset + delta - k;
+                    if (kB >= 0 && kB < backward.length && backward[kB] != -1 && x >= n - backward[kB]) {
+                        return new int[] {x, y};
+                    }
+                }
+            }
+            for (int k = -d + kStartB; k <= d - kEndB; k += 2) {
+                int x = (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - x - 1] == b[bHi - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                if (x > n) {
+                    kEndB += 2;
+                }
+                else if (y > m) {
+                    kStartB += 2;
+                }
+                else if (!odd) {
+                    int kF = offset + delta - k;
+                    if (kF >= 0 && kF < forward.length && forward[kF] != -1) {
+                        int xF = forward[kF];
+                        int yF = xF - (kF - offset);
+                        if (xF >= n - x) {
+                            return new int[] {xF, yF};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return the point on the forward frontier, after D - 1 edits, that is
+     *  furthest from the start of the piece, so long as it is inside the piece. */
+    private static int[] furthestReached(int[] forward, int offset, int d, int n, int m) {
+        int[] best = null;
+        for (int k = -(d - 1); k <= d - 1; k += 1) {
+            int x = forward[offset + k];
+            int y = x - k;
+            if (x < 0 || x > n || y < 0 || y > m || (x == 0 && y == 0) || (x == n && y == m)) {
+                continue;
+            }
+            if (best == null || x + y > best[0] + best[1]) {
+                best = new int[] {x, y};
+            }
+        }
+        return best;
+    }
+}
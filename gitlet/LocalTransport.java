@@ -0,0 +1,56 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ *  Represents a transport to a remote repository on the local filesystem.
+ *  Objects are copied directly between the two .gitlet directories.
+ *
+ *  @author Collin Bowers
+ */
+public class LocalTransport implements Transport {
+
+    private File path;
+
+    public LocalTransport(File path) {
+        this.path = path;
+    }
+
+    @Override
+    public Map<String, String> listRefs() {
+        if (!path.isDirectory()) {
+            System.out.println("Remote directory not found.");
+            System.exit(0);
+        }
+        Branch.upgradeRefs(path);
+        return Branch.loadAllBranches(path, false);
+    }
+
+    @Override
+    public List<String> fetch(Collection<String> wants, Collection<String> haves,
+                              Predicate<String> claim, int depth, long blobLimit) {
+        ArrayList<String> shallow = new ArrayList<>();
+        List<String[]> missing = Pack.findMissing(path, Repository.GITLET_DIR, wants, depth, shallow);
+        Pack.removeLargeBlobs(path, missing, blobLimit);
+        missing.removeIf(obj -> !claim.test(obj[1]));
+        Pack.transfer(path, Repository.GITLET_DIR, missing, "Receiving objects");
+        return shallow;
+    }
+
+    @Override
+    public void fetchObjects(List<String[]> objects) {
+        Pack.transfer(path, Repository.GITLET_DIR, objects, "Receiving objects");
+    }
+
+    @Override
+    public void push(String branchName, String oldSHA1, String newSHA1) {
+        List<String[]> missing = Pack.findMissing(Repository.GITLET_DIR, path, List.of(newSHA1), 0, null);
+        Pack.transfer(Repository.GITLET_DIR, path, missing, "Writing objects");
+        Server.updateBranch(path, branchName, oldSHA1, newSHA1);
+    }
+}
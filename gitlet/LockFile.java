@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents a lock on a file in the .gitlet directory, held by creating
+ *  FILE.lock next to it. Only one gitlet process can create the lock file,
+ *  so only one can update the file at a time. New contents are written into
+ *  the lock file itself and renamed over the original, so readers only ever
+ *  see the old or the new version. Locks a process still holds when it exits
+ *  are removed.
+ *
+ *  By default a command fails immediately if a lock is taken; setting the
+ *  GITLET_LOCK_TIMEOUT environment variable to a number of milliseconds
+ *  makes it wait that long for the other process instead.
+ *
+ *  @author Collin Bowers
+ */
+public class LockFile {
+
+    public static final File INDEX_LOCK_TARGET = join(Repository.GITLET_DIR, "index");
+    private static final long RETRY_MILLIS = 20;
+    private static final Set<File> HELD = Collections.synchronizedSet(new HashSet<>());
+    private static LockFile indexLock;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (HELD) {
+                for (File lock : HELD) {
+                    lock.delete();
+                }
+            }
+        }));
+    }
+
+    private File target;
+    private File lock;
+
+    private LockFile(File target) {
+        this.target = target;
+        this.lock = new File(target.getPath() + ".lock");
+    }
+
+    /** Lock TARGET, waiting up to GITLET_LOCK_TIMEOUT milliseconds for another
+     *  process to release it. Exits the program if the lock cannot be taken. */
+    public static LockFile acquire(File target) {
+        LockFile lockFile = tryAcquire(target, timeout());
+        if (lockFile == null) {
+            System.out.println(lockedMessage(target));
+            System.exit(0);
+        }
+        return lockFile;
+    }
+
+    /** Lock TARGET, waiting up to TIMEOUT milliseconds for another process to
+     *  release it. Returns null if the lock cannot be taken in time. */
+    public static LockFile tryAcquire(File target, long timeout) {
+        LockFile lockFile = new LockFile(target);
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!lockFile.tryCreate()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return lockFile;
+    }
+
+    /** Return the message shown when TARGET is locked by another process. */
+    static String lockedMessage(File target) {
+        return "Unable to lock " + target.getName() + ": another gitlet process is running. If not, remove "
+                + target.getPath() + ".lock.";
+    }
+
+    /** Atomically replace the contents of TARGET with CONTENTS under its lock. */
+    public static void write(File target, Object... contents) {
+        LockFile lockFile = acquire(target);
+        lockFile.commit(contents);
+    }
+
+    /** Hold the lock on the staging area until the program exits. Commands
+     *  that change the staging area call this before touching it so that two
+     *  of them never run against the same repository at once. */
+    public static void lockIndex() {
+        if (indexLock == null) {
+            indexLock = acquire(INDEX_LOCK_TARGET);
+        }
+    }
+
+    /** Write CONTENTS into the lock file, flush it to disk, and rename it over
+     *  the locked file, which releases the lock. */
+    public void commit(Object... contents) {
+        prepare(contents);
+        renameIntoPlace();
+    }
+
+    /** Write CONTENTS into the lock file and flush it to disk without
+     *  replacing the locked file yet. */
+    public void prepare(Object... contents) {
+        try {
+            writeSynced(lock, contents);
+        } catch (IllegalArgumentException excp) {
+            release();
+            throw excp;
+        }
+    }
+
+    /** Rename the prepared lock file over the locked file, which releases the lock. */
+    public void renameIntoPlace() {
+        try {
+            renameAtomically(lock, target);
+        } catch (IllegalArgumentException excp) {
+            release();
+            throw excp;
+        }
+        HELD.remove(lock);
+    }
+
+    /** Give up the lock without changing the locked file. */
+    public void release() {
+        lock.delete();
+        HELD.remove(lock);
+    }
+
+    /** Return the file this lock protects. */
+    public File getTarget() {
+        return target;
+    }
+
+    /** Try once to create the lock file, returning true if this process now holds it. */
+    private boolean tryCreate() {
+        try {
+            Files.createFile(lock.toPath());
+            HELD.add(lock);
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw error("Unable to create %s: %s", lock.getPath(), excp.getMessage());
+        }
+    }
+
+    /** Return how long to wait for a lock, in milliseconds. */
+    static long timeout() {
+        String timeout = System.getenv("GITLET_LOCK_TIMEOUT");
+        if (timeout == null || timeout.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(timeout);
+        } catch (NumberFormatException excp) {
+            return 0;
+        }
+    }
+}
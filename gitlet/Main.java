@@ -1,5 +1,10 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  *  Main driver class for Gitlet, a subset of the Git version-control system.
  *  This class takes in the users' input from the command line and
@@ -18,12 +23,36 @@ public class Main {
             System.exit(0);
         }
         String firstArg = args[0];
+        Trace.startCommand(args);
 
-        if (!Repository.GITLET_DIR.exists() && !args[0].equals("init")) {
+        if (!Repository.GITLET_DIR.exists() && !args[0].equals("init") && !args[0].equals("serve")
+                && !args[0].equals("clone")) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
 
+        try {
+            if (Repository.GITLET_DIR.exists()) {
+                Repository.upgrade();
+            }
+            runCommand(firstArg, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Commands that change the staging area or working directory, and so
+     *  must not run at the same time as one another. */
+    private static final List<String> INDEX_COMMANDS = List.of(
+            "add", "commit", "rm", "checkout", "reset", "merge", "pull", "gc", "sparse-checkout");
+
+    /** Call the Repository method for the command FIRSTARG with operands ARGS. */
+    private static void runCommand(String firstArg, String[] args) {
+        if (INDEX_COMMANDS.contains(firstArg)) {
+            LockFile.lockIndex();
+        }
+
         switch(firstArg) {
             case "init":
                 validateNumArgs("init", args, 1);
@@ -68,13 +97,103 @@ public class Main {
                 validateNumArgs("rm-branch", args, 2);
                 Repository.removeBranch(args[1]);
                 break;
+            case "update-ref":
+                if (args.length != 2 || !args[1].equals("--stdin")) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                Repository.updateRefs(new BufferedReader(new InputStreamReader(System.in)));
+                break;
+            case "bundle":
+                if (args.length > 3 && args[1].equals("create")) {
+                    Repository.createBundle(args[2], Arrays.asList(args).subList(3, args.length));
+                }
+                else if (args.length == 3 && args[1].equals("unbundle")) {
+                    Repository.unbundle(args[2]);
+                }
+                else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+            case "sparse-checkout":
+                if (args.length > 2 && args[1].equals("set")) {
+                    Repository.sparseCheckout(Arrays.asList(args).subList(2, args.length));
+                }
+                else if (args.length == 2 && args[1].equals("disable")) {
+                    Repository.sparseCheckout(null);
+                }
+                else if (args.length == 2 && args[1].equals("list")) {
+                    Repository.sparseCheckoutList();
+                }
+                else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+            case "fast-import":
+                validateNumArgs("fast-import", args, 1);
+                Repository.fastImport(System.in);
+                break;
+            case "reflog":
+                if (args.length > 2) {
+                    validateNumArgs("reflog", args, 2);
+                }
+                Repository.reflog(args.length == 2 ? args[1] : null);
+                break;
+            case "gc":
+                if (args.length == 2 && args[1].equals("--prune=now")) {
+                    Repository.gc(0);
+                }
+                else {
+                    validateNumArgs("gc", args, 1);
+                    Repository.gc(GarbageCollector.PRUNE_GRACE_MILLIS);
+                }
+                break;
+            case "fsck":
+                if (args.length == 2 && args[1].equals("--fast")) {
+                    Repository.fsck(true);
+                }
+                else {
+                    validateNumArgs("fsck", args, 1);
+                    Repository.fsck(false);
+                }
+                break;
+            case "diff":
+                boolean copies = args.length > 1 && args[1].equals("-C");
+                String[] operands = args;
+                if (copies) {
+                    operands = new String[args.length - 1];
+                    operands[0] = args[0];
+                    System.arraycopy(args, 2, operands, 1, args.length - 2);
+                }
+                if (operands.length == 1) {
+                    Repository.diff(copies);
+                }
+                else if (operands.length == 2 && operands[1].equals("--cached")) {
+                    Repository.diffCached(copies);
+                }
+                else {
+                    validateNumArgs("diff", operands, 3);
+                    Repository.diff(operands[1], operands[2], copies);
+                }
+                break;
+            case "pack-refs":
+                validateNumArgs("pack-refs", args, 1);
+                Repository.packRefs();
+                break;
             case "reset":
                 validateNumArgs("reset", args, 2);
                 Repository.reset(args[1]);
                 break;
             case "merge":
-                validateNumArgs("merge", args, 2);
-                Repository.merge(args[1]);
+                if (args.length > 2) {
+                    Repository.merge(Arrays.asList(args).subList(1, args.length));
+                }
+                else {
+                    validateNumArgs("merge", args, 2);
+                    Repository.merge(args[1]);
+                }
                 break;
             case "add-remote":
                 validateNumArgs("add-remote", args, 3);
@@ -89,13 +208,34 @@ public class Main {
                 Repository.push(args[1], args[2]);
                 break;
             case "fetch":
-                validateNumArgs("fetch", args, 3);
-                Repository.fetch(args[1], args[2]);
+                if (args.length == 2 && args[1].equals("--all")) {
+                    Repository.fetchAll();
+                }
+                else if (args.length > 3) {
+                    Repository.fetch(args[1], Arrays.asList(args).subList(2, args.length));
+                }
+                else {
+                    validateNumArgs("fetch", args, 3);
+                    Repository.fetch(args[1], args[2]);
+                }
                 break;
             case "pull":
                 validateNumArgs("pull", args, 3);
                 Repository.pull(args[1], args[2]);
                 break;
+            case "clone":
+                handleClone(args);
+                break;
+            case "fsmonitor":
+                validateNumArgs("fsmonitor", args, 1);
+                Repository.fsmonitor();
+                break;
+            case "serve":
+                if (args.length > 2) {
+                    validateNumArgs("serve", args, 2);
+                }
+                Repository.serve(args.length == 2 ? (int) parseNumber(args[1], 65535) : Server.DEFAULT_PORT);
+                break;
             default:
                 System.out.println("No command with that name exists.");
         }
@@ -117,6 +257,61 @@ public class Main {
         }
     }
 
+    /** Usage: clone LOCATION [--depth N] [--filter=blob:limit=SIZE], where SIZE
+     *  may end in k, m or g. */
+    public static void handleClone(String[] args) {
+        if (args.length < 2) {
+            validateNumArgs("clone", args, 2);
+        }
+        int depth = 0;
+        long blobLimit = -1;
+        String filterPrefix = "--filter=blob:limit=";
+        for (int i = 2; i < args.length; i += 1) {
+            if (args[i].equals("--depth") && i + 1 < args.length) {
+                i += 1;
+                depth = (int) parseNumber(args[i], Integer.MAX_VALUE);
+            }
+            else if (args[i].startsWith(filterPrefix)) {
+                blobLimit = parseSize(args[i].substring(filterPrefix.length()));
+            }
+            else {
+                throw new RuntimeException(
+                        String.format("Invalid number of arguments for: clone."));
+            }
+        }
+        Repository.clone(args[1], depth, blobLimit);
+    }
+
+    /** Return the number of bytes SIZE describes, such as 512, 10k or 2m. */
+    private static long parseSize(String size) {
+        String units = "kmg";
+        int unit = -1;
+        if (!size.isEmpty()) {
+            unit = units.indexOf(Character.toLowerCase(size.charAt(size.length() - 1)));
+        }
+        if (unit == -1) {
+            return parseNumber(size, Long.MAX_VALUE);
+        }
+        int shift = 10 * (unit + 1);
+        return parseNumber(size.substring(0, size.length() - 1), Long.MAX_VALUE >> shift) << shift;
+    }
+
+    /** Return the number OPERAND, exiting with an error message if it is not
+     *  a whole number from 0 to MAX. */
+    private static long parseNumber(String operand, long max) {
+        long value;
+        try {
+            value = Long.parseLong(operand);
+        } catch (NumberFormatException excp) {
+            value = -1;
+        }
+        if (value < 0 || value > max) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        return value;
+    }
+
     public static void validateNumArgs(String cmd, String[] args, int n) {
         if (cmd == "commit" && args.length == 1) {
             throw new RuntimeException(
@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents what a merge does to each file, worked out before any of it
+ *  is done. The head, other and latest common ancestor trees are walked
+ *  together once to find the files they disagree on, and those are split
+ *  into chunks that are planned on a work-stealing pool: each file is
+ *  classified, the blobs it needs are read and, if it conflicts, its
+ *  conflicted contents are made. The plan is then applied on one thread
+ *  in name order, writing the working files, staging them and reporting
+ *  conflicts exactly as a file-by-file merge would, against the head tree
+ *  loaded once rather than once per file. Files outside the sparse cone
+ *  are staged without being written, unless they conflict.
+ *
+ *  @author Collin Bowers
+ */
+public class MergePlan {
+
+    /** Files planned by one task without splitting further. */
+    private static final int CHUNK = 64;
+
+    /** What the merge does to one file. */
+    private enum Kind { KEEP, TAKE, REMOVE, CONFLICT }
+
+    private final FileTree headFiles;
+    private final String[] names;
+    private final String[] headSHA1s;
+    private final String[] otherSHA1s;
+    private final String[] lcaSHA1s;
+    private final boolean[] headMoved;
+    private final Kind[] kinds;
+    private final Blob[] blobs;
+
+    private MergePlan(FileTree headFiles, List<String> names, List<String[]> sha1s, List<Boolean> headMoved) {
+        int size = names.size();
+        this.headFiles = headFiles;
+        this.names = names.toArray(new String[0]);
+        this.headSHA1s = new String[size];
+        this.otherSHA1s = new String[size];
+        this.lcaSHA1s = new String[size];
+        this.headMoved = new boolean[size];
+        for (int i = 0; i < size; i += 1) {
+            headSHA1s[i] = sha1s.get(i)[0];
+            otherSHA1s[i] = sha1s.get(i)[1];
+            lcaSHA1s[i] = sha1s.get(i)[2];
+            this.headMoved[i] = headMoved.get(i);
+        }
+        this.kinds = new Kind[size];
+        this.blobs = new Blob[size];
+    }
+
+    /** Return the plan for merging TREES, the head, other and latest common
+     *  ancestor trees with renamed files lined up, into the working directory.
+     *  HEADFILES is the head tree as committed, which a file missing from it
+     *  was moved from another name. */
+    public static MergePlan plan(FileTree[] trees, FileTree headFiles) {
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String[]> sha1s = new ArrayList<>();
+        ArrayList<Boolean> headMoved = new ArrayList<>();
+        ArrayList<String> needed = new ArrayList<>();
+        FileTree.Walk walk = new FileTree.Walk(trees);
+        while (walk.next()) {
+            boolean moved = !headFiles.containsKey(walk.path());
+            if (walk.same(0, 1) && walk.same(1, 2) && !moved) {
+                continue;
+            }
+            String[] sides = {walk.sha1(0), walk.sha1(1), walk.sha1(2)};
+            names.add(walk.path());
+            sha1s.add(sides);
+            headMoved.add(moved);
+            for (int t = 0; t < 2; t += 1) {
+                if (sides[t] != null) {
+                    needed.add(sides[t]);
+                }
+            }
+        }
+        Blob.prefetchBlobs(needed);
+
+        MergePlan plan = new MergePlan(headFiles, names, sha1s, headMoved);
+        try (Trace span = Trace.span("planMerge")) {
+            if (names.size() <= CHUNK) {
+                for (int i = 0; i < names.size(); i += 1) {
+                    plan.planFile(i);
+                }
+                return plan;
+            }
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                pool.invoke(plan.new PlanTask(0, names.size()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return plan;
+    }
+
+    /** Plans the files from LO up to HI, splitting them in half until there
+     *  are few enough to plan in one go. */
+    private class PlanTask extends RecursiveAction {
+        private final int lo;
+        private final int hi;
+
+        PlanTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= CHUNK) {
+                for (int i = lo; i < hi; i += 1) {
+                    planFile(i);
+                }
+            }
+            else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new PlanTask(lo, mid), new PlanTask(mid, hi));
+            }
+        }
+    }
+
+    /** Handle all the special cases associated with merging the Ith file. The logic is
+     *  primarily based on checking if the file under consideration has been modified, removed,
+     *  or created in the head commit, other branch head commit, or latest common ancestor
+     *  commit. If the head commit has the file under its old name, the merged version is
+     *  always written under the new name. */
+    private void planFile(int i) {
+        String headSHA1 = headSHA1s[i];
+        String otherSHA1 = otherSHA1s[i];
+        String lcaSHA1 = lcaSHA1s[i];
+        kinds[i] = Kind.KEEP;
+        if (lcaSHA1 != null && (headSHA1 == null && otherSHA1 == null)) {
+            return;
+        }
+        else if (headSHA1 != null && (otherSHA1 == null && lcaSHA1 == null)) {
+            return;
+        }
+        else if (otherSHA1 != null && (headSHA1 == null && lcaSHA1 == null)) {
+            take(i, otherSHA1);
+        }
+        else if (Objects.equals(headSHA1, lcaSHA1) && otherSHA1 == null) {
+            if (!headMoved[i]) {
+                kinds[i] = Kind.REMOVE;
+            }
+        }
+        else if (Objects.equals(otherSHA1, lcaSHA1) && headSHA1 == null) {
+            return;
+        }
+        else if (!Objects.equals(otherSHA1, lcaSHA1) && Objects.equals(headSHA1, lcaSHA1)) {
+            take(i, otherSHA1);
+        }
+        else if (Objects.equals(otherSHA1, lcaSHA1) || Objects.equals(headSHA1, otherSHA1)) {
+            if (headMoved[i]) {
+                take(i, headSHA1);
+            }
+        }
+        else {
+            conflict(i, Blob.loadBlob(headSHA1), Blob.loadBlob(otherSHA1));
+        }
+    }
+
+    /** Plan to write the blob with the given SHA1 ID as the Ith file and stage it. */
+    private void take(int i, String sha1) {
+        kinds[i] = Kind.TAKE;
+        blobs[i] = Blob.loadBlob(sha1).withName(names[i]);
+    }
+
+    /** Plan to write the Ith file, changed in different ways in the head commit and
+     *  other branch's head commit, so that the user can see how the file was
+     *  modified in each branch. */
+    private void conflict(int i, Blob headFile, Blob otherFile) {
+        String conflicted = "<<<<<<<< HEAD\n";
+        String headContents = (headFile == null) ? "" : headFile.getContents();
+        String otherContents = (otherFile == null) ? "" : otherFile.getContents();
+        conflicted += "contents of file in current branch" + headContents + "=======\n";
+        conflicted += "contents of file in given branch" + otherContents + ">>>>>>>";
+
+        kinds[i] = Kind.CONFLICT;
+        blobs[i] = new Blob(names[i], conflicted, sha1(conflicted));
+    }
+
+    /** Write, stage and remove the planned files in name order, informing
+     *  the user of each conflict. */
+    public void apply() {
+        SparseCheckout sparse = SparseCheckout.load();
+        try (Trace span = Trace.span("applyMerge")) {
+            for (int i = 0; i < names.length; i += 1) {
+                switch (kinds[i]) {
+                    case TAKE:
+                    case CONFLICT:
+                        if (kinds[i] == Kind.CONFLICT || sparse.contains(names[i])) {
+                            WorkingTree.writeFile(names[i], blobs[i]);
+                        }
+                        Stage add = new Stage(blobs[i], "add");
+                        add.handleAdding(headFiles);
+                        if (kinds[i] == Kind.CONFLICT) {
+                            System.out.println("Encountered a merge conflict.");
+                        }
+                        break;
+                    case REMOVE:
+                        new Stage(names[i], "remove").handleRemoving(headFiles);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/**
+ *  Represents the 20-byte SHA1 ID of an object as a value, held in two longs
+ *  and an int rather than in a 40-character string. IDs compare, hash and
+ *  sort by their bytes, in the same order as their hexadecimal names, and
+ *  are converted to and from those names with lookup tables.
+ *
+ *  @author Collin Bowers
+ */
+public final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    public static final int LENGTH = 20;
+    private static final long serialVersionUID = 4395628911384765120L;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /** Return the ID held in the 20 bytes of BYTES starting at OFFSET. */
+    public static ObjectId fromBytes(byte[] bytes, int offset) {
+        long w1 = 0;
+        long w2 = 0;
+        int w3 = 0;
+        for (int i = 0; i < 8; i += 1) {
+            w1 = (w1 << 8) | (bytes[offset + i] & 0xff);
+            w2 = (w2 << 8) | (bytes[offset + 8 + i] & 0xff);
+        }
+        for (int i = 16; i < LENGTH; i += 1) {
+            w3 = (w3 << 8) | (bytes[offset + i] & 0xff);
+        }
+        return new ObjectId(w1, w2, w3);
+    }
+
+    /** Return the ID whose hexadecimal name is NAME, or null if NAME is not
+     *  40 hexadecimal digits. */
+    public static ObjectId parse(CharSequence name) {
+        if (name == null || name.length() != 2 * LENGTH) {
+            return null;
+        }
+        long w1 = 0;
+        long w2 = 0;
+        int w3 = 0;
+        for (int i = 0; i < 2 * LENGTH; i += 1) {
+            char c = name.charAt(i);
+            int value = (c < 128) ? HEX_VALUES[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            if (i < 16) {
+                w1 = (w1 << 4) | value;
+            }
+            else if (i < 32) {
+                w2 = (w2 << 4) | value;
+            }
+            else {
+                w3 = (w3 << 4) | value;
+            }
+        }
+        return new ObjectId(w1, w2, w3);
+    }
+
+    /** Store the 20 bytes of the ID whose hexadecimal name is NAME in BYTES
+     *  starting at OFFSET, returning false if NAME is not 40 hexadecimal digits. */
+    public static boolean parse(CharSequence name, byte[] bytes, int offset) {
+        if (name == null || name.length() != 2 * LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i += 1) {
+            char high = name.charAt(2 * i);
+            char low = name.charAt(2 * i + 1);
+            int value = (high < 128 && low < 128) ? (HEX_VALUES[high] << 4) | HEX_VALUES[low] : -1;
+            if (value < 0) {
+                return false;
+            }
+            bytes[offset + i] = (byte) value;
+        }
+        return true;
+    }
+
+    /** Return the ID whose hexadecimal name is NAME, which must be valid. */
+    public static ObjectId fromHex(CharSequence name) {
+        ObjectId id = parse(name);
+        if (id == null) {
+            throw new IllegalArgumentException("not a SHA1 ID: " + name);
+        }
+        return id;
+    }
+
+    /** Copy the 20 bytes of this ID into BYTES starting at OFFSET. */
+    public void copyTo(byte[] bytes, int offset) {
+        for (int i = 0; i < 8; i += 1) {
+            bytes[offset + i] = (byte) (w1 >>> (56 - 8 * i));
+            bytes[offset + 8 + i] = (byte) (w2 >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i += 1) {
+            bytes[offset + 16 + i] = (byte) (w3 >>> (24 - 8 * i));
+        }
+    }
+
+    /** Return the 40-digit lowercase hexadecimal name of this ID. */
+    public String name() {
+        char[] name = new char[2 * LENGTH];
+        for (int i = 0; i < 16; i += 1) {
+            name[i] = HEX_DIGITS[(int) (w1 >>> (60 - 4 * i)) & 0xf];
+            name[16 + i] = HEX_DIGITS[(int) (w2 >>> (60 - 4 * i)) & 0xf];
+        }
+        for (int i = 0; i < 8; i += 1) {
+            name[32 + i] = HEX_DIGITS[(w3 >>> (28 - 4 * i)) & 0xf];
+        }
+        return new String(name);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    /** The bytes of an ID are already uniformly distributed, so any of them
+     *  make a good hash code. */
+    @Override
+    public int hashCode() {
+        return (int) (w1 >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(w1, other.w1);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w2, other.w2);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w3, other.w3);
+        }
+        return cmp;
+    }
+}
@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.util.*;
+
+/**
+ *  Merges several branches into the current branch at once. The merge
+ *  base of every branch is found in one walk: the history of the head
+ *  commit, through every parent, is loaded once, and each branch's
+ *  first-parent history is followed only until it meets it, so a branch
+ *  merged before through any parent is recognized as merged. The branches
+ *  are then merged into the head tree one after another in memory, each
+ *  against its own merge base, and the working directory is written once,
+ *  from the head tree to the merged tree, leaving out files outside the
+ *  sparse cone, which are only staged.
+ *
+ *  An octopus merge only combines changes that do not overlap. If two
+ *  sides change the same file in different ways the merge stops before
+ *  anything is written, so that the branches can be merged one at a time
+ *  and the conflict resolved by hand. Renames are not followed.
+ *
+ *  @author Collin Bowers
+ */
+public class OctopusMerge {
+
+    private final FileTree headFiles;
+    private FileTree mergedFiles;
+
+    private OctopusMerge(FileTree headFiles) {
+        this.headFiles = headFiles;
+        this.mergedFiles = headFiles;
+    }
+
+    /** Return the SHA1 ID of the merge base of HEADSHA1 and each commit in
+     *  OTHERSHA1S, in order: the first commit on the other commit's
+     *  first-parent history that is also in the head commit's history, or
+     *  null if the histories only meet beyond a shallow boundary. */
+    static List<String> mergeBases(String headSHA1, List<String> otherSHA1s) {
+        HashSet<String> headHistory = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(headSHA1);
+        while (!toVisit.isEmpty()) {
+            String sha1 = toVisit.pop();
+            if (headHistory.add(sha1)) {
+                for (String parentSHA1 : Commit.loadCommit(sha1).getParentSHA1s()) {
+                    toVisit.push(parentSHA1);
+                }
+            }
+        }
+        ArrayList<String> bases = new ArrayList<>();
+        for (String otherSHA1 : otherSHA1s) {
+            String sha1 = otherSHA1;
+            while (sha1 != null && !headHistory.contains(sha1)) {
+                sha1 = Commit.loadCommit(sha1).getParentSHA1();
+            }
+            bases.add(sha1);
+        }
+        return bases;
+    }
+
+    /** Return the merge of OTHERS, the trees of the branches to merge, into
+     *  HEADFILES, merging each against the tree at the same position in
+     *  BASES. Exits without changing anything if two sides conflict. */
+    static OctopusMerge merge(FileTree headFiles, List<FileTree> others, List<FileTree> bases) {
+        OctopusMerge merge = new OctopusMerge(headFiles);
+        for (int i = 0; i < others.size(); i += 1) {
+            merge.mergeTree(others.get(i), bases.get(i));
+        }
+        return merge;
+    }
+
+    /** Merge OTHERFILES into the files merged so far against BASEFILES. */
+    private void mergeTree(FileTree otherFiles, FileTree baseFiles) {
+        TreeMap<String, String> added = new TreeMap<>();
+        HashSet<String> removed = new HashSet<>();
+        FileTree.Walk walk = new FileTree.Walk(mergedFiles, otherFiles, baseFiles);
+        while (walk.next()) {
+            if (walk.same(1, 2) || walk.same(0, 1)) {
+                continue;
+            }
+            else if (walk.same(0, 2)) {
+                if (walk.has(1)) {
+                    added.put(walk.path(), walk.sha1(1));
+                }
+                else {
+                    removed.add(walk.path());
+                }
+            }
+            else {
+                System.out.println("Encountered a merge conflict in " + walk.path()
+                        + "; merge the branches one at a time.");
+                System.exit(0);
+            }
+        }
+        mergedFiles = mergedFiles.with(added, removed);
+    }
+
+    /** Return the files tracked by the merge. */
+    FileTree getMergedFiles() {
+        return mergedFiles;
+    }
+
+    /** Write every file the merge changed from the head tree to the working
+     *  directory and stage it, and stage every file it removed for removal.
+     *  Files outside the sparse cone are staged without being written. */
+    void apply() {
+        SparseCheckout sparse = SparseCheckout.load();
+        ArrayList<String> changedSHA1s = new ArrayList<>();
+        FileTree.Walk walk = new FileTree.Walk(headFiles, mergedFiles);
+        while (walk.next()) {
+            if (walk.has(1) && !walk.same(0, 1)) {
+                changedSHA1s.add(walk.sha1(1));
+            }
+        }
+        Blob.prefetchBlobs(changedSHA1s);
+
+        walk = new FileTree.Walk(headFiles, mergedFiles);
+        while (walk.next()) {
+            if (walk.same(0, 1)) {
+                continue;
+            }
+            else if (walk.has(1)) {
+                Blob blob = Blob.loadBlob(walk.sha1(1)).withName(walk.path());
+                if (sparse.contains(walk.path())) {
+                    WorkingTree.writeFile(walk.path(), blob);
+                }
+                new Stage(blob, "add").handleAdding(headFiles);
+            }
+            else {
+                new Stage(walk.path(), "remove").handleRemoving(headFiles);
+            }
+        }
+    }
+}
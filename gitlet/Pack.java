@@ -0,0 +1,881 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents a pack: many objects written one after another into a single
+ *  file, along with an index recording where each object starts. Provides
+ *  helper methods for computing which objects another repository is missing,
+ *  writing them as one sequential stream, atomically installing the result,
+ *  and reading objects back out of installed packs.
+ *
+ *  @author Collin Bowers
+ */
+public class Pack {
+
+    public static final File PACKS_DIR = join(Repository.OBJECTS_DIR, "packs");
+    public static final String COMMIT = "commits";
+    public static final String BLOB = "blobs";
+    /** Blobs of large files, which list the chunks that hold their contents. */
+    public static final String MANIFEST = "manifests";
+    public static final String CHUNK = "chunks";
+    private static final int PACK_MAGIC = 0x474c504b;
+    private static final int INDEX_MAGIC = 0x474c4958;
+    private static final int VERSION = 1;
+    /** The largest object a received pack may hold. */
+    private static final int MAX_OBJECT_SIZE = 1 << 30;
+    /** How long ago the packs directory must have been modified for its
+     *  modification time alone to show whether it changed since. */
+    private static final long SETTLE_MILLIS = 2000;
+
+    /** Indexes of the installed packs, keyed by repository. An index is read
+     *  again when a lookup misses and the packs it was read from changed, as
+     *  another process may have installed or removed packs since. */
+    private static final ConcurrentHashMap<String, PackIndexes> INDEXES = new ConcurrentHashMap<>();
+
+    private File gitletDir;
+    private File tempFile;
+    private OutputStream rawOut;
+    private MessageDigest digest;
+    private DataOutputStream out;
+    private long offset;
+    private ArrayList<PackedObject> written;
+    private String label;
+    private int total = -1;
+
+    /** Start writing a new pack that will be installed into the repository at GITLETDIR. */
+    public Pack(File gitletDir, String label) {
+        this.gitletDir = gitletDir;
+        this.label = label;
+        this.written = new ArrayList<>();
+        File packsDir = join(gitletDir, "objects", "packs");
+        packsDir.mkdirs();
+        try {
+            tempFile = File.createTempFile("tmp-", ".pack", packsDir);
+            start(new FileOutputStream(tempFile));
+        } catch (IOException excp) {
+            throw error("Unable to create pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Start writing a new pack directly to TARGET, without installing it anywhere. */
+    private Pack(OutputStream target, String label) {
+        this.label = label;
+        this.written = new ArrayList<>();
+        start(target);
+    }
+
+    /** Write the pack header to TARGET. */
+    private void start(OutputStream target) {
+        try {
+            rawOut = target;
+            digest = MessageDigest.getInstance("SHA-1");
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new DigestOutputStream(target, digest), 1 << 16));
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            offset = 8;
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw error("Unable to create pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Append the object of the given type and SHA1 ID to the pack. */
+    public void add(String type, String sha1, byte[] contents) {
+        try {
+            out.writeUTF(type);
+            out.writeUTF(sha1);
+            out.writeInt(contents.length);
+            offset += 2 + type.length() + 2 + sha1.length() + 4;
+            written.add(new PackedObject(null, type, offset, contents.length, ObjectId.fromHex(sha1)));
+            out.write(contents);
+            offset += contents.length;
+        } catch (IOException excp) {
+            throw error("Unable to write pack: %s", excp.getMessage());
+        }
+        showProgress();
+    }
+
+    /** Return the number of objects written to the pack so far. */
+    public int size() {
+        return written.size();
+    }
+
+    /** Finish the pack, flush it to disk, and atomically move it and its index
+     *  into place. Returns the checksum naming the pack, or null if the pack
+     *  was empty and has been discarded. */
+    public String install() {
+        try {
+            byte[] checksum = finish();
+            ((FileOutputStream) rawOut).getChannel().force(true);
+            out.close();
+
+            if (written.isEmpty()) {
+                tempFile.delete();
+                return null;
+            }
+
+            String name = "pack-" + toHex(checksum);
+            File packsDir = tempFile.getParentFile();
+            File packFile = join(packsDir, name + ".pack");
+            Files.move(tempFile.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            writeIndex(join(packsDir, name + ".idx"), checksum);
+            INDEXES.remove(gitletDir.getAbsolutePath());
+            finishProgress();
+            return name;
+        } catch (IOException excp) {
+            tempFile.delete();
+            throw error("Unable to install pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Discard a pack that will not be installed. */
+    void abort() {
+        try {
+            out.close();
+        } catch (IOException excp) {
+            // The pack is being thrown away regardless.
+        }
+        tempFile.delete();
+    }
+
+    /** Write the end marker, object count and checksum trailer, returning the checksum. */
+    private byte[] finish() throws IOException {
+        out.writeUTF("");
+        out.writeInt(written.size());
+        out.flush();
+        byte[] checksum = digest.digest();
+        rawOut.write(checksum);
+        rawOut.flush();
+        return checksum;
+    }
+
+    /** Write the index for the objects in this pack, sorted by SHA1 ID. The
+     *  index is what makes a pack visible to readers, so it is moved into
+     *  place last. */
+    private void writeIndex(File indexFile, byte[] checksum) throws IOException {
+        written.sort(Comparator.comparing(o -> o.id));
+        File tempIndex = File.createTempFile("tmp-", ".idx", indexFile.getParentFile());
+        try (FileOutputStream fos = new FileOutputStream(tempIndex);
+             DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(fos))) {
+            idx.writeInt(INDEX_MAGIC);
+            idx.writeInt(written.size());
+            for (PackedObject obj : written) {
+                idx.writeUTF(obj.type);
+                idx.writeUTF(obj.id.name());
+                idx.writeLong(obj.offset);
+                idx.writeInt(obj.length);
+            }
+            idx.write(checksum);
+            idx.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tempIndex.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Copy the given objects from the repository at SRCDIR into a single new
+     *  pack installed in the repository at DESTDIR. */
+    public static void transfer(File srcDir, File destDir, List<String[]> objects, String label) {
+        if (objects.isEmpty()) {
+            return;
+        }
+        Pack pack = new Pack(destDir, label);
+        pack.total = objects.size();
+        for (String[] obj : objects) {
+            byte[] contents = readObjectBytes(srcDir, obj[0], obj[1]);
+            if (contents == null) {
+                throw error("Object %s is missing from %s.", obj[1], srcDir);
+            }
+            pack.add(obj[0], obj[1], contents);
+        }
+        pack.install();
+    }
+
+    /** Write the given objects from the repository at SRCDIR to OUT as a
+     *  single pack stream. OUT is flushed but not closed. */
+    public static void send(File srcDir, List<String[]> objects, OutputStream out) {
+        Pack pack = new Pack(out, "Writing objects");
+        pack.total = objects.size();
+        for (String[] obj : objects) {
+            byte[] contents = readObjectBytes(srcDir, obj[0], obj[1]);
+            if (contents == null) {
+                throw error("Object %s is missing from %s.", obj[1], srcDir);
+            }
+            pack.add(obj[0], obj[1], contents);
+        }
+        try {
+            pack.finish();
+        } catch (IOException excp) {
+            throw error("Unable to send pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Read a pack stream written by send from IN, verify its checksum, and
+     *  install it into the repository at DESTDIR. Returns the name of the
+     *  installed pack, or null if the stream held no objects. The bytes of
+     *  each object are read as they arrive rather than into a buffer of the
+     *  length the stream claims, so a bad length cannot make the receiver
+     *  allocate memory the stream never fills. */
+    public static String receive(File destDir, InputStream in) {
+        return receive(destDir, in, new ArrayList<>());
+    }
+
+    /** As above, adding the {type, SHA1 ID} pair of each object installed to
+     *  RECEIVED. Every object must hash to its ID, and the chunks of a
+     *  manifest, from the pack or the repository, to the ID of its file.
+     *  Objects DESTDIR already has are left out, so that a pack cannot stand
+     *  in for them. */
+    public static String receive(File destDir, InputStream in, List<String[]> received) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        DigestInputStream digestIn = new DigestInputStream(new BufferedInputStream(in, 1 << 16), md);
+        DataInputStream data = new DataInputStream(digestIn);
+        Pack pack = new Pack(destDir, "Receiving objects");
+        HashSet<String> seen = new HashSet<>();
+        ArrayList<Blob> manifests = new ArrayList<>();
+        HashMap<String, PackedObject> chunks = new HashMap<>();
+        int count = 0;
+        try {
+            if (data.readInt() != PACK_MAGIC || data.readInt() != VERSION) {
+                throw error("Received pack is corrupt.");
+            }
+            String type = data.readUTF();
+            while (!type.isEmpty()) {
+                String sha1 = data.readUTF();
+                if (!(type.equals(COMMIT) || type.equals(BLOB) || type.equals(MANIFEST)
+                        || type.equals(CHUNK)) || sha1.length() != UID_LENGTH) {
+                    throw error("Received pack is corrupt.");
+                }
+                int length = data.readInt();
+                if (length < 0 || length > MAX_OBJECT_SIZE) {
+                    throw error("Received pack is corrupt.");
+                }
+                byte[] contents = data.readNBytes(length);
+                if (contents.length != length) {
+                    throw error("Received pack is corrupt.");
+                }
+                count += 1;
+                if (seen.add(sha1) && !isStored(destDir, type, sha1)) {
+                    verify(type, sha1, contents, manifests);
+                    pack.add(type, sha1, contents);
+                    received.add(new String[] {type, sha1});
+                    if (type.equals(CHUNK)) {
+                        chunks.put(sha1, pack.written.get(pack.written.size() - 1));
+                    }
+                }
+                type = data.readUTF();
+            }
+            int total = data.readInt();
+            digestIn.on(false);
+            byte[] trailer = new byte[md.getDigestLength()];
+            data.readFully(trailer);
+            if (total != count || !Arrays.equals(trailer, md.digest())) {
+                throw error("Received pack is corrupt.");
+            }
+            pack.out.flush();
+            verifyManifests(destDir, pack.tempFile, manifests, chunks);
+        } catch (IOException | RuntimeException excp) {
+            pack.abort();
+            throw error("Unable to receive pack: %s", excp.getMessage());
+        }
+        return pack.install();
+    }
+
+    /** Return true if the repository at GITLETDIR has the object of the given
+     *  TYPE and SHA1 ID, counting a blob stored either whole or as a
+     *  manifest. */
+    private static boolean isStored(File gitletDir, String type, String sha1) {
+        if (type.equals(BLOB) || type.equals(MANIFEST)) {
+            return Blob.hasBlob(gitletDir, sha1);
+        }
+        return hasObject(gitletDir, type, sha1);
+    }
+
+    /** Fail unless CONTENTS, received as the object of the given TYPE and
+     *  SHA1 ID, hashes to SHA1. A manifest is added to MANIFESTS, to have
+     *  its chunks hashed once they have all arrived. */
+    private static void verify(String type, String sha1, byte[] contents, List<Blob> manifests) {
+        boolean valid;
+        try {
+            if (type.equals(COMMIT)) {
+                valid = deserialize(contents, Commit.class).hasId(sha1);
+            }
+            else if (type.equals(CHUNK)) {
+                valid = sha1.equals(Blob.chunkSHA1(contents));
+            }
+            else {
+                Blob blob = deserialize(contents, Blob.class);
+                valid = blob.isChunked() == type.equals(MANIFEST) && blob.hasId(sha1);
+                if (valid && blob.isChunked()) {
+                    manifests.add(blob);
+                }
+            }
+        } catch (IllegalArgumentException excp) {
+            valid = false;
+        }
+        if (!valid) {
+            throw error("Received object %s does not match its ID.", sha1);
+        }
+    }
+
+    /** Fail unless the chunks of each of MANIFESTS, read in order from CHUNKS,
+     *  the chunks written so far to the pack PACKFILE, or else from the
+     *  repository at GITLETDIR, hash to the ID of its file. */
+    private static void verifyManifests(File gitletDir, File packFile, List<Blob> manifests,
+                                        Map<String, PackedObject> chunks) throws IOException {
+        if (manifests.isEmpty()) {
+            return;
+        }
+        try (RandomAccessFile pack = new RandomAccessFile(packFile, "r")) {
+            for (Blob manifest : manifests) {
+                Hasher hasher = Hasher.start();
+                for (String chunkSHA1 : manifest.getChunkSHA1s()) {
+                    PackedObject obj = chunks.get(chunkSHA1);
+                    byte[] chunk;
+                    if (obj != null) {
+                        chunk = new byte[obj.length];
+                        pack.seek(obj.offset);
+                        pack.readFully(chunk);
+                    }
+                    else {
+                        chunk = readObjectBytes(gitletDir, CHUNK, chunkSHA1);
+                    }
+                    if (chunk == null) {
+                        throw error("Received pack is missing chunk %s.", chunkSHA1);
+                    }
+                    hasher.update(chunk);
+                }
+                if (!manifest.getSHA1().equals(hasher.finish().name())) {
+                    throw error("Received object %s does not match its ID.", manifest.getSHA1());
+                }
+            }
+        }
+    }
+
+    /** Fail unless every commit among RECEIVED, the objects just installed in
+     *  the repository at GITLETDIR, has its parents and blobs there, so that
+     *  the history of each commit it has is complete. Commits on its shallow
+     *  boundary need not have their parents, and a partial clone need not
+     *  have the blobs. */
+    public static void checkConnected(File gitletDir, List<String[]> received) {
+        boolean promisor = join(gitletDir, "promisor").isFile();
+        HashSet<String> checkedBlobs = new HashSet<>();
+        for (String[] obj : received) {
+            if (!obj[0].equals(COMMIT)) {
+                continue;
+            }
+            Commit commit = Commit.loadRemoteCommit(obj[1], gitletDir);
+            for (String parentSHA1 : commit.getParentSHA1s()) {
+                if (!hasObject(gitletDir, COMMIT, parentSHA1)) {
+                    throw error("Commit %s is missing its parent %s.", obj[1], parentSHA1);
+                }
+            }
+            if (promisor) {
+                continue;
+            }
+            for (String blobSHA1 : commit.getTrackedFiles().values()) {
+                if (checkedBlobs.add(blobSHA1) && !Blob.hasBlob(gitletDir, blobSHA1)) {
+                    throw error("Commit %s is missing blob %s.", obj[1], blobSHA1);
+                }
+            }
+        }
+    }
+
+    /** Return the {type, SHA1 ID} pairs of every commit and blob reachable from
+     *  WANTS in the repository at SRCDIR that the repository at DESTDIR does
+     *  not already have, along with the chunks of large files it does not have.
+     *  The walk stops at commits DESTDIR already has and, if DEPTH is positive,
+     *  after DEPTH generations; commits whose parents are cut off that way are
+     *  added to SHALLOW. */
+    public static List<String[]> findMissing(File srcDir, File destDir, Collection<String> wants,
+                                             int depth, List<String> shallow) {
+        return findMissing(srcDir, wants, sha1 -> hasObject(destDir, COMMIT, sha1),
+            sha1 -> Blob.hasBlob(destDir, sha1), sha1 -> hasObject(destDir, CHUNK, sha1),
+            depth, shallow);
+    }
+
+    /** Return the {type, SHA1 ID} pairs of every commit and blob reachable from
+     *  WANTS in the repository at SRCDIR that are not reachable from HAVES, the
+     *  commits the other side reported having, so that the chunks of large
+     *  files reachable from HAVES are not sent again. HAVES that SRCDIR does
+     *  not know about are ignored. The history of HAVES is only walked as far
+     *  back as the history of WANTS, and only the blobs of the commits walked
+     *  are taken to be on the other side. DEPTH and SHALLOW are as for the
+     *  other findMissing. */
+    public static List<String[]> findMissing(File srcDir, Collection<String> wants,
+                                             Collection<String> haves, int depth,
+                                             List<String> shallow) {
+        HashSet<String> knownBlobs = new HashSet<>();
+        HashSet<String> knownCommits = markHaves(srcDir, wants, haves, knownBlobs);
+        HashSet<String> knownChunks = new HashSet<>();
+        for (String blobSHA1 : knownBlobs) {
+            if (hasObject(srcDir, MANIFEST, blobSHA1)) {
+                knownChunks.addAll(Blob.loadRemoteBlob(blobSHA1, srcDir).getChunkSHA1s());
+            }
+        }
+        return findMissing(srcDir, wants, knownCommits::contains, knownBlobs::contains,
+            knownChunks::contains, depth, shallow);
+    }
+
+    /** Walk the histories of WANTS and HAVES in the repository at SRCDIR
+     *  together, newest commit first, marking every commit reachable from
+     *  HAVES, until every commit left to visit is marked. Returns the marked
+     *  commits, which include each commit reachable from WANTS that HAVES
+     *  reach, and adds the blobs of the marked commits reached to KNOWNBLOBS.
+     *  A commit dated before its parents may be left unmarked, which only
+     *  means it is sent again. */
+    private static HashSet<String> markHaves(File srcDir, Collection<String> wants,
+                                             Collection<String> haves,
+                                             HashSet<String> knownBlobs) {
+        HashSet<String> marked = new HashSet<>();
+        HashSet<String> wanted = new HashSet<>();
+        PriorityQueue<WalkEntry> toVisit = new PriorityQueue<>();
+        int wantedLeft = 0;
+        for (String have : haves) {
+            if (hasObject(srcDir, COMMIT, have) && marked.add(have)) {
+                toVisit.add(new WalkEntry(have, Commit.loadRemoteCommit(have, srcDir), true));
+            }
+        }
+        for (String want : wants) {
+            if (!marked.contains(want) && wanted.add(want)) {
+                toVisit.add(new WalkEntry(want, Commit.loadRemoteCommit(want, srcDir), false));
+                wantedLeft += 1;
+            }
+        }
+
+        while (wantedLeft > 0) {
+            WalkEntry entry = toVisit.poll();
+            if (!entry.have) {
+                wantedLeft -= 1;
+                if (marked.contains(entry.sha1)) {
+                    continue;
+                }
+            }
+            else {
+                knownBlobs.addAll(entry.commit.getTrackedFiles().values());
+            }
+            for (String parentSHA1 : entry.commit.getParentSHA1s()) {
+                if (entry.have ? marked.add(parentSHA1)
+                        : !marked.contains(parentSHA1) && wanted.add(parentSHA1)) {
+                    toVisit.add(new WalkEntry(parentSHA1,
+                            Commit.loadRemoteCommit(parentSHA1, srcDir), entry.have));
+                    wantedLeft += entry.have ? 0 : 1;
+                }
+            }
+        }
+        for (WalkEntry entry : toVisit) {
+            knownBlobs.addAll(entry.commit.getTrackedFiles().values());
+        }
+        return marked;
+    }
+
+    /** Walk the history of WANTS in the repository at SRCDIR breadth first,
+     *  collecting every commit, blob and chunk the other side does not have
+     *  according to HASCOMMIT, HASBLOB and HASCHUNK. The walk stops at commits
+     *  the other side has and, if DEPTH is positive, at the DEPTHth generation,
+     *  whose commits are added to SHALLOW if they have parents. */
+    private static List<String[]> findMissing(File srcDir, Collection<String> wants,
+                                              Predicate<String> hasCommit,
+                                              Predicate<String> hasBlob,
+                                              Predicate<String> hasChunk,
+                                              int depth, List<String> shallow) {
+        ArrayList<String[]> missing = new ArrayList<>();
+        HashMap<String, Integer> generations = new HashMap<>();
+        HashSet<String> seenBlobs = new HashSet<>();
+        HashSet<String> seenChunks = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>();
+        for (String want : wants) {
+            if (generations.putIfAbsent(want, 1) == null) {
+                toVisit.add(want);
+            }
+        }
+
+        while (!toVisit.isEmpty()) {
+            String commitSHA1 = toVisit.poll();
+            if (hasCommit.test(commitSHA1)) {
+                continue;
+            }
+            missing.add(new String[] {COMMIT, commitSHA1});
+
+            Commit commit = Commit.loadRemoteCommit(commitSHA1, srcDir);
+            for (String blobSHA1 : commit.getTrackedFiles().values()) {
+                if (!seenBlobs.add(blobSHA1) || hasBlob.test(blobSHA1)) {
+                    continue;
+                }
+                else if (!hasObject(srcDir, MANIFEST, blobSHA1)) {
+                    missing.add(new String[] {BLOB, blobSHA1});
+                    continue;
+                }
+                missing.add(new String[] {MANIFEST, blobSHA1});
+                for (String chunkSHA1 : Blob.loadRemoteBlob(blobSHA1, srcDir).getChunkSHA1s()) {
+                    if (seenChunks.add(chunkSHA1) && !hasChunk.test(chunkSHA1)) {
+                        missing.add(new String[] {CHUNK, chunkSHA1});
+                    }
+                }
+            }
+
+            int generation = generations.get(commitSHA1);
+            if (depth > 0 && generation >= depth) {
+                if (commit.getParentSHA1() != null) {
+                    shallow.add(commitSHA1);
+                }
+                continue;
+            }
+            for (String parentSHA1 : commit.getParentSHA1s()) {
+                if (generations.putIfAbsent(parentSHA1, generation + 1) == null) {
+                    toVisit.add(parentSHA1);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /** Remove from OBJECTS every blob stored in the repository at GITLETDIR in
+     *  more than LIMIT bytes. A negative LIMIT removes nothing. */
+    public static void removeLargeBlobs(File gitletDir, List<String[]> objects, long limit) {
+        if (limit >= 0) {
+            objects.removeIf(obj -> obj[0].equals(BLOB) && objectSize(gitletDir, BLOB, obj[1]) > limit);
+        }
+    }
+
+    /** Return true if the repository at GITLETDIR has the given object, either
+     *  as a loose file or inside one of its packs. */
+    public static boolean hasObject(File gitletDir, String type, String sha1) {
+        if (join(gitletDir, "objects", type, sha1).isFile()) {
+            return true;
+        }
+        PackedObject obj = lookup(gitletDir, sha1);
+        return obj != null && obj.type.equals(type);
+    }
+
+    /** Return the stored size in bytes of the given object in the repository
+     *  at GITLETDIR, or -1 if the repository does not have it. */
+    public static long objectSize(File gitletDir, String type, String sha1) {
+        File loose = join(gitletDir, "objects", type, sha1);
+        if (loose.isFile()) {
+            return loose.length();
+        }
+        PackedObject obj = lookup(gitletDir, sha1);
+        return (obj == null || !obj.type.equals(type)) ? -1 : obj.length;
+    }
+
+    /** Return the serialized contents of the given object from the repository
+     *  at GITLETDIR, or null if the repository does not have it. */
+    public static byte[] readObjectBytes(File gitletDir, String type, String sha1) {
+        try (Trace span = Trace.span("readObjectBytes")) {
+            byte[] contents = readLooseOrPacked(gitletDir, type, sha1);
+            if (contents != null) {
+                Trace.count(Trace.Counter.OBJECTS_READ, 1);
+                Trace.count(Trace.Counter.OBJECT_BYTES_READ, contents.length);
+            }
+            return contents;
+        }
+    }
+
+    /** Return the serialized contents of the given object as above. */
+    private static byte[] readLooseOrPacked(File gitletDir, String type, String sha1) {
+        File loose = join(gitletDir, "objects", type, sha1);
+        if (loose.isFile()) {
+            return readContents(loose);
+        }
+        PackedObject obj = lookup(gitletDir, sha1);
+        if (obj == null || !obj.type.equals(type)) {
+            return null;
+        }
+        try (RandomAccessFile packFile = new RandomAccessFile(obj.pack, "r")) {
+            byte[] contents = new byte[obj.length];
+            packFile.seek(obj.offset);
+            packFile.readFully(contents);
+            return contents;
+        } catch (IOException excp) {
+            throw error("Unable to read %s from pack: %s", sha1, excp.getMessage());
+        }
+    }
+
+    /** Return the SHA1 IDs of all objects of the given type in the repository
+     *  at GITLETDIR, loose or packed, in lexicographic order. */
+    public static List<String> listObjects(File gitletDir, String type) {
+        reloadIfChanged(gitletDir);
+        TreeSet<String> sha1s = new TreeSet<>();
+        List<String> loose = plainFilenamesIn(join(gitletDir, "objects", type));
+        if (loose != null) {
+            sha1s.addAll(loose);
+        }
+        for (PackedObject obj : loadIndexes(gitletDir).values()) {
+            if (obj.type.equals(type)) {
+                sha1s.add(obj.id.name());
+            }
+        }
+        return new ArrayList<>(sha1s);
+    }
+
+    /** Return the names of the packs installed in the repository at GITLETDIR
+     *  whose contents no longer match the checksum that names them, or whose
+     *  index does not belong to them. Each pack is streamed once, so memory
+     *  use does not depend on its size. */
+    public static List<String> findCorruptPacks(File gitletDir) {
+        ArrayList<String> corrupt = new ArrayList<>();
+        File packsDir = join(gitletDir, "objects", "packs");
+        List<String> files = plainFilenamesIn(packsDir);
+        if (files == null) {
+            return corrupt;
+        }
+        for (String fileName : files) {
+            if (fileName.startsWith("pack-") && fileName.endsWith(".idx")) {
+                String name = fileName.substring(0, fileName.length() - ".idx".length());
+                if (!checksumMatches(join(packsDir, name + ".pack"), join(packsDir, fileName), name)) {
+                    corrupt.add(name + ".pack");
+                }
+            }
+        }
+        return corrupt;
+    }
+
+    /** Return true if the SHA-1 of PACKFILE's contents matches its trailer, the
+     *  pack's NAME, and the checksum recorded at the end of INDEXFILE. */
+    private static boolean checksumMatches(File packFile, File indexFile, String name) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(packFile), 1 << 16);
+             RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long remaining = packFile.length() - md.getDigestLength();
+            if (remaining < 0 || index.length() < md.getDigestLength()) {
+                return false;
+            }
+            byte[] buffer = new byte[1 << 16];
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return false;
+                }
+                md.update(buffer, 0, read);
+                remaining -= read;
+            }
+            byte[] checksum = md.digest();
+            byte[] trailer = new byte[checksum.length];
+            new DataInputStream(in).readFully(trailer);
+            byte[] indexTrailer = new byte[checksum.length];
+            index.seek(index.length() - checksum.length);
+            index.readFully(indexTrailer);
+            return Arrays.equals(checksum, trailer) && Arrays.equals(checksum, indexTrailer)
+                    && name.equals("pack-" + toHex(checksum));
+        } catch (IOException excp) {
+            return false;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Return the packed object with the given SHA1 ID in the repository at
+     *  GITLETDIR, or null if none of its packs has it. On a miss, or if the
+     *  pack holding it is gone, the index is read again if the packs
+     *  changed. */
+    private static PackedObject lookup(File gitletDir, String sha1) {
+        ObjectId id = ObjectId.parse(sha1);
+        if (id == null) {
+            return null;
+        }
+        PackedObject obj = loadIndexes(gitletDir).get(id);
+        if ((obj == null || !obj.pack.isFile()) && reloadIfChanged(gitletDir)) {
+            obj = loadIndexes(gitletDir).get(id);
+        }
+        return obj;
+    }
+
+    /** Return the combined index of every pack installed in the repository at GITLETDIR. */
+    private static HashMap<ObjectId, PackedObject> loadIndexes(File gitletDir) {
+        String key = gitletDir.getAbsolutePath();
+        PackIndexes cached = INDEXES.get(key);
+        if (cached != null) {
+            Trace.count(Trace.Counter.PACK_INDEX_HITS, 1);
+            return cached.objects;
+        }
+
+        File packsDir = join(gitletDir, "objects", "packs");
+        long lastModified = packsDir.lastModified();
+        List<String> indexFiles = listIndexFiles(packsDir);
+        HashMap<ObjectId, PackedObject> index = new HashMap<>();
+        for (String fileName : indexFiles) {
+            String name = fileName.substring(0, fileName.length() - ".idx".length());
+            readIndex(join(packsDir, fileName), join(packsDir, name + ".pack"), index);
+        }
+        boolean settled = System.currentTimeMillis() - lastModified > SETTLE_MILLIS;
+        INDEXES.put(key, new PackIndexes(lastModified, settled, indexFiles, index));
+        return index;
+    }
+
+    /** Forget the index of the repository at GITLETDIR if the packs directory
+     *  was modified or lists other indexes than when it was read, returning
+     *  true if it was forgotten. The directory is only listed again if it had
+     *  been modified too recently when it was read for a later change to be
+     *  sure to change its modification time. */
+    private static boolean reloadIfChanged(File gitletDir) {
+        String key = gitletDir.getAbsolutePath();
+        PackIndexes cached = INDEXES.get(key);
+        if (cached == null) {
+            return false;
+        }
+        File packsDir = join(gitletDir, "objects", "packs");
+        if (cached.lastModified == packsDir.lastModified()) {
+            if (cached.settled) {
+                return false;
+            }
+            else if (cached.indexFiles.equals(listIndexFiles(packsDir))) {
+                if (System.currentTimeMillis() - cached.lastModified > SETTLE_MILLIS) {
+                    INDEXES.replace(key, cached, new PackIndexes(cached.lastModified, true,
+                            cached.indexFiles, cached.objects));
+                }
+                return false;
+            }
+        }
+        INDEXES.remove(key, cached);
+        return true;
+    }
+
+    /** Return the names of the pack index files in PACKSDIR in order. */
+    private static List<String> listIndexFiles(File packsDir) {
+        ArrayList<String> indexFiles = new ArrayList<>();
+        List<String> files = plainFilenamesIn(packsDir);
+        if (files != null) {
+            for (String fileName : files) {
+                if (fileName.startsWith("pack-") && fileName.endsWith(".idx")) {
+                    indexFiles.add(fileName);
+                }
+            }
+        }
+        return indexFiles;
+    }
+
+    /** Add every entry in the given index file to INDEX. */
+    private static void readIndex(File indexFile, File packFile, HashMap<ObjectId, PackedObject> index) {
+        try (DataInputStream idx = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (idx.readInt() != INDEX_MAGIC) {
+                throw error("Corrupt pack index %s.", indexFile.getName());
+            }
+            int count = idx.readInt();
+            for (int i = 0; i < count; i += 1) {
+                String type = idx.readUTF().intern();
+                ObjectId id = ObjectId.parse(idx.readUTF());
+                long offset = idx.readLong();
+                int length = idx.readInt();
+                if (id == null) {
+                    throw error("Corrupt pack index %s.", indexFile.getName());
+                }
+                index.put(id, new PackedObject(packFile, type, offset, length, id));
+            }
+        } catch (IOException excp) {
+            throw error("Unable to read pack index: %s", excp.getMessage());
+        }
+    }
+
+    /* PROGRESS */
+
+    /** Report how many objects have been written, if a terminal is watching. */
+    private void showProgress() {
+        int done = written.size();
+        if (System.console() == null || (done % 1000 != 0 && done != total)) {
+            return;
+        }
+        if (total > 0) {
+            System.err.printf("\r%s: %d%% (%d/%d)", label, done * 100L / total, done, total);
+        }
+        else {
+            System.err.printf("\r%s: %d", label, done);
+        }
+    }
+
+    /** Terminate the progress line, if one was shown. */
+    private void finishProgress() {
+        if (System.console() != null) {
+            System.err.printf("\r%s: %d, done.%n", label, written.size());
+        }
+    }
+
+    /** Return the lowercase hexadecimal representation of BYTES. */
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** The combined index of the packs of one repository, along with the
+     *  modification time and index files of its packs directory when read. */
+    private static class PackIndexes {
+        private final long lastModified;
+        private final boolean settled;
+        private final List<String> indexFiles;
+        private final HashMap<ObjectId, PackedObject> objects;
+
+        PackIndexes(long lastModified, boolean settled, List<String> indexFiles,
+                    HashMap<ObjectId, PackedObject> objects) {
+            this.lastModified = lastModified;
+            this.settled = settled;
+            this.indexFiles = indexFiles;
+            this.objects = objects;
+        }
+    }
+
+    /** A commit waiting to be visited by markHaves, which visits the newest first. */
+    private static class WalkEntry implements Comparable<WalkEntry> {
+        private final String sha1;
+        private final Commit commit;
+        private final long time;
+        private final boolean have;
+
+        WalkEntry(String sha1, Commit commit, boolean have) {
+            this.sha1 = sha1;
+            this.commit = commit;
+            this.time = commit.getTime();
+            this.have = have;
+        }
+
+        @Override
+        public int compareTo(WalkEntry other) {
+            return Long.compare(other.time, time);
+        }
+    }
+
+    /** The location of one object inside an installed pack. */
+    private static class PackedObject {
+        private final File pack;
+        private final String type;
+        private final long offset;
+        private final int length;
+        private final ObjectId id;
+
+        PackedObject(File pack, String type, long offset, int length, ObjectId id) {
+            this.pack = pack;
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Represents the set of commits and blobs reachable from a group of root
+ *  commits. The history below the roots is walked on a work-stealing pool,
+ *  one task per line of first parents with the other parents of every merge
+ *  forked off to other workers. Commits that are missing or cannot be read
+ *  are recorded rather than followed.
+ *
+ *  @author Collin Bowers
+ */
+public class Reachability {
+
+    private final File gitletDir;
+    private final Set<String> commits = ConcurrentHashMap.newKeySet();
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+    private final Set<String> brokenCommits = ConcurrentHashMap.newKeySet();
+
+    private Reachability(File gitletDir) {
+        this.gitletDir = gitletDir;
+    }
+
+    /** Walk every commit and blob reachable from ROOTS in the repository at GITLETDIR. */
+    public static Reachability walk(File gitletDir, Collection<String> roots) {
+        Reachability reachability = new Reachability(gitletDir);
+        ForkJoinPool pool = new ForkJoinPool();
+        for (String root : roots) {
+            pool.execute(reachability.new WalkTask(root));
+        }
+        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        pool.shutdown();
+        return reachability;
+    }
+
+    /** Return the head commit of every branch and remote-tracking branch of the
+     *  repository at GITLETDIR, along with every commit the repository still
+     *  has in their reflogs or in the reflogs of deleted branches. */
+    public static Set<String> refRoots(File gitletDir) {
+        HashSet<String> roots = new HashSet<>();
+        HashSet<String> reflogSHA1s = new HashSet<>();
+        roots.addAll(Branch.loadAllBranches(gitletDir, true).values());
+        for (String branchName : Reflog.branches(gitletDir)) {
+            for (Reflog.Entry entry : Reflog.load(gitletDir, branchName)) {
+                reflogSHA1s.add(entry.getOldSHA1());
+                reflogSHA1s.add(entry.getNewSHA1());
+            }
+        }
+        reflogSHA1s.removeIf(sha1 -> sha1 == null || !Pack.hasObject(gitletDir, Pack.COMMIT, sha1));
+        roots.addAll(reflogSHA1s);
+        return roots;
+    }
+
+    /** Return the SHA1 IDs of the reachable commits that could be read. */
+    public Set<String> getCommits() {
+        return commits;
+    }
+
+    /** Return the SHA1 IDs of the blobs tracked by reachable commits. */
+    public Set<String> getBlobs() {
+        return blobs;
+    }
+
+    /** Return the SHA1 IDs of reachable commits that are missing or unreadable. */
+    public Set<String> getBrokenCommits() {
+        return brokenCommits;
+    }
+
+    /** Walks one line of first parents, forking a new task for each second parent. */
+    private class WalkTask extends RecursiveAction {
+        private final String start;
+
+        WalkTask(String start) {
+            this.start = start;
+        }
+
+        @Override
+        protected void compute() {
+            String commitSHA1 = start;
+            while (commitSHA1 != null && commits.add(commitSHA1)) {
+                Commit commit;
+                try {
+                    commit = Commit.loadRemoteCommit(commitSHA1, gitletDir);
+                } catch (RuntimeException excp) {
+                    commits.remove(commitSHA1);
+                    brokenCommits.add(commitSHA1);
+                    return;
+                }
+                blobs.addAll(commit.getTrackedFiles().values());
+                List<String> parents = commit.getParentSHA1s();
+                for (String parentSHA1 : parents.subList(Math.min(1, parents.size()), parents.size())) {
+                    new WalkTask(parentSHA1).fork();
+                }
+                commitSHA1 = commit.getParentSHA1();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents a group of branch updates that are applied all together or not
+ *  at all. Updates are queued with the value each branch is expected to have,
+ *  then commit locks every branch in name order, checks that none of them has
+ *  moved, and only then writes the new values. Every branch movement is
+ *  recorded in the branch's reflog once the branches have moved.
+ *
+ *  A transaction that touches many branches is written as a single new
+ *  packed-refs file instead of one file per branch.
+ *
+ *  @author Collin Bowers
+ */
+public class RefTransaction {
+
+    private static final int PACKED_THRESHOLD = 16;
+
+    private File gitletDir;
+    private String message;
+    private long lockTimeout;
+    private TreeMap<String, RefUpdate> updates = new TreeMap<>();
+
+    /** One queued branch movement. A null SHA1 ID means the branch does not exist. */
+    private static class RefUpdate {
+        private final String oldSHA1;
+        private final String newSHA1;
+        private final boolean checkOld;
+
+        RefUpdate(String oldSHA1, String newSHA1, boolean checkOld) {
+            this.oldSHA1 = oldSHA1;
+            this.newSHA1 = newSHA1;
+            this.checkOld = checkOld;
+        }
+    }
+
+    /** Start a transaction on the local repository, recording MESSAGE in the reflogs. */
+    public RefTransaction(String message) {
+        this(Repository.GITLET_DIR, message, LockFile.timeout());
+    }
+
+    /** Start a transaction on the repository at GITLETDIR that waits up to
+     *  LOCKTIMEOUT milliseconds for each branch lock. */
+    public RefTransaction(File gitletDir, String message, long lockTimeout) {
+        this.gitletDir = gitletDir;
+        this.message = message;
+        this.lockTimeout = lockTimeout;
+    }
+
+    /** Queue creating the branch BRANCHNAME at NEWSHA1; it must not exist yet. */
+    public RefTransaction create(String branchName, String newSHA1) {
+        return queue(branchName, new RefUpdate(null, newSHA1, true));
+    }
+
+    /** Queue moving BRANCHNAME from OLDSHA1 to NEWSHA1. An OLDSHA1 of null
+     *  means the branch must not exist yet. */
+    public RefTransaction update(String branchName, String oldSHA1, String newSHA1) {
+        return queue(branchName, new RefUpdate(oldSHA1, newSHA1, true));
+    }
+
+    /** Queue deleting BRANCHNAME, which must still point at OLDSHA1. */
+    public RefTransaction delete(String branchName, String oldSHA1) {
+        return queue(branchName, new RefUpdate(oldSHA1, null, true));
+    }
+
+    /** Queue pointing BRANCHNAME at NEWSHA1 whatever it points at now. */
+    public RefTransaction set(String branchName, String newSHA1) {
+        return queue(branchName, new RefUpdate(null, newSHA1, false));
+    }
+
+    private RefTransaction queue(String branchName, RefUpdate update) {
+        checkBranchName(branchName);
+        if (updates.containsKey(branchName)) {
+            throw error("Branch %s is updated twice in one transaction.", branchName);
+        }
+        updates.put(branchName, update);
+        return this;
+    }
+
+    /** Apply every queued update, or none of them if a branch cannot be
+     *  locked or no longer has its expected value. */
+    public void commit() {
+        if (updates.isEmpty()) {
+            return;
+        }
+        LinkedHashMap<String, LockFile> locks = new LinkedHashMap<>();
+        LockFile packedLock = null;
+        try {
+            for (String branchName : updates.keySet()) {
+                locks.put(branchName, lock(Branch.refFile(gitletDir, branchName)));
+            }
+
+            HashMap<String, String> currSHA1s = new HashMap<>();
+            boolean deletesPacked = false;
+            for (Map.Entry<String, RefUpdate> entry : updates.entrySet()) {
+                String branchName = entry.getKey();
+                RefUpdate update = entry.getValue();
+                String currSHA1 = Branch.readRef(gitletDir, branchName);
+                if (update.checkOld && !Objects.equals(currSHA1, update.oldSHA1)) {
+                    throw error("Branch %s is not at the expected commit.", branchName);
+                }
+                currSHA1s.put(branchName, currSHA1);
+                deletesPacked |= update.newSHA1 == null && Branch.loadPackedRefs(gitletDir).containsKey(branchName);
+            }
+
+            if (deletesPacked || updates.size() > PACKED_THRESHOLD) {
+                packedLock = lock(join(gitletDir, "packed-refs"));
+                TreeMap<String, String> packed = new TreeMap<>(Branch.loadPackedRefs(gitletDir));
+                deleteLooseRefs(packed, currSHA1s);
+                for (Map.Entry<String, RefUpdate> entry : updates.entrySet()) {
+                    if (entry.getValue().newSHA1 == null) {
+                        packed.remove(entry.getKey());
+                    }
+                    else {
+                        packed.put(entry.getKey(), entry.getValue().newSHA1);
+                    }
+                }
+                packedLock.commit(Branch.formatPackedRefs(packed));
+                packedLock = null;
+                appendReflogs(currSHA1s);
+            }
+            else {
+                for (Map.Entry<String, RefUpdate> entry : updates.entrySet()) {
+                    if (entry.getValue().newSHA1 != null) {
+                        locks.get(entry.getKey()).prepare(entry.getValue().newSHA1 + "\n");
+                    }
+                }
+                for (Map.Entry<String, RefUpdate> entry : updates.entrySet()) {
+                    LockFile lock = locks.get(entry.getKey());
+                    if (entry.getValue().newSHA1 == null) {
+                        lock.getTarget().delete();
+                    }
+                    else {
+                        lock.renameIntoPlace();
+                        locks.remove(entry.getKey());
+                    }
+                }
+                appendReflogs(currSHA1s);
+            }
+        } finally {
+            for (LockFile lock : locks.values()) {
+                lock.release();
+            }
+            if (packedLock != null) {
+                packedLock.release();
+            }
+            Branch.forgetPackedRefs(gitletDir);
+        }
+    }
+
+    /** Delete the loose refs of the locked branches, given PACKED, the
+     *  current packed refs, and the SHA1 ID each branch points at, so that
+     *  they do not hide the packed-refs file about to be renamed into place.
+     *  Their values are first folded into packed-refs, so readers see the
+     *  same values until the new file replaces it, and a failure part way
+     *  leaves every branch where it was. */
+    private void deleteLooseRefs(TreeMap<String, String> packed, Map<String, String> currSHA1s) {
+        TreeMap<String, String> current = new TreeMap<>(packed);
+        ArrayList<File> looseRefs = new ArrayList<>();
+        for (String branchName : updates.keySet()) {
+            File loose = Branch.refFile(gitletDir, branchName);
+            if (loose.isFile()) {
+                current.put(branchName, currSHA1s.get(branchName));
+                looseRefs.add(loose);
+            }
+        }
+        if (!current.equals(packed)) {
+            writeContents(join(gitletDir, "packed-refs"), Branch.formatPackedRefs(current));
+        }
+        for (File loose : looseRefs) {
+            if (!loose.delete()) {
+                throw error("Unable to delete %s.", loose.getPath());
+            }
+        }
+    }
+
+    /** Lock TARGET, failing the transaction if it cannot be locked in time. */
+    private LockFile lock(File target) {
+        target.getParentFile().mkdirs();
+        LockFile lock = LockFile.tryAcquire(target, lockTimeout);
+        if (lock == null) {
+            throw error("%s", LockFile.lockedMessage(target));
+        }
+        return lock;
+    }
+
+    /** Record every queued update in its branch's reflog, given the SHA1 ID
+     *  each branch pointed at before the transaction. A deleted branch keeps
+     *  its reflog, ending with its deletion, until the entries expire. */
+    private void appendReflogs(Map<String, String> currSHA1s) {
+        long time = System.currentTimeMillis();
+        for (Map.Entry<String, RefUpdate> entry : updates.entrySet()) {
+            Reflog.append(gitletDir, entry.getKey(), new Reflog.Entry(currSHA1s.get(entry.getKey()),
+                    entry.getValue().newSHA1, time, message));
+        }
+    }
+
+    /** Exit the program if BRANCHNAME cannot be stored as a branch file. */
+    static void checkBranchName(String branchName) {
+        if (branchName.isEmpty() || branchName.startsWith("/") || branchName.endsWith("/")
+                || branchName.endsWith(".lock") || branchName.contains("..")
+                || branchName.contains("//") || branchName.contains(" ") || branchName.contains("\\")) {
+            throw error("Invalid branch name: %s", branchName);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents the history of where a branch has pointed. Each branch has a
+ *  reflog under .gitlet/logs/refs/heads with one line per movement,
+ *  "OLD NEW TIMESTAMP<tab>MESSAGE", oldest first, so that commits left
+ *  behind by reset, rm-branch or an abandoned merge can still be found
+ *  and restored until the entry expires. Deleting a branch adds an entry
+ *  to its reflog rather than removing it, so the reflog of a deleted
+ *  branch, and the commits it names, are kept until its entries expire.
+ *
+ *  @author Collin Bowers
+ */
+public class Reflog {
+
+    /** The SHA1 ID recorded for a branch that did not exist. */
+    public static final String ZERO_SHA1 = "0".repeat(UID_LENGTH);
+
+    /** One movement of a branch. A null SHA1 ID means the branch did not exist. */
+    public static class Entry {
+        private final String oldSHA1;
+        private final String newSHA1;
+        private final long time;
+        private final String message;
+
+        public Entry(String oldSHA1, String newSHA1, long time, String message) {
+            this.oldSHA1 = oldSHA1;
+            this.newSHA1 = newSHA1;
+            this.time = time;
+            this.message = message;
+        }
+
+        public String getOldSHA1() {
+            return oldSHA1;
+        }
+
+        public String getNewSHA1() {
+            return newSHA1;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /** Return the entry as a line of a reflog file. */
+        private String format() {
+            return ((oldSHA1 == null) ? ZERO_SHA1 : oldSHA1) + " "
+                    + ((newSHA1 == null) ? ZERO_SHA1 : newSHA1) + " " + time + "\t" + message + "\n";
+        }
+
+        /** Return the entry stored in LINE, or null if the line is malformed. */
+        private static Entry parse(String line) {
+            int tab = line.indexOf('\t');
+            String[] words = ((tab == -1) ? line : line.substring(0, tab)).split(" ");
+            if (words.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(words[0].equals(ZERO_SHA1) ? null : words[0],
+                        words[1].equals(ZERO_SHA1) ? null : words[1],
+                        Long.parseLong(words[2]), (tab == -1) ? "" : line.substring(tab + 1));
+            } catch (NumberFormatException excp) {
+                return null;
+            }
+        }
+    }
+
+    /** Return the reflog of the branch BRANCHNAME of the repository at GITLETDIR. */
+    public static File file(File gitletDir, String branchName) {
+        return join(gitletDir, "logs", "refs", "heads", branchName);
+    }
+
+    /** Return the names of the branches of the repository at GITLETDIR that
+     *  have a reflog, including deleted branches whose reflog has not expired. */
+    public static List<String> branches(File gitletDir) {
+        ArrayList<String> names = new ArrayList<>();
+        listReflogs(join(gitletDir, "logs", "refs", "heads"), "", names);
+        return names;
+    }
+
+    /** Add the name of each reflog in DIR to NAMES, prefixed by PREFIX. */
+    private static void listReflogs(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listReflogs(file, prefix + file.getName() + "/", names);
+            }
+            else {
+                names.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /** Add ENTRY to the end of the reflog of BRANCHNAME in the repository at GITLETDIR.
+     *  The caller holds the branch's lock. */
+    public static void append(File gitletDir, String branchName, Entry entry) {
+        File reflog = file(gitletDir, branchName);
+        try {
+            clearPath(gitletDir, reflog);
+            reflog.getParentFile().mkdirs();
+            Files.write(reflog.toPath(), entry.format().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Unable to write %s: %s", reflog.getPath(), excp.getMessage());
+        }
+    }
+
+    /** Delete the reflogs of deleted branches that are in the way of REFLOG,
+     *  such as that of a deleted branch a when branch a/b is made. No branch
+     *  that exists can be in the way, since its ref would be too. */
+    private static void clearPath(File gitletDir, File reflog) throws IOException {
+        File heads = join(gitletDir, "logs", "refs", "heads");
+        for (File dir = reflog.getParentFile(); !dir.equals(heads); dir = dir.getParentFile()) {
+            if (dir.isFile()) {
+                Files.delete(dir.toPath());
+            }
+        }
+        if (reflog.isDirectory()) {
+            ArrayList<String> names = new ArrayList<>();
+            listReflogs(reflog, "", names);
+            for (String name : names) {
+                Files.delete(join(reflog, name).toPath());
+            }
+            deleteEmptyDirs(reflog);
+        }
+    }
+
+    /** Delete DIR and the directories below it, all of which are empty of files. */
+    private static void deleteEmptyDirs(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteEmptyDirs(file);
+            }
+        }
+        Files.delete(dir.toPath());
+    }
+
+    /** Return the entries of the reflog of BRANCHNAME in the repository at
+     *  GITLETDIR, oldest first. A branch without a reflog has no entries. */
+    public static List<Entry> load(File gitletDir, String branchName) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        File reflog = file(gitletDir, branchName);
+        if (!reflog.isFile()) {
+            return entries;
+        }
+        for (String line : readContentsAsString(reflog).split("\n")) {
+            Entry entry = Entry.parse(line);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /** Drop the entries of the reflog of the local branch BRANCHNAME that are
+     *  older than CUTOFF, returning the entries that remain. A reflog left
+     *  with no entries is deleted, which is how the reflog of a deleted
+     *  branch goes away. */
+    public static List<Entry> expire(String branchName, long cutoff) {
+        File reflog = file(Repository.GITLET_DIR, branchName);
+        File ref = Branch.refFile(Repository.GITLET_DIR, branchName);
+        ref.getParentFile().mkdirs();
+        LockFile lock = LockFile.acquire(ref);
+        List<Entry> entries = load(Repository.GITLET_DIR, branchName);
+        int total = entries.size();
+        entries.removeIf(entry -> entry.getTime() < cutoff);
+        if (entries.size() == total) {
+            lock.release();
+            return entries;
+        }
+
+        StringBuilder contents = new StringBuilder();
+        for (Entry entry : entries) {
+            contents.append(entry.format());
+        }
+        try {
+            if (entries.isEmpty()) {
+                reflog.delete();
+                return entries;
+            }
+            writeContents(reflog, contents.toString());
+        } finally {
+            lock.release();
+        }
+        return entries;
+    }
+
+    /** Print the reflog of the branch BRANCHNAME, most recent movement first. */
+    public static void print(String branchName) {
+        List<Entry> entries = load(Repository.GITLET_DIR, branchName);
+        for (int i = entries.size() - 1, n = 0; i >= 0; i -= 1, n += 1) {
+            Entry entry = entries.get(i);
+            String sha1 = (entry.getNewSHA1() == null) ? ZERO_SHA1 : entry.getNewSHA1();
+            System.out.println(sha1.substring(0, 7) + " " + branchName + "@{" + n + "}: " + entry.getMessage());
+        }
+    }
+}
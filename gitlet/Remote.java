@@ -2,7 +2,13 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import static gitlet.Utils.*;
 
 /**
@@ -12,15 +18,29 @@ import static gitlet.Utils.*;
  *  @author Collin Bowers
  */
 public class Remote implements Serializable {
+    /** The ID Remote had before network remotes, so that remotes saved then
+     *  still load, with no URL. */
+    private static final long serialVersionUID = -6084706985607986458L;
     public static final File REMOTES_DIR = join(Repository.OBJECTS_DIR, "remotes");
+    /** Names the remote that a partial clone can lazily fetch missing blobs from. */
+    public static final File PROMISOR_FILE = join(Repository.GITLET_DIR, "promisor");
     private String name;
     private File path;
+    private String url;
+    private transient Transport transport;
+    private transient Map<String, String> remoteRefs;
 
     public Remote(String name, File path) {
         this.name = name;
         this.path = path;
     }
 
+    /** Create a remote reached over the network at the given gitlet:// URL. */
+    public Remote(String name, String url) {
+        this.name = name;
+        this.url = url;
+    }
+
     public void saveRemote() {
         File remoteToBeSaved = new File(REMOTES_DIR, name);
         writeObject(remoteToBeSaved, this);
@@ -39,106 +59,197 @@ public class Remote implements Serializable {
     /** Point the REMOTE_HEAD at the specified remote branch name. */
     public void updateRemoteHead(String branchName) {
         File REMOTE_HEAD = join(Repository.GITLET_DIR, "REMOTE_HEAD");
-        File remoteBranchDirPath = join(Branch.HEADS_DIR, name, branchName);
-        writeObject(REMOTE_HEAD, remoteBranchDirPath);
+        Branch.writeSymbolicRef(REMOTE_HEAD, name + "/" + branchName);
     }
 
-    /** Return the head commit from the remote branch. */
-    public Commit getRemoteHeadCommit(String branchName) {
-        File remoteBranchPath = join(path, "refs", "heads", branchName);
-        Branch remoteBranch = readObject(remoteBranchPath, Branch.class);
-
-        String commitSHA1 = remoteBranch.getCommitSHA1();
-        File remoteCommitPath = join(path, "objects", "commits", commitSHA1);
-        Commit remoteCommit = readObject(remoteCommitPath, Commit.class);
-        return remoteCommit;
+    /** Return the transport used to reach the remote repository. */
+    public Transport getTransport() {
+        if (transport == null) {
+            if (url != null) {
+                transport = new SocketTransport(url);
+            }
+            else if (path.isFile()) {
+                transport = new BundleTransport(path);
+            }
+            else {
+                transport = new LocalTransport(path);
+            }
+        }
+        return transport;
     }
 
-    /** Create a local version of the remote branch and
-     *  point it at the head commit of the remote branch. */
-    public void createRemoteBranch(String branchName) {
-        File remoteBranchDir = join(Branch.HEADS_DIR, name);
-        remoteBranchDir.mkdirs();
-        String remoteHeadSHA1 = getRemoteHeadCommit(branchName).getCurrSHA1();
-        Branch remote = new Branch(branchName, remoteHeadSHA1);
-        remote.updateRemoteBranch(name, remoteHeadSHA1);
+    /** Return the SHA1 ID of the head commit of the remote branch,
+     *  or null if the remote has no branch with that name. */
+    public String getRemoteHeadSHA1(String branchName) {
+        return getRemoteHeadSHA1s().get(branchName);
     }
 
-    /** Update the remote branch to point to the given commit SHA1 ID. */
-    public void updateRemoteBranch(String branchName, String commitSHA1) {
-        File remoteBranchPath = join(path, "refs", "heads", branchName);
-        Branch remoteBranch = readObject(remoteBranchPath, Branch.class);
-        remoteBranch.updateBranch(commitSHA1, remoteBranchPath);
+    /** Return the SHA1 ID of the head commit of every remote branch, keyed by branch name. */
+    public Map<String, String> getRemoteHeadSHA1s() {
+        if (remoteRefs == null) {
+            remoteRefs = getTransport().listRefs();
+        }
+        return remoteRefs;
     }
 
-    /** Update the local representation of the remote branch to point to
-     *  the given commit SHA1 ID. */
-    public void updateLocalRemoteBranch(String branchName, String commitSHA1) {
-        File remoteBranchDir = join(Branch.HEADS_DIR, name, branchName);
-        Branch remote = Branch.loadBranch(remoteBranchDir);
-        remote.updateRemoteBranch(name, commitSHA1);
+    /** Queue creating or updating the local version of each remote branch in
+     *  HEADS so that it points to the given commit SHA1 ID. */
+    public void updateLocalRemoteBranches(Map<String, String> heads, RefTransaction transaction) {
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            transaction.set(name + "/" + head.getKey(), head.getValue());
+        }
     }
 
-    /** Append the current branch's commits to the end of the
-     *  given branch at the given remote. Also resets the
-     *  remote head to the front of the appended commits. */
-    public void pushCommits(Commit remoteCommit, Commit headCommit, String branchName) {
-        String currCommitSHA1 = headCommit.getCurrSHA1();
-        String remoteCommitSHA1 = remoteCommit.getCurrSHA1();
-        while (currCommitSHA1 != null && !currCommitSHA1.equals(remoteCommitSHA1)) {
-            Commit currCommit = Commit.loadCommit(currCommitSHA1);
-            pushCommit(currCommit);
-            currCommitSHA1 = currCommit.getParentSHA1();
+    /** Update the local versions of the fetched remote branches in FETCHED
+     *  in a single transaction recorded with MESSAGE. */
+    public static void updateLocalRemoteBranches(Map<Remote, Map<String, String>> fetched, String message) {
+        RefTransaction transaction = new RefTransaction(message);
+        for (Map.Entry<Remote, Map<String, String>> entry : fetched.entrySet()) {
+            entry.getKey().updateLocalRemoteBranches(entry.getValue(), transaction);
         }
+        transaction.commit();
+    }
 
-        if (currCommitSHA1 == null) {
+    /** Append the current branch's commits to the end of the given branch
+     *  at the given remote, whose head is REMOTEHEADSHA1 (null if the remote
+     *  has no such branch yet). Every commit and blob the remote is missing
+     *  is sent in a single pack. Also resets the remote head to the front of
+     *  the appended commits. */
+    public void pushCommits(String remoteHeadSHA1, String headSHA1, String branchName) {
+        if (remoteHeadSHA1 != null && !isAncestor(remoteHeadSHA1, headSHA1)) {
             System.out.println("Please pull down remote changes before pushing.");
             System.exit(0);
         }
 
-        updateRemoteBranch(branchName, headCommit.getCurrSHA1());
-        updateLocalRemoteBranch(branchName, headCommit.getCurrSHA1());
+        try (Trace span = Trace.span("transferObjects")) {
+            getTransport().push(branchName, remoteHeadSHA1, headSHA1);
+        }
+        new RefTransaction("update by push").set(name + "/" + branchName, headSHA1).commit();
     }
 
-    /** Push the given commit to the remote repository. */
-    private void pushCommit(Commit currCommit) {
-        File remoteCommitPath = join(path, "objects", "commits", currCommit.getCurrSHA1());
-        writeObject(remoteCommitPath, currCommit);
+    /** Return true if the commit with SHA1 ID ANCESTOR is in the local
+     *  history of the commit with SHA1 ID DESCENDANT. */
+    private static boolean isAncestor(String ancestor, String descendant) {
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(descendant);
+        while (!toVisit.isEmpty()) {
+            String commitSHA1 = toVisit.pop();
+            if (commitSHA1.equals(ancestor)) {
+                return true;
+            }
+            if (!seen.add(commitSHA1) || !Pack.hasObject(Repository.GITLET_DIR, Pack.COMMIT, commitSHA1)) {
+                continue;
+            }
+            Commit commit = Commit.loadCommit(commitSHA1);
+            for (String parentSHA1 : commit.getParentSHA1s()) {
+                toVisit.push(parentSHA1);
+            }
+        }
+        return false;
     }
 
-    /** Starting at the head commit in the specified remote branch,
-     *  copy over all commits and blobs not in the local repo */
-    public void fetchContent(String branchName) {
-        Commit remoteCommit = getRemoteHeadCommit(branchName);
-        String remoteCommitSHA1 = remoteCommit.getCurrSHA1();
+    /** Starting at the given head commits of remote branches, copy over all
+     *  commits and blobs not in the local repo as a single pack. HAVES are
+     *  offered to the remote so that only missing objects are transferred,
+     *  and objects already claimed in INFLIGHT by another transfer are skipped. */
+    public void fetchContent(Collection<String> remoteHeadSHA1s, Collection<String> haves,
+                             ConcurrentHashMap<String, Remote> inFlight) {
+        fetchContent(remoteHeadSHA1s, haves, sha1 -> inFlight.putIfAbsent(sha1, this) == null, 0, -1);
+    }
 
-        while (remoteCommitSHA1 != null && !join(Commit.COMMITS_DIR, remoteCommitSHA1).exists()) {
-            remoteCommit = Commit.loadRemoteCommit(remoteCommitSHA1, path);
-            fetchCommit(remoteCommit);
-            remoteCommitSHA1 = remoteCommit.getParentSHA1();
+    /** Copy over the commits and blobs reachable from REMOTEHEADSHA1S, limited to
+     *  DEPTH generations and to blobs of at most BLOBLIMIT bytes as described in
+     *  Transport.fetch, and record any commits whose parents were cut off. */
+    public void fetchContent(Collection<String> remoteHeadSHA1s, Collection<String> haves,
+                             Predicate<String> claim, int depth, long blobLimit) {
+        List<String> shallow;
+        try (Trace span = Trace.span("transferObjects")) {
+            shallow = getTransport().fetch(remoteHeadSHA1s, haves, claim, depth, blobLimit);
         }
+        Shallow.addBoundary(shallow);
+    }
 
-        HashMap<String, String> blobs = remoteCommit.getTrackedFiles();
-        fetchBlobs(blobs);
+    /** Record this remote as the one missing blobs of a partial clone are fetched from. */
+    public void makePromisor() {
+        writeContents(PROMISOR_FILE, name);
+    }
+
+    /** Fetch the given {type, SHA1 ID} objects from the remote a partial clone
+     *  was made from. Returns false if this repository is not a partial clone. */
+    public static boolean fetchPromisedObjects(List<String[]> objects) {
+        if (!PROMISOR_FILE.isFile()) {
+            return false;
+        }
+        if (!objects.isEmpty()) {
+            Remote promisor = loadRemote(readContentsAsString(PROMISOR_FILE).trim());
+            promisor.getTransport().fetchObjects(objects);
+        }
+        return true;
     }
 
-    /** Fetch the given commit from the remote repository and
-     *  add that commit to the local repository. */
-    private void fetchCommit(Commit remoteCommit) {
-        File localCommitPath = join(Commit.COMMITS_DIR, remoteCommit.getCurrSHA1());
-        writeObject(localCommitPath, remoteCommit);
+    /** Fetch the given branches of every remote in BRANCHES at the same time,
+     *  one transfer per remote. A remote mapped to null has all of its branches
+     *  fetched. An object needed by several transfers is only
+     *  downloaded once. Returns the commit SHA1 ID each fetched branch pointed
+     *  to, for the caller to update the local versions of the remote branches
+     *  once every transfer has finished. */
+    public static Map<Remote, Map<String, String>> fetchConcurrently(Map<Remote, List<String>> branches) {
+        HashSet<String> haves = new HashSet<>(Branch.loadAllBranches(Repository.GITLET_DIR, true).values());
+        ConcurrentHashMap<String, Remote> inFlight = new ConcurrentHashMap<>();
+        HashMap<Remote, Future<Map<String, String>>> transfers = new HashMap<>();
+
+        ExecutorService workers = Executors.newCachedThreadPool();
+        for (Map.Entry<Remote, List<String>> entry : branches.entrySet()) {
+            Remote remote = entry.getKey();
+            List<String> branchNames = entry.getValue();
+            transfers.put(remote, workers.submit(() -> remote.fetchBranches(branchNames, haves, inFlight)));
+        }
+        workers.shutdown();
+
+        HashMap<Remote, Map<String, String>> fetched = new HashMap<>();
+        for (Map.Entry<Remote, Future<Map<String, String>>> transfer : transfers.entrySet()) {
+            try {
+                fetched.put(transfer.getKey(), transfer.getValue().get());
+            } catch (InterruptedException excp) {
+                throw error("Fetch was interrupted.");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw error("Fetch failed: %s", excp.getCause().getMessage());
+            }
+        }
+        return fetched;
     }
 
-    /** Fetch all blobs from the remote repository
-     *  that are not in the local repository. */
-    public void fetchBlobs(HashMap<String, String> blobs) {
-        for (HashMap.Entry<String, String> file : blobs.entrySet()) {
-            String blobSHA1 = file.getValue();
-            if (!join(Blob.BLOBS_DIR, blobSHA1).exists()) {
-                Blob remoteBlob = Blob.loadRemoteBlob(blobSHA1, path);
-                remoteBlob.saveBlob();
+    /** Bring down the given branches, or all branches if BRANCHNAMES is null,
+     *  in a single transfer, returning the commit SHA1 ID each branch pointed to. */
+    private Map<String, String> fetchBranches(List<String> branchNames, Collection<String> haves,
+                                              ConcurrentHashMap<String, Remote> inFlight) {
+        if (branchNames == null) {
+            branchNames = new ArrayList<>(getRemoteHeadSHA1s().keySet());
+        }
+        TreeMap<String, String> heads = new TreeMap<>();
+        for (String branchName : branchNames) {
+            String remoteHeadSHA1 = getRemoteHeadSHA1(branchName);
+            if (remoteHeadSHA1 == null) {
+                System.out.println("That remote does not have that branch.");
+                System.exit(0);
             }
+            heads.put(branchName, remoteHeadSHA1);
+        }
+        fetchContent(new HashSet<>(heads.values()), haves, inFlight);
+        return heads;
+    }
+
+    /** Return every remote that has been added to the local repository. */
+    public static List<Remote> loadAllRemotes() {
+        ArrayList<Remote> remotes = new ArrayList<>();
+        for (String remoteName : plainFilenamesIn(REMOTES_DIR)) {
+            remotes.add(loadRemote(remoteName));
         }
+        return remotes;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ *  Finds the files that were renamed or copied between two versions of the
+ *  tracked files. Deleted and added files with the same blob SHA1 ID are
+ *  paired first through a hash map. The files left over are compared by
+ *  MinHash sketches of their lines: each file is reduced to the smallest
+ *  value of each of NUM_HASHES hash functions over its shingles of
+ *  SHINGLE_LINES consecutive lines, and the fraction of equal values
+ *  estimates how much of the two files is shared. Pairs at least as similar
+ *  as the threshold are matched best first, each file at most once.
+ *
+ *  The threshold is a percentage read from GITLET_RENAME_THRESHOLD, 50 by
+ *  default. Inexact matching is skipped when there are more than
+ *  MAX_CANDIDATES deleted or added files, since every pair must be scored.
+ *
+ *  @author Collin Bowers
+ */
+public class RenameDetector {
+
+    private static final int DEFAULT_THRESHOLD = 50;
+    private static final int MAX_CANDIDATES = 1000;
+    private static final int NUM_HASHES = 64;
+    private static final int SHINGLE_LINES = 2;
+
+    /** Represents a file at OLDNAME in the old version found at NEWNAME in the
+     *  new one, with the percentage of it that is the same. */
+    public static class Rename {
+        public final String oldName;
+        public final String newName;
+        public final int similarity;
+        public final boolean copy;
+
+        Rename(String oldName, String newName, int similarity, boolean copy) {
+            this.oldName = oldName;
+            this.newName = newName;
+            this.similarity = similarity;
+            this.copy = copy;
+        }
+    }
+
+    private final Map<String, String> oldFiles;
+    private final Map<String, String> newFiles;
+    private final Function<String, String> oldContents;
+    private final Function<String, String> newContents;
+    private final HashMap<String, int[]> sketches = new HashMap<>();
+
+    /** Compare OLDFILES with NEWFILES, both maps from file name to blob SHA1
+     *  ID, reading the contents of a file by its name with OLDCONTENTS and
+     *  NEWCONTENTS. */
+    public RenameDetector(Map<String, String> oldFiles, Map<String, String> newFiles,
+                          Function<String, String> oldContents, Function<String, String> newContents) {
+        this.oldFiles = oldFiles;
+        this.newFiles = newFiles;
+        this.oldContents = oldContents;
+        this.newContents = newContents;
+    }
+
+    /** Return the renames, keyed by new name. If COPIES, an added file may
+     *  also be matched with an old file that still exists but was modified,
+     *  as a copy of it. Files that did not change are not considered, so
+     *  that only blobs that differ are read. */
+    public TreeMap<String, Rename> detect(boolean copies) {
+        TreeMap<String, Rename> renames = new TreeMap<>();
+        ArrayList<String> deleted = new ArrayList<>();
+        ArrayList<String> added = new ArrayList<>();
+        for (String name : oldFiles.keySet()) {
+            if (!newFiles.containsKey(name)) {
+                deleted.add(name);
+            }
+        }
+        for (String name : newFiles.keySet()) {
+            if (!oldFiles.containsKey(name)) {
+                added.add(name);
+            }
+        }
+        Collections.sort(deleted);
+        Collections.sort(added);
+
+        matchExact(deleted, added, renames, false);
+        matchSimilar(deleted, added, renames, false);
+        if (copies && !added.isEmpty()) {
+            ArrayList<String> sources = new ArrayList<>();
+            for (String name : oldFiles.keySet()) {
+                String newSHA1 = newFiles.get(name);
+                if (newSHA1 != null && !newSHA1.equals(oldFiles.get(name))) {
+                    sources.add(name);
+                }
+            }
+            Collections.sort(sources);
+            matchExact(sources, added, renames, true);
+            matchSimilar(sources, added, renames, true);
+        }
+        return renames;
+    }
+
+    /** Pair each of ADDED with one of SOURCES that has the same blob, recording
+     *  the pairs in RENAMES and removing the matched files from both lists.
+     *  Sources stay available for further matches if these are COPIES. */
+    private void matchExact(List<String> sources, List<String> added,
+                            Map<String, Rename> renames, boolean copies) {
+        HashMap<String, ArrayDeque<String>> bySHA1 = new HashMap<>();
+        for (String name : sources) {
+            bySHA1.computeIfAbsent(oldFiles.get(name), sha1 -> new ArrayDeque<>()).add(name);
+        }
+        HashSet<String> used = new HashSet<>();
+        for (Iterator<String> it = added.iterator(); it.hasNext();) {
+            String name = it.next();
+            ArrayDeque<String> matches = bySHA1.get(newFiles.get(name));
+            if (matches == null || matches.isEmpty()) {
+                continue;
+            }
+            String source = copies ? matches.peek() : matches.poll();
+            renames.put(name, new Rename(source, name, 100, copies));
+            used.add(source);
+            it.remove();
+        }
+        if (!copies) {
+            sources.removeAll(used);
+        }
+    }
+
+    /** Pair the remaining ADDED files with SOURCES whose sketches are similar
+     *  enough, most similar first, recording the pairs in RENAMES. */
+    private void matchSimilar(List<String> sources, List<String> added,
+                              Map<String, Rename> renames, boolean copies) {
+        if (sources.isEmpty() || added.isEmpty()
+                || sources.size() > MAX_CANDIDATES || added.size() > MAX_CANDIDATES) {
+            return;
+        }
+        int threshold = threshold();
+        ArrayList<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i += 1) {
+            String source = sources.get(i);
+            int[] oldSketch = sketch(oldFiles.get(source), () -> oldContents.apply(source));
+            for (int j = 0; j < added.size(); j += 1) {
+                String name = added.get(j);
+                int[] newSketch = sketch(newFiles.get(name), () -> newContents.apply(name));
+                int similarity = similarity(oldSketch, newSketch);
+                if (similarity >= threshold) {
+                    pairs.add(new int[] {similarity, i, j});
+                }
+            }
+        }
+        pairs.sort((a, b) -> a[0] != b[0] ? Integer.compare(b[0], a[0])
+                : a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[2], b[2]));
+
+        boolean[] sourceUsed = new boolean[sources.size()];
+        boolean[] addedUsed = new boolean[added.size()];
+        for (int[] pair : pairs) {
+            if ((!copies && sourceUsed[pair[1]]) || addedUsed[pair[2]]) {
+                continue;
+            }
+            sourceUsed[pair[1]] = true;
+            addedUsed[pair[2]] = true;
+            String name = added.get(pair[2]);
+            renames.put(name, new Rename(sources.get(pair[1]), name, pair[0], copies));
+        }
+        for (int i = added.size() - 1; i >= 0; i -= 1) {
+            if (addedUsed[i]) {
+                added.remove(i);
+            }
+        }
+        if (!copies) {
+            for (int i = sources.size() - 1; i >= 0; i -= 1) {
+                if (sourceUsed[i]) {
+                    sources.remove(i);
+                }
+            }
+        }
+    }
+
+    /** Return the MinHash sketch of the file with the given SHA1 ID, whose
+     *  contents CONTENTS supplies. */
+    private int[] sketch(String sha1, Supplier<String> contents) {
+        int[] sketch = sketches.get(sha1);
+        if (sketch != null) {
+            return sketch;
+        }
+        sketch = new int[NUM_HASHES];
+        Arrays.fill(sketch, Integer.MAX_VALUE);
+        String[] lines = contents.get().split("\n");
+        int shingles = Math.max(1, lines.length - SHINGLE_LINES + 1);
+        for (int i = 0; i < shingles; i += 1) {
+            int shingle = 0;
+            for (int j = i; j < Math.min(lines.length, i + SHINGLE_LINES); j += 1) {
+                shingle = shingle * 31 + lines[j].hashCode();
+            }
+            for (int k = 0; k < NUM_HASHES; k += 1) {
+                int value = mix(shingle, k);
+                if (value < sketch[k]) {
+                    sketch[k] = value;
+                }
+            }
+        }
+        sketches.put(sha1, sketch);
+        return sketch;
+    }
+
+    /** Return the percentage of equal values in sketches A and B. */
+    private static int similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int k = 0; k < NUM_HASHES; k += 1) {
+            if (a[k] == b[k]) {
+                same += 1;
+            }
+        }
+        return same * 100 / NUM_HASHES;
+    }
+
+    /** Return the K-th hash function applied to VALUE. */
+    private static int mix(int value, int k) {
+        long h = (value & 0xffffffffL) * 0x9E3779B97F4A7C15L + (k + 1) * 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h & Integer.MAX_VALUE;
+    }
+
+    /** Return the similarity percentage a pair needs to count as a rename. */
+    private static int threshold() {
+        String threshold = System.getenv("GITLET_RENAME_THRESHOLD");
+        if (threshold == null || threshold.isEmpty()) {
+            return DEFAULT_THRESHOLD;
+        }
+        try {
+            return Math.max(0, Math.min(100, Integer.parseInt(threshold)));
+        } catch (NumberFormatException excp) {
+            return DEFAULT_THRESHOLD;
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Function;
 import static gitlet.Utils.*;
 
 
@@ -27,17 +32,70 @@ public class Repository {
         Commit initial = new Commit("initial commit", createDate(true), null, null);
         String sha1 = initial.saveCommit();
 
-        Branch master = new Branch("master", sha1);
-        master.createBranch();
-        master.updateHead();
+        new RefTransaction("init").create("master", sha1).commit();
+        new Branch("master", sha1).updateHead();
+    }
+
+    /** Initialize the .gitlet directory as a copy of the remote repository at
+     *  LOCATION, remembered as the remote named origin, and check out its master
+     *  branch. If DEPTH is positive, only that many generations of history are
+     *  copied. If BLOBLIMIT is not negative, blobs larger than that are left on
+     *  the remote and fetched the first time they are needed. */
+    public static void clone(String location, int depth, long blobLimit) {
+        checkNoRepository();
+        Remote origin = SocketTransport.isURL(location) ? new Remote("origin", location)
+                : new Remote("origin", new File(location.replace("/", File.separator)));
+        TreeMap<String, String> heads = new TreeMap<>(origin.getRemoteHeadSHA1s());
+        if (heads.isEmpty()) {
+            System.out.println("Remote directory not found.");
+            System.exit(0);
+        }
+
+        createDirs();
+        origin.saveRemote();
+        origin.fetchContent(new HashSet<>(heads.values()), List.of(), sha1 -> true, depth, blobLimit);
+        if (blobLimit >= 0) {
+            origin.makePromisor();
+        }
+
+        String branchName = heads.containsKey("master") ? "master" : heads.firstKey();
+        RefTransaction transaction = new RefTransaction("clone: from " + location);
+        origin.updateLocalRemoteBranches(heads, transaction);
+        transaction.create(branchName, heads.get(branchName));
+        transaction.commit();
+        Branch branch = new Branch(branchName, heads.get(branchName));
+        branch.updateHead();
+        checkoutClonedFiles(Commit.loadCommit(heads.get(branchName)));
+    }
+
+    /** Write every file tracked by the cloned commit into the CWD, refusing to
+     *  overwrite a different file that is already there. */
+    private static void checkoutClonedFiles(Commit clonedCommit) {
+        FileTree trackedFiles = clonedCommit.getTrackedFiles();
+        for (int i = 0; i < trackedFiles.size(); i += 1) {
+            File path = join(CWD, trackedFiles.path(i));
+            if (path.isFile() && !Hasher.hashFile(path).equals(trackedFiles.id(i))) {
+                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+                System.exit(0);
+            }
+        }
+        Blob.prefetchBlobs(trackedFiles.values());
+        for (String fileName : trackedFiles.keySet()) {
+            replaceFile(fileName, clonedCommit);
+        }
     }
 
-    /** Create the necessary subdirectories within the .gitlet directory. */
-    private static void createDirs() {
+    /** Exit the program if the current directory is already a Gitlet repository. */
+    private static void checkNoRepository() {
         if (GITLET_DIR.exists()) {
             System.out.println("A Gitlet version-control system already exists in the current directory.");
             System.exit(0);
         }
+    }
+
+    /** Create the necessary subdirectories within the .gitlet directory. */
+    private static void createDirs() {
+        checkNoRepository();
 
         GITLET_DIR.mkdir();
         Commit.COMMITS_DIR.mkdirs();
@@ -46,6 +104,7 @@ public class Repository {
         Stage.REMOVAL_DIR.mkdirs();
         Branch.HEADS_DIR.mkdirs();
         Remote.REMOTES_DIR.mkdirs();
+        Pack.PACKS_DIR.mkdirs();
     }
 
     /** Format the date properly for committing. */
@@ -57,11 +116,22 @@ public class Repository {
 
     /** Stage the given file for addition. */
     public static void add(String fileName) {
-        Blob file = initBlob(fileName);
+        Blob file = initBlob(checkPath(fileName));
         Stage add = new Stage(file, "add");
         add.handleAdding();
     }
 
+    /** Return FILENAME as a path relative to the CWD, exiting if it is
+     *  outside of the CWD. */
+    private static String checkPath(String fileName) {
+        String path = WorkingTree.normalize(fileName);
+        if (path == null) {
+            System.out.println("File is outside of the working directory.");
+            System.exit(0);
+        }
+        return path;
+    }
+
     /** Initialize a blob object for the given file. */
     private static Blob initBlob(String fileName) {
         File filePath = join(CWD, fileName);
@@ -69,6 +139,9 @@ public class Repository {
             System.out.println("File does not exist.");
             System.exit(0);
         }
+        if (filePath.length() > Blob.LARGE_FILE_THRESHOLD) {
+            return Blob.fromLargeFile(fileName, filePath);
+        }
         String contents = readContentsAsString(filePath);
         String sha1 = sha1(contents);
         return new Blob(fileName, contents, sha1);
@@ -76,17 +149,39 @@ public class Repository {
 
     /** Save a snapshot of the tracked files in the current commit and those in the staging area. */
     public static void commit(String message, String otherParent) {
-        File pathToBranch = Branch.getCurrBranch();
-        Branch currBranch = Branch.loadBranch(pathToBranch);
+        commit(message, otherParent, new RefTransaction("commit: " + message));
+    }
+
+    /** Save a snapshot as above, moving the current branch to it in TRANSACTION
+     *  together with any branch updates already queued there. */
+    private static void commit(String message, String otherParent, RefTransaction transaction) {
+        commit(message, (otherParent == null) ? List.of() : List.of(otherParent), transaction);
+    }
+
+    /** Save a snapshot as above whose parents after the current head commit
+     *  are OTHERPARENTS, in order. */
+    private static void commit(String message, List<String> otherParents, RefTransaction transaction) {
+        Branch currBranch = Branch.getCurrBranch();
         String parentSHA1 = currBranch.getCommitSHA1();
 
         handleCommitFailureCases(message);
-        Commit currCommit = new Commit(message, createDate(false), parentSHA1, otherParent);
-        currCommit.updateTrackedFiles();
-        String sha1 = currCommit.saveCommit();
+        Commit currCommit = new Commit(message, createDate(false), parentSHA1, null);
+        currCommit.setOtherParentSHA1s(otherParents);
+        try (Trace span = Trace.span("updateTrackedFiles")) {
+            currCommit.updateTrackedFiles();
+        }
+        String sha1;
+        try (Trace span = Trace.span("saveCommit")) {
+            sha1 = currCommit.saveCommit();
+        }
 
-        currBranch.updateBranch(sha1, pathToBranch);
-        Stage.clearStagedFiles();
+        try (Trace span = Trace.span("updateRefs")) {
+            transaction.update(currBranch.getBranchName(), parentSHA1, sha1);
+            transaction.commit();
+        }
+        try (Trace span = Trace.span("clearStage")) {
+            Stage.clearStagedFiles();
+        }
     }
 
     /** Committing fails if the staging area is empty or if there is no message provided. */
@@ -101,7 +196,7 @@ public class Repository {
 
     /** Remove the file from the CWD and from being tracked. */
     public static void remove(String fileName) {
-        Stage remove = new Stage(fileName, "remove");
+        Stage remove = new Stage(checkPath(fileName), "remove");
         remove.handleRemoving();
     }
 
@@ -124,7 +219,7 @@ public class Repository {
 
     /** Display information for all commits in an unspecified order. */
     public static void globalLog() {
-        ArrayList<String> commits = new ArrayList<>(plainFilenamesIn(Commit.COMMITS_DIR));
+        List<String> commits = Pack.listObjects(GITLET_DIR, Pack.COMMIT);
 
         for (String commitSHA1 : commits) {
             Commit currCommit = Commit.loadCommit(commitSHA1);
@@ -137,9 +232,11 @@ public class Repository {
         System.out.println("===");
         System.out.println("commit " + currCommit.getCurrSHA1());
         if (merge) {
-            String parentSHA1 = currCommit.getParentSHA1();
-            String otherParentSHA1 = currCommit.getOtherParentSHA1();
-            System.out.println("Merge: " + parentSHA1.substring(0, 7) + " " + otherParentSHA1.substring(0, 7));
+            StringJoiner parents = new StringJoiner(" ", "Merge: ", "");
+            for (String parentSHA1 : currCommit.getParentSHA1s()) {
+                parents.add(parentSHA1.substring(0, 7));
+            }
+            System.out.println(parents);
         }
         System.out.println("Date: " + currCommit.getDate());
         System.out.println(currCommit.getMessage() + "\n");
@@ -147,7 +244,7 @@ public class Repository {
 
     /** Print the SHA1 IDs for all commits that have the given message. */
     public static void find(String message) {
-        ArrayList<String> commits = new ArrayList<>(plainFilenamesIn(Commit.COMMITS_DIR));
+        List<String> commits = Pack.listObjects(GITLET_DIR, Pack.COMMIT);
         boolean foundMessage = false;
         for (String commitSHA1 : commits) {
             Commit currCommit = Commit.loadCommit(commitSHA1);
@@ -162,47 +259,58 @@ public class Repository {
         }
     }
 
-    /** Display all branches and files in the staging area. */
+    /** Display all branches, the files in the staging area, and the working
+     *  files with unstaged changes or that are untracked. */
     public static void status() {
+        Status status = Status.compute();
         System.out.println("=== Branches ===");
         printBranches();
 
-        System.out.println("\n=== Staged Files ===");
-        printStageDir("add");
-
-        System.out.println("\n=== Removed Files ===");
-        printStageDir("remove");
-
+        printSection("Staged Files", status.getStaged());
+        printSection("Removed Files", status.getRemoved());
+        printSection("Modifications Not Staged For Commit", status.getModified());
+        printSection("Untracked Files", status.getUntracked());
         System.out.println();
     }
 
     /** Print name of all branches and an asterisk next to the current branch. */
     private static void printBranches() {
-        Branch currBranch = Branch.loadBranch(Branch.getCurrBranch());
-        System.out.println("*" + currBranch.getBranchName());
-        ArrayList<String> branches = new ArrayList<>(plainFilenamesIn(Branch.HEADS_DIR));
-        for (String branchName : branches) {
-            if (branchName.equals(currBranch.getBranchName())) {
+        String currBranchName = Branch.getCurrBranchName();
+        System.out.println("*" + currBranchName);
+        for (String branchName : Branch.loadAllBranches(GITLET_DIR, false).keySet()) {
+            if (branchName.equals(currBranchName)) {
                 continue;
             }
             System.out.println(branchName);
         }
     }
 
-    /** Print the name of all files staged for addition or removal based on which is specified. */
-    private static void printStageDir(String type) {
-        ArrayList<String> stagedFiles;
-        if (type.equals("add")) {
-            stagedFiles = new ArrayList<>(plainFilenamesIn(Stage.ADDITION_DIR));
-        }
-        else {
-            stagedFiles = new ArrayList<>(plainFilenamesIn(Stage.REMOVAL_DIR));
+    /** Print the status section with the given TITLE listing LINES. */
+    private static void printSection(String title, List<String> lines) {
+        System.out.println("\n=== " + title + " ===");
+        for (String line : lines) {
+            System.out.println(line);
         }
+    }
 
-        for (String fileName : stagedFiles) {
-            Stage file = Stage.loadStagedFile(fileName, type);
-            System.out.println(file.getCurrFile().getName());
-        }
+    /** Print the changes in the working directory that have not been staged,
+     *  leaving out files outside the sparse cone. Each diff looks for copies
+     *  as well as renames if COPIES is true. */
+    public static void diff(boolean copies) {
+        Diff.Snapshot index = Diff.Snapshot.ofIndex().select(SparseCheckout.load());
+        Diff.print(index, Diff.Snapshot.ofWorkingTree(index), copies);
+    }
+
+    /** Print the changes that have been staged since the head commit. */
+    public static void diffCached(boolean copies) {
+        Diff.print(Diff.Snapshot.of(Commit.getHeadCommit()), Diff.Snapshot.ofIndex(), copies);
+    }
+
+    /** Print the changes between the two commits with the given IDs. */
+    public static void diff(String oldCommitID, String newCommitID, boolean copies) {
+        Commit oldCommit = Commit.loadCommit(Commit.handleShortenedIDs(oldCommitID));
+        Commit newCommit = Commit.loadCommit(Commit.handleShortenedIDs(newCommitID));
+        Diff.print(Diff.Snapshot.of(oldCommit), Diff.Snapshot.of(newCommit), copies);
     }
 
     /** Checkout the file with the given name. */
@@ -220,19 +328,21 @@ public class Repository {
 
     /** Checkout the specified branch and all files tracked by that branch's head commit. */
     public static void checkoutBranch(String branchName) {
-        File pathToDesiredBranch = join(Branch.HEADS_DIR, branchName);
-        File pathToCurrBranch = Branch.getCurrBranch();
-
-        checkFailureCases(pathToDesiredBranch, pathToCurrBranch, branchName);
+        try (Trace span = Trace.span("checkUntrackedFiles")) {
+            checkFailureCases(branchName);
+        }
 
         Commit desiredCommit = Commit.getBranchHeadCommit(branchName);
-        changeCWD(desiredCommit);
+        try (Trace span = Trace.span("changeCWD")) {
+            changeCWD(desiredCommit);
+        }
 
-        Stage.clearStagedFiles();
+        try (Trace span = Trace.span("clearStage")) {
+            Stage.clearStagedFiles();
+        }
 
-        Branch newBranch = Branch.loadBranch(pathToDesiredBranch);
-        newBranch.updateBranch(desiredCommit.getCurrSHA1(), pathToDesiredBranch);
-        newBranch.updateHead(branchName);
+        Branch newBranch = Branch.loadBranch(branchName);
+        newBranch.updateHead();
     }
 
     /** Replace the file in the CWD with the version of the file from the given commit. */
@@ -244,35 +354,54 @@ public class Repository {
         }
 
         Blob currFile = Blob.loadBlob(fileSHA1);
-        String contents = currFile.getContents();
-
-        File file = new File(CWD, fileName);
-        restrictedDelete(file);
-        writeContents(file, contents);
+        WorkingTree.writeFile(fileName, currFile);
     }
 
-    /** Main driver for checking out all files in the specified branch. */
+    /** Main driver for checking out all files in the specified branch. The
+     *  head and desired trees are walked together, and a file the two agree
+     *  on is only written if the working copy differs from it. Only the
+     *  files in the sparse cone are written or deleted. */
     private static void changeCWD(Commit desiredCommit) {
-        HashMap<String, String> desiredTrackedFiles = desiredCommit.getTrackedFiles();
-        for (HashMap.Entry<String, String> file : desiredTrackedFiles.entrySet()) {
-            replaceFile(file.getKey(), desiredCommit);
+        SparseCheckout sparse = SparseCheckout.load();
+        FileTree headTrackedFiles = sparse.select(Commit.getHeadCommit().getTrackedFiles());
+        FileTree desiredTrackedFiles = sparse.select(desiredCommit.getTrackedFiles());
+        TreeMap<String, BasicFileAttributes> workFiles = sparse.files();
+        StatCache cache = StatCache.load();
+        ArrayList<String> changedFiles = new ArrayList<>();
+        ArrayList<String> changedSHA1s = new ArrayList<>();
+        FileTree.Walk walk = new FileTree.Walk(headTrackedFiles, desiredTrackedFiles);
+        while (walk.next()) {
+            if (!walk.has(1)) {
+                continue;
+            }
+            BasicFileAttributes attributes = workFiles.get(walk.path());
+            if (walk.same(0, 1) && attributes != null
+                    && cache.hash(walk.path(), attributes).equals(desiredTrackedFiles.id(walk.index(1)))) {
+                continue;
+            }
+            changedFiles.add(walk.path());
+            changedSHA1s.add(walk.sha1(1));
         }
 
-        ArrayList<String> cwdFiles = new ArrayList<>(plainFilenamesIn(CWD));
-        for (String fileName : cwdFiles) {
+        Blob.prefetchBlobs(changedSHA1s);
+        for (String fileName : changedFiles) {
+            replaceFile(fileName, desiredCommit);
+        }
+
+        for (String fileName : workFiles.keySet()) {
             if (!desiredTrackedFiles.containsKey(fileName)) {
-                restrictedDelete(join(CWD, fileName));
+                WorkingTree.deleteFile(fileName);
             }
         }
     }
 
     /** If the path to the specified branch doesn't exist or the specified branch is the current branch,
      *  inform the user and exit the program. */
-    private static void checkFailureCases(File pathToDesiredBranch, File pathToCurrBranch, String branchName) {
-        if (!pathToDesiredBranch.exists()) {
+    private static void checkFailureCases(String branchName) {
+        if (!Branch.exists(branchName)) {
             System.out.println("No such branch exists.");
             System.exit(0);
-        } else if (pathToCurrBranch.equals(pathToDesiredBranch)) {
+        } else if (Branch.getCurrBranchName().equals(branchName)) {
             System.out.println("No need to checkout the current branch.");
             System.exit(0);
         }
@@ -283,47 +412,236 @@ public class Repository {
 
     /* If there are untracked files in the CWD, the program stops execution and informs the user. */
     private static void handleUntrackedFiles(Commit desiredCommit) {
-        Commit headCommit = Commit.getHeadCommit();
+        handleUntrackedFiles(desiredCommit.getTrackedFiles());
+    }
 
-        HashMap<String, String> headTrackedFiles = headCommit.getTrackedFiles();
-        HashMap<String, String> desiredTrackedFiles = desiredCommit.getTrackedFiles();
-        ArrayList<String> cwdFiles = new ArrayList<>(plainFilenamesIn(CWD));
+    /* As above, for a checkout of the files DESIREDTRACKEDFILES. */
+    private static void handleUntrackedFiles(FileTree desiredTrackedFiles) {
+        Commit headCommit = Commit.getHeadCommit();
 
-        for (String fileName : cwdFiles) {
-            String fileSHA1 = sha1(readContentsAsString(join(CWD, fileName)));
-            if (!headTrackedFiles.containsKey(fileName) && (!fileSHA1.equals(desiredTrackedFiles.get(fileName)))) {
+        FileTree headTrackedFiles = headCommit.getTrackedFiles();
+        for (String fileName : SparseCheckout.load().files().keySet()) {
+            if (headTrackedFiles.containsKey(fileName)) {
+                continue;
+            }
+            ObjectId fileID = Hasher.hashFile(join(CWD, fileName));
+            if (!fileID.equals(desiredTrackedFiles.getId(fileName))) {
                 System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
                 System.exit(0);
             }
         }
     }
 
+    /** Print the paths of the sparse cone, one per line. */
+    public static void sparseCheckoutList() {
+        for (String path : SparseCheckout.load().getPaths()) {
+            System.out.println(path);
+        }
+    }
+
+    /** Make PATHS the sparse cone, or the whole working directory if PATHS
+     *  is null. The files of the head commit that enter the cone are written
+     *  and those that leave it are deleted. Exits without changing anything
+     *  if a file leaving the cone has changes or an untracked file is in the
+     *  way of one entering it. */
+    public static void sparseCheckout(List<String> paths) {
+        SparseCheckout oldCone = SparseCheckout.load();
+        SparseCheckout newCone = (paths == null) ? SparseCheckout.ALL : SparseCheckout.of(paths);
+        FileTree headFiles = Commit.getHeadCommit().getTrackedFiles();
+
+        ArrayList<String> leaving = new ArrayList<>();
+        FileTree oldFiles = oldCone.select(headFiles);
+        for (int i = 0; i < oldFiles.size(); i += 1) {
+            String fileName = oldFiles.path(i);
+            if (newCone.contains(fileName)) {
+                continue;
+            }
+            File file = join(CWD, fileName);
+            if (file.isFile() && !Hasher.hashFile(file).equals(oldFiles.id(i))) {
+                System.out.println("You have uncommitted changes to " + fileName + ".");
+                System.exit(0);
+            }
+            leaving.add(fileName);
+        }
+
+        ArrayList<String> entering = new ArrayList<>();
+        ArrayList<String> enteringSHA1s = new ArrayList<>();
+        FileTree newFiles = newCone.select(headFiles);
+        for (int i = 0; i < newFiles.size(); i += 1) {
+            String fileName = newFiles.path(i);
+            if (oldCone.contains(fileName)) {
+                continue;
+            }
+            File file = join(CWD, fileName);
+            if (file.isFile()) {
+                if (!Hasher.hashFile(file).equals(newFiles.id(i))) {
+                    System.out.println("There is an untracked file in the way; "
+                            + "delete it, or add and commit it first.");
+                    System.exit(0);
+                }
+                continue;
+            }
+            entering.add(fileName);
+            enteringSHA1s.add(newFiles.get(fileName));
+        }
+
+        Blob.prefetchBlobs(enteringSHA1s);
+        for (String fileName : entering) {
+            WorkingTree.writeFile(fileName, Blob.loadBlob(newFiles.get(fileName)));
+        }
+        for (String fileName : leaving) {
+            WorkingTree.deleteFile(fileName);
+        }
+        newCone.save();
+        FsMonitor.TOKEN_FILE.delete();
+    }
+
     /** Create a branch with the specified name.
      *  Note: Does not switch HEAD to that branch. */
     public static void branch(String branchName) {
         Branch.checkIfUniqueName(branchName);
 
         String headCommitSHA1 = Commit.getHeadCommitSHA1();
-        Branch b = new Branch(branchName, headCommitSHA1);
-        b.createBranch();
+        new RefTransaction("branch: created from " + Branch.getCurrBranchName())
+                .create(branchName, headCommitSHA1).commit();
     }
 
     /** Remove the branch with the specified name. */
     public static void removeBranch(String branchName) {
         checkIfBranchExists(branchName);
 
-        File branchPath = join(Branch.HEADS_DIR, branchName);
-        if (Branch.getCurrBranch().equals(branchPath)) {
+        if (Branch.getCurrBranchName().equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
             System.exit(0);
         }
 
-        branchPath.delete();
+        new RefTransaction("rm-branch").delete(branchName, Branch.loadBranch(branchName).getCommitSHA1()).commit();
+    }
+
+    /** Rewrite a repository made by the first version of Gitlet, which
+     *  stored HEAD and its branches as serialized objects and staged files
+     *  under their names without extensions, in the current format. A
+     *  current repository is left alone. */
+    public static void upgrade() {
+        if (Branch.isOldFormat(GITLET_DIR)) {
+            Stage.upgradeKeys();
+            Branch.upgradeRefs(GITLET_DIR);
+        }
+    }
+
+    /** Print where the given branch, or the current branch if BRANCHNAME is
+     *  null, has pointed, most recent first. A deleted branch's reflog is
+     *  printed until it expires. Any commit listed can be restored with reset. */
+    public static void reflog(String branchName) {
+        if (branchName == null) {
+            branchName = Branch.getCurrBranchName();
+        }
+        else if (!Branch.exists(branchName) && !Reflog.file(GITLET_DIR, branchName).isFile()) {
+            System.out.println("A branch with that name does not exist.");
+            System.exit(0);
+        }
+        Reflog.print(branchName);
+    }
+
+    /** Delete the loose commits and blobs that no branch, remote-tracking branch
+     *  or unexpired reflog entry can reach and that are older than PRUNEGRACE milliseconds. */
+    public static void gc(long pruneGrace) {
+        GarbageCollector.collect(pruneGrace);
+    }
+
+    /** Print every missing, corrupt or dangling object in the repository. With
+     *  FAST, objects are not read back and only pack checksums and connectivity
+     *  are checked. */
+    public static void fsck(boolean fast) {
+        for (String problem : IntegrityChecker.check(fast)) {
+            System.out.println(problem);
+        }
+    }
+
+    /** Apply the branch updates read from INPUT as a single transaction, one per line:
+     *  "create BRANCH NEW", "update BRANCH NEW [OLD]", or "delete BRANCH [OLD]".
+     *  Either every branch is moved or, if any of them is not at OLD, none are. */
+    public static void updateRefs(BufferedReader input) {
+        RefTransaction transaction = new RefTransaction("update-ref");
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                if (words[0].isEmpty()) {
+                    continue;
+                }
+                if (words[0].equals("create") && words.length == 3) {
+                    transaction.create(words[1], checkCommitExists(words[2]));
+                }
+                else if (words[0].equals("update") && words.length == 3) {
+                    transaction.set(words[1], checkCommitExists(words[2]));
+                }
+                else if (words[0].equals("update") && words.length == 4) {
+                    transaction.update(words[1], words[3], checkCommitExists(words[2]));
+                }
+                else if (words[0].equals("delete") && (words.length == 2 || words.length == 3)) {
+                    String oldSHA1 = (words.length == 3) ? words[2] : Branch.readRef(GITLET_DIR, words[1]);
+                    if (oldSHA1 == null) {
+                        throw error("A branch with that name does not exist.");
+                    }
+                    transaction.delete(words[1], oldSHA1);
+                }
+                else {
+                    throw error("Invalid update-ref line: %s", line);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Unable to read updates: %s", excp.getMessage());
+        }
+        transaction.commit();
+    }
+
+    /** Import the history described by the fast-import stream read from
+     *  INPUT, writing its objects into a single pack and moving the branches
+     *  it names together at the end. */
+    public static void fastImport(InputStream input) {
+        FastImport.run(input);
+    }
+
+    /** Write the history of the branches BRANCHNAMES to a single bundle file
+     *  at FILENAME, which can be cloned, fetched from or unbundled elsewhere. */
+    public static void createBundle(String fileName, List<String> branchNames) {
+        BundleTransport.create(new File(fileName.replace("/", File.separator)), branchNames);
+    }
+
+    /** Check the bundle at FILENAME and install its objects, then print the
+     *  commit SHA1 ID and name of each branch it holds. */
+    public static void unbundle(String fileName) {
+        File file = new File(fileName.replace("/", File.separator));
+        if (!file.isFile()) {
+            System.out.println("Bundle not found.");
+            System.exit(0);
+        }
+        BundleTransport bundle = new BundleTransport(file);
+        Map<String, String> heads = bundle.listRefs();
+        Shallow.addBoundary(bundle.fetch(heads.values(), List.of(), sha1 -> true, 0, -1));
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            System.out.println(head.getValue() + " " + head.getKey());
+        }
+    }
+
+    /** Return SHA1 if it is the ID of a commit in the repository, and exit otherwise. */
+    private static String checkCommitExists(String sha1) {
+        if (!sha1.matches("[0-9a-f]{40}") || !Pack.hasObject(GITLET_DIR, Pack.COMMIT, sha1)) {
+            throw error("No commit with that id exists.");
+        }
+        return sha1;
+    }
+
+    /** Move every branch into the packed-refs file, so that repositories
+     *  with many branches read a single file to list them. */
+    public static void packRefs() {
+        Branch.packRefs();
     }
 
     /** Exit the program if a branch with that name already exists. */
     private static void checkIfBranchExists(String branchName) {
-        if (!join(Branch.HEADS_DIR, branchName).exists()) {
+        if (!Branch.exists(branchName)) {
             System.out.println("A branch with that name does not exist.");
             System.exit(0);
         }
@@ -333,63 +651,140 @@ public class Repository {
     public static void reset(String commitID) {
         commitID = Commit.handleShortenedIDs(commitID);
         Commit desiredCommit = Commit.loadCommit(commitID);
-        handleUntrackedFiles(desiredCommit);
+        try (Trace span = Trace.span("checkUntrackedFiles")) {
+            handleUntrackedFiles(desiredCommit);
+        }
 
-        changeCWD(desiredCommit);
+        try (Trace span = Trace.span("changeCWD")) {
+            changeCWD(desiredCommit);
+        }
 
-        Stage.clearStagedFiles();
+        try (Trace span = Trace.span("clearStage")) {
+            Stage.clearStagedFiles();
+        }
 
-        File pathToBranch = Branch.getCurrBranch();
-        Branch currBranch = Branch.loadBranch(pathToBranch);
-        currBranch.updateBranch(desiredCommit.getCurrSHA1(), pathToBranch);
+        Branch currBranch = Branch.getCurrBranch();
+        new RefTransaction("reset: moving to " + desiredCommit.getCurrSHA1())
+                .update(currBranch.getBranchName(), currBranch.getCommitSHA1(), desiredCommit.getCurrSHA1())
+                .commit();
     }
 
     /** Merges files from the given branch into the current branch. */
     public static void merge (String branchName) {
-        handleMergeFailureCases(branchName);
-        File pathToBranch = Branch.getCurrBranch();
-        Branch currBranch = Branch.loadBranch(pathToBranch);
+        checkIfBranchExists(branchName);
+        merge(branchName, Branch.loadBranch(branchName).getCommitSHA1(), new RefTransaction("merge " + branchName));
+    }
+
+    /** Merges all of the branches BRANCHNAMES into the current branch in a
+     *  single commit, whose parents are the current head commit and the head
+     *  of each branch in order. Branches the current branch already contains
+     *  are left out, and if only one is left it is merged as usual. */
+    public static void merge(List<String> branchNames) {
+        LinkedHashMap<String, String> branches = new LinkedHashMap<>();
+        for (String branchName : branchNames) {
+            checkIfBranchExists(branchName);
+            if (Branch.getCurrBranchName().equals(branchName)) {
+                System.out.println("Cannot merge a branch with itself.");
+                System.exit(0);
+            }
+            branches.put(branchName, Branch.loadBranch(branchName).getCommitSHA1());
+        }
+        if (Stage.ADDITION_DIR.list().length > 0 || Stage.REMOVAL_DIR.list().length > 0) {
+            System.out.println("You have uncommitted changes.");
+            System.exit(0);
+        }
+
+        List<String> bases;
+        try (Trace span = Trace.span("findLCA")) {
+            bases = OctopusMerge.mergeBases(Commit.getHeadCommitSHA1(), new ArrayList<>(branches.values()));
+        }
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> otherSHA1s = new ArrayList<>();
+        ArrayList<FileTree> others = new ArrayList<>();
+        ArrayList<FileTree> baseTrees = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            String base = bases.get(i);
+            i += 1;
+            if (base == null) {
+                System.out.println("No common ancestor within the shallow history.");
+                System.exit(0);
+            }
+            if (base.equals(branch.getValue()) || otherSHA1s.contains(branch.getValue())) {
+                continue;
+            }
+            names.add(branch.getKey());
+            otherSHA1s.add(branch.getValue());
+            others.add(Commit.loadCommit(branch.getValue()).getTrackedFiles());
+            baseTrees.add(Commit.loadCommit(base).getTrackedFiles());
+        }
+        if (names.isEmpty()) {
+            System.out.println("Given branch is an ancestor of the current branch.");
+            System.exit(0);
+        }
+        else if (names.size() == 1) {
+            merge(names.get(0));
+            return;
+        }
 
-        Commit LCA = findLCA(branchName);
-        Commit otherCommit = Commit.getBranchHeadCommit(branchName);
+        OctopusMerge merge;
+        try (Trace span = Trace.span("planMerge")) {
+            merge = OctopusMerge.merge(Commit.getHeadCommit().getTrackedFiles(), others, baseTrees);
+        }
+        try (Trace span = Trace.span("checkUntrackedFiles")) {
+            handleUntrackedFiles(merge.getMergedFiles());
+        }
+        try (Trace span = Trace.span("mergeFiles")) {
+            merge.apply();
+        }
+        String branchList = String.join(", ", names.subList(0, names.size() - 1))
+                + " and " + names.get(names.size() - 1);
+        commit("Merged " + branchList + " into " + Branch.getCurrBranchName() + ".", otherSHA1s,
+                new RefTransaction("merge " + String.join(" ", names)));
+    }
+
+    /** Merges the commit with SHA1 ID OTHERSHA1, the head of the branch BRANCHNAME,
+     *  into the current branch. The branch updates queued in TRANSACTION are
+     *  applied together with the merge, and are dropped if the merge fails. */
+    private static void merge(String branchName, String otherSHA1, RefTransaction transaction) {
+        try (Trace span = Trace.span("checkUntrackedFiles")) {
+            handleMergeFailureCases(branchName, otherSHA1);
+        }
+        Branch currBranch = Branch.getCurrBranch();
+
+        Commit LCA;
+        try (Trace span = Trace.span("findLCA")) {
+            LCA = findLCA(branchName, otherSHA1, transaction);
+        }
+        Commit otherCommit = Commit.loadCommit(otherSHA1);
         Commit headCommit = Commit.getHeadCommit();
 
-        HashMap<String, String> headTrackedFiles = headCommit.getTrackedFiles();
-        HashMap<String, String> otherTrackedFiles = otherCommit.getTrackedFiles();
-        HashMap<String, String> lcaTrackedFiles = LCA.getTrackedFiles();
+        FileTree[] trees = {headCommit.getTrackedFiles(), otherCommit.getTrackedFiles(), LCA.getTrackedFiles()};
+        Set<String> movedHeadFiles;
+        try (Trace span = Trace.span("followRenames")) {
+            movedHeadFiles = followRenames(trees);
+        }
 
-        ArrayList<String> blobs = new ArrayList<>(plainFilenamesIn(Blob.BLOBS_DIR));
-        HashSet<String> seenBlobs = new HashSet<>();
-        for (String blobSHA1 : blobs) {
-            Blob currBlob = Blob.loadBlob(blobSHA1);
-            String name = currBlob.getName();
-            if (seenBlobs.contains(name)) {
-                continue;
+        try (Trace span = Trace.span("mergeFiles")) {
+            MergePlan.plan(trees, headCommit.getTrackedFiles()).apply();
+            for (String name : movedHeadFiles) {
+                remove(name);
             }
-            seenBlobs.add(name);
-            String headSHA1 = headTrackedFiles.get(name);
-            String otherSHA1 = otherTrackedFiles.get(name);
-            String lcaSHA1 = lcaTrackedFiles.get(name);
-            handleMerging(headSHA1, otherSHA1, lcaSHA1, branchName);
         }
 
-        commit("Merged " + branchName + " into " + currBranch.getBranchName() + ".", otherCommit.getCurrSHA1());
+        commit("Merged " + branchName + " into " + currBranch.getBranchName() + ".", otherCommit.getCurrSHA1(),
+                transaction);
     }
 
-    /** Abort the merge if a branch with the specified name does not exist, if there are uncommitted changes,
-     *  or if the branch to be merged into is the same as the current branch. */
-    private static void handleMergeFailureCases(String branchName) {
-        checkIfBranchExists(branchName);
-
-        File pathToOtherBranch = join(Branch.HEADS_DIR, branchName);
-        File pathToBranch = Branch.getCurrBranch();
-        Branch currBranch = Branch.loadBranch(pathToBranch);
-        handleUntrackedFiles(Commit.getBranchHeadCommit(branchName));
+    /** Abort the merge if there are uncommitted changes or if the branch to be
+     *  merged into is the same as the current branch. */
+    private static void handleMergeFailureCases(String branchName, String otherSHA1) {
+        handleUntrackedFiles(Commit.loadCommit(otherSHA1));
         if (Stage.ADDITION_DIR.list().length > 0 || Stage.REMOVAL_DIR.list().length > 0) {
             System.out.println("You have uncommitted changes.");
             System.exit(0);
         }
-        else if (pathToBranch.equals(pathToOtherBranch)) {
+        else if (Branch.getCurrBranchName().equals(branchName)) {
             System.out.println("Cannot merge a branch with itself.");
             System.exit(0);
         }
@@ -397,8 +792,22 @@ public class Repository {
 
     /** Find the latest common ancestor commit, which is the most recent commit from
      *  which there is a path from both branch heads. */
-    private static Commit findLCA(String branchName) {
-        String otherCommitSHA1 = Commit.getBranchHeadCommit(branchName).getCurrSHA1();
+    private static Commit findLCA(String branchName, String otherSHA1, RefTransaction transaction) {
+        String LCA = latestCommonAncestor(Commit.getHeadCommitSHA1(), otherSHA1);
+        if (LCA == null) {
+            System.out.println("No common ancestor within the shallow history.");
+            System.exit(0);
+        }
+
+        handleLCASpecialCases(LCA, branchName, otherSHA1, transaction);
+        return Commit.loadCommit(LCA);
+    }
+
+    /** Return the SHA1 ID of the first commit on the first-parent history of
+     *  HEADSHA1 that is also on the first-parent history of OTHERSHA1, or null
+     *  if the histories only meet beyond a shallow boundary. */
+    static String latestCommonAncestor(String headSHA1, String otherSHA1) {
+        String otherCommitSHA1 = otherSHA1;
         HashSet<String> commitSHA1s = new HashSet<>();
         do {
             Commit otherCommit = Commit.loadCommit(otherCommitSHA1);
@@ -406,100 +815,104 @@ public class Repository {
             otherCommitSHA1 = otherCommit.getParentSHA1();
         } while (otherCommitSHA1 != null);
 
-        String currCommitSHA1 = Commit.getHeadCommitSHA1();
+        String currCommitSHA1 = headSHA1;
         while (!commitSHA1s.contains(currCommitSHA1)) {
             Commit currCommit = Commit.loadCommit(currCommitSHA1);
             currCommitSHA1 = currCommit.getParentSHA1();
+            if (currCommitSHA1 == null) {
+                return null;
+            }
         }
-        String LCA = currCommitSHA1;
-
-        handleLCASpecialCases(LCA, branchName);
-        return Commit.loadCommit(LCA);
+        return currCommitSHA1;
     }
 
     /** If the latest common ancestor is the same commit as the other branch's
      *  head commit, the merge is already complete, so we simply exit. If the latest
      *  common ancestor is the current branch's head commit, then we check out
-     *  the other branch and then exit. */
-    private static void handleLCASpecialCases(String LCA, String branchName) {
-        String otherCommitSHA1 = Commit.getBranchHeadCommit(branchName).getCurrSHA1();
+     *  the other branch and then exit. Either way the updates queued in
+     *  TRANSACTION are applied first. */
+    private static void handleLCASpecialCases(String LCA, String branchName, String otherCommitSHA1,
+                                              RefTransaction transaction) {
         String currCommitSHA1 = Commit.getHeadCommitSHA1();
 
         if (LCA.equals(otherCommitSHA1)) {
+            transaction.commit();
             System.out.println("Given branch is an ancestor of the current branch.");
             System.exit(0);
         }
         else if (LCA.equals(currCommitSHA1)) {
+            transaction.commit();
             checkoutBranch(branchName);
             System.out.println("Current branch fast-forwarded");
             System.exit(0);
         }
     }
 
-    /** Handle all the special cases associated with merging. The logic is primarily based on
-     *  checking if the file under consideration has been modified, removed, or created in
-     *  the head commit, other branch head commit, or latest common ancestor commit. */
-    private static void handleMerging(String headSHA1, String otherSHA1, String lcaSHA1, String branchName) {
-        Blob headFile = Blob.loadBlob(headSHA1);
-        Blob otherFile = Blob.loadBlob(otherSHA1);
-        Blob lcaFile = Blob.loadBlob(lcaSHA1);
-
-        if (lcaFile != null && (headFile == null && otherFile == null)) {
-            return;
-        }
-        else if (headFile != null && (otherFile == null && lcaFile == null)) {
-            return;
-        }
-        else if (otherFile != null && (headFile == null && lcaFile == null)) {
-            replaceFile(otherFile.getName(), Commit.getBranchHeadCommit(branchName));
-            Stage add = new Stage(otherFile, "add");
-            add.handleAdding();
-        }
-        else if (Objects.equals(headSHA1, lcaSHA1) && otherFile == null) {
-            remove(headFile.getName());
-        }
-        else if (Objects.equals(otherSHA1, lcaSHA1) && headFile == null) {
-            return;
-        }
-        else if (!Objects.equals(otherSHA1, lcaSHA1) && Objects.equals(headSHA1, lcaSHA1)) {
-            Stage add = new Stage(otherFile, "add");
-            add.handleAdding();
-        }
-        else if (!Objects.equals(headSHA1, lcaSHA1) && Objects.equals(otherSHA1, lcaSHA1)) {
-            Stage add = new Stage(headFile, "add");
-            add.handleAdding();
-        }
-        else if (Objects.equals(headSHA1, otherSHA1) && !Objects.equals(headSHA1, lcaSHA1)) {
-            return;
-        }
-        else if (!Objects.equals(headSHA1, otherSHA1)) {
-            handleMergeConflict(headFile, otherFile);
+    /** Line up the files renamed since the latest common ancestor on one side
+     *  of a merge under their new names on all three sides, so that changes
+     *  made on the other side under the old name are merged into them. TREES
+     *  holds the head, other and latest common ancestor trees, and is updated
+     *  in place if anything moves. Files renamed differently on both sides,
+     *  or renamed onto a name the other side also uses, are left alone.
+     *  Returns the old names of the head files that were moved, which the
+     *  merge must remove. */
+    private static Set<String> followRenames(FileTree[] trees) {
+        Function<String, String> lcaContents = name -> Blob.loadBlob(trees[2].get(name)).getContents();
+        HashMap<String, String> headRenames = new HashMap<>();
+        for (RenameDetector.Rename rename : new RenameDetector(trees[2], trees[0], lcaContents,
+                name -> Blob.loadBlob(trees[0].get(name)).getContents()).detect(false).values()) {
+            headRenames.put(rename.oldName, rename.newName);
+        }
+        HashMap<String, String> otherRenames = new HashMap<>();
+        for (RenameDetector.Rename rename : new RenameDetector(trees[2], trees[1], lcaContents,
+                name -> Blob.loadBlob(trees[1].get(name)).getContents()).detect(false).values()) {
+            otherRenames.put(rename.oldName, rename.newName);
+        }
+        if (headRenames.isEmpty() && otherRenames.isEmpty()) {
+            return new TreeSet<>();
+        }
+
+        TreeMap<String, String> headFiles = new TreeMap<>(trees[0]);
+        TreeMap<String, String> otherFiles = new TreeMap<>(trees[1]);
+        TreeMap<String, String> lcaFiles = new TreeMap<>(trees[2]);
+
+        TreeSet<String> movedHeadFiles = new TreeSet<>();
+        for (String oldName : new ArrayList<>(lcaFiles.keySet())) {
+            String headName = headRenames.get(oldName);
+            String otherName = otherRenames.get(oldName);
+            if (headName != null && otherName != null) {
+                if (headName.equals(otherName)) {
+                    lcaFiles.put(headName, lcaFiles.remove(oldName));
+                }
+            }
+            else if (otherName != null && headFiles.containsKey(oldName) && !headFiles.containsKey(otherName)) {
+                lcaFiles.put(otherName, lcaFiles.remove(oldName));
+                headFiles.put(otherName, headFiles.remove(oldName));
+                movedHeadFiles.add(oldName);
+            }
+            else if (headName != null && otherFiles.containsKey(oldName) && !otherFiles.containsKey(headName)) {
+                lcaFiles.put(headName, lcaFiles.remove(oldName));
+                otherFiles.put(headName, otherFiles.remove(oldName));
+            }
         }
-    }
-
-    /** If the file has been changed in different ways in the head commit and
-     *  other branch's head commit, inform the user and change the file contents
-     *  so that the user can see how the file was modified in each branch. */
-    private static void handleMergeConflict(Blob headFile, Blob otherFile) {
-        String contents = "<<<<<<<< HEAD\n";
-        String headContents = (headFile == null) ? "" : headFile.getContents();
-        String otherContents = (otherFile == null) ? "" : otherFile.getContents();
-        contents += "contents of file in current branch" + headContents + "=======\n";
-        contents += "contents of file in given branch" + otherContents + ">>>>>>>";
-
-        File path = join(CWD, headFile.getName());
-        writeContents(path, contents);
-
-        Stage add = new Stage(headFile, "add");
-        add.handleAdding();
-        System.out.println("Encountered a merge conflict.");
+        trees[0] = FileTree.of(headFiles);
+        trees[1] = FileTree.of(otherFiles);
+        trees[2] = FileTree.of(lcaFiles);
+        return movedHeadFiles;
     }
 
     /** Add a remote directory with the given name and path to be
-     *  tracked by the current directory. */
+     *  tracked by the current directory. The path may instead be a
+     *  gitlet://HOST:PORT/REPO URL naming a repository served over the network. */
     public static void addRemote(String remoteName, String remotePath) {
-        remotePath = remotePath.replace("/", File.separator);
-        Remote remote = new Remote(remoteName, new File(remotePath));
+        Remote remote;
+        if (SocketTransport.isURL(remotePath)) {
+            remote = new Remote(remoteName, remotePath);
+        }
+        else {
+            remotePath = remotePath.replace("/", File.separator);
+            remote = new Remote(remoteName, new File(remotePath));
+        }
         remote.saveRemote();
     }
 
@@ -514,29 +927,58 @@ public class Repository {
      *  specified branch at the specified remote repository. */
     public static void push(String remoteName, String remoteBranchName) {
         Remote remote = Remote.loadRemote(remoteName);
-        remote.createRemoteBranch(remoteBranchName);
+        String remoteHeadSHA1 = remote.getRemoteHeadSHA1(remoteBranchName);
         remote.updateRemoteHead(remoteBranchName);
-
-        Commit remoteCommit = remote.getRemoteHeadCommit(remoteBranchName);
-        Commit headCommit = Commit.getHeadCommit();
-        remote.pushCommits(remoteCommit, headCommit, remoteBranchName);
+        remote.pushCommits(remoteHeadSHA1, Commit.getHeadCommitSHA1(), remoteBranchName);
     }
 
     /** Brings down commits and blobs from the remote Gitlet repository
      *  into the local Gitlet repository (if not already there). */
     public static void fetch(String remoteName, String remoteBranchName) {
+        fetch(remoteName, List.of(remoteBranchName));
+    }
+
+    /** Brings down the given branches of the remote Gitlet repository
+     *  into the local Gitlet repository in a single transfer. */
+    public static void fetch(String remoteName, List<String> remoteBranchNames) {
         Remote remote = Remote.loadRemote(remoteName);
-        remote.createRemoteBranch(remoteBranchName);
-        remote.fetchContent(remoteBranchName);
-        String remoteHeadSHA1 = remote.getRemoteHeadCommit(remoteBranchName).getCurrSHA1();
-        remote.updateLocalRemoteBranch(remoteBranchName, remoteHeadSHA1);
+        HashMap<Remote, List<String>> branches = new HashMap<>();
+        branches.put(remote, remoteBranchNames);
+        Remote.updateLocalRemoteBranches(Remote.fetchConcurrently(branches), "fetch " + remoteName);
+    }
+
+    /** Brings down every branch of every remote at the same time. */
+    public static void fetchAll() {
+        HashMap<Remote, List<String>> branches = new HashMap<>();
+        for (Remote remote : Remote.loadAllRemotes()) {
+            branches.put(remote, null);
+        }
+        Remote.updateLocalRemoteBranches(Remote.fetchConcurrently(branches), "fetch --all");
+    }
+
+    /** Serve the repositories below the current directory to other gitlet
+     *  processes on the given port. */
+    public static void serve(int port) {
+        Server.serve(port);
+    }
+
+    /** Watch the working directory for changes until killed, so that status
+     *  only has to look at the files that changed. */
+    public static void fsmonitor() {
+        FsMonitor.run();
     }
 
     /** Fetches the given remote branch from the given remote repository
      *  and then merges that fetch into the current branch. */
     public static void pull(String remoteName, String remoteBranchName) {
-        fetch(remoteName, remoteBranchName);
-        merge(remoteName + File.separator + remoteBranchName);
+        Remote remote = Remote.loadRemote(remoteName);
+        HashMap<Remote, List<String>> branches = new HashMap<>();
+        branches.put(remote, List.of(remoteBranchName));
+        Map<String, String> fetched = Remote.fetchConcurrently(branches).get(remote);
+
+        RefTransaction transaction = new RefTransaction("pull " + remoteName + " " + remoteBranchName);
+        remote.updateLocalRemoteBranches(fetched, transaction);
+        merge(remoteName + "/" + remoteBranchName, fetched.get(remoteBranchName), transaction);
     }
 
 }
@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static gitlet.Utils.*;
+
+/**
+ *  Serves the Gitlet repositories below the current working directory to
+ *  other gitlet processes over the network. Each connection names a
+ *  repository and one command: list advertises the repository's branches,
+ *  fetch receives the client's wants and haves, offers the list of objects
+ *  the client is missing and sends a pack of the ones it selects, objects
+ *  sends a pack of specific objects a partial clone finds it needs, and
+ *  push receives a pack and moves a branch.
+ *
+ *  @author Collin Bowers
+ */
+public class Server {
+
+    public static final int DEFAULT_PORT = 9418;
+    static final String LIST = "list";
+    static final String FETCH = "fetch";
+    static final String PUSH = "push";
+    static final String OBJECTS = "objects";
+    static final String OK = "ok";
+    static final String ERROR = "error";
+    private static final long LOCK_TIMEOUT_MILLIS = 10000;
+
+    /** Accept connections on PORT forever, handling each on its own thread.
+     *  A PORT of 0 serves on any free port, which is the one printed. */
+    public static void serve(int port) {
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            int boundPort = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            System.out.println("Serving " + Repository.CWD + " on port " + boundPort + ".");
+            while (true) {
+                SocketChannel channel = server.accept();
+                workers.submit(() -> handle(channel));
+            }
+        } catch (IOException excp) {
+            System.out.println("Unable to serve on port " + port + ": " + excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Read the repository and command from CHANNEL and carry the command out. */
+    private static void handle(SocketChannel channel) {
+        try (channel) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            String repo = in.readUTF();
+            String command = in.readUTF();
+            File gitletDir = resolveRepository(repo);
+            try {
+                if (gitletDir == null) {
+                    throw error("Remote directory not found.");
+                }
+                switch (command) {
+                    case LIST:
+                        handleList(gitletDir, out);
+                        break;
+                    case FETCH:
+                        handleFetch(gitletDir, in, out);
+                        break;
+                    case PUSH:
+                        handlePush(gitletDir, in, out);
+                        break;
+                    case OBJECTS:
+                        handleObjects(gitletDir, in, out);
+                        break;
+                    default:
+                        throw error("Unknown command %s.", command);
+                }
+            } catch (GitletException excp) {
+                out.writeUTF(ERROR);
+                out.writeUTF(excp.getMessage());
+            } catch (RuntimeException excp) {
+                System.err.println("Request " + command + " on " + repo + " failed: " + excp);
+                out.writeUTF(ERROR);
+                out.writeUTF("Internal error: " + excp);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            System.err.println("Connection failed: " + excp.getMessage());
+        }
+    }
+
+    /** Return the .gitlet directory of the repository REPO below the working
+     *  directory, or null if there is none or REPO escapes the working directory. */
+    private static File resolveRepository(String repo) {
+        File root = Repository.CWD.getAbsoluteFile().toPath().normalize().toFile();
+        File dir = new File(root, repo).toPath().normalize().toFile();
+        if (!dir.toPath().startsWith(root.toPath())) {
+            return null;
+        }
+        File gitletDir = join(dir, ".gitlet");
+        if (!gitletDir.isDirectory()) {
+            return null;
+        }
+        Branch.upgradeRefs(gitletDir);
+        return gitletDir;
+    }
+
+    /** Advertise every branch of the repository at GITLETDIR. */
+    private static void handleList(File gitletDir, DataOutputStream out) throws IOException {
+        Map<String, String> refs = Branch.loadAllBranches(gitletDir, false);
+        out.writeUTF(OK);
+        out.writeInt(refs.size());
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            out.writeUTF(ref.getKey());
+            out.writeUTF(ref.getValue());
+        }
+    }
+
+    /** Answer the client's wants and haves with a pack of the objects it is missing. */
+    private static void handleFetch(File gitletDir, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        List<String> wants = readList(in);
+        List<String> haves = readList(in);
+        int depth = in.readInt();
+        long blobLimit = in.readLong();
+        for (String want : wants) {
+            if (!Pack.hasObject(gitletDir, Pack.COMMIT, want)) {
+                throw error("No commit with that id exists.");
+            }
+        }
+        ArrayList<String> shallow = new ArrayList<>();
+        List<String[]> missing = Pack.findMissing(gitletDir, wants, haves, depth, shallow);
+        Pack.removeLargeBlobs(gitletDir, missing, blobLimit);
+        out.writeUTF(OK);
+        writeList(out, shallow);
+        writeObjects(out, missing);
+        out.flush();
+
+        List<String[]> selected = readObjects(in);
+        HashSet<String> offered = new HashSet<>();
+        for (String[] obj : missing) {
+            offered.add(obj[1]);
+        }
+        for (String[] obj : selected) {
+            if (!offered.contains(obj[1])) {
+                throw error("Object %s was not offered.", obj[1]);
+            }
+        }
+        Pack.send(gitletDir, selected, out);
+    }
+
+    /** Send a pack of exactly the objects the client asks for. */
+    private static void handleObjects(File gitletDir, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        List<String[]> objects = readObjects(in);
+        for (String[] obj : objects) {
+            if (!Pack.hasObject(gitletDir, obj[0], obj[1])) {
+                throw error("Object %s is missing from the remote.", obj[1]);
+            }
+        }
+        out.writeUTF(OK);
+        Pack.send(gitletDir, objects, out);
+    }
+
+    /** Install the pack the client sends and move the branch it names, once
+     *  every object in it is known to match its ID and the history of every
+     *  commit in it to be complete. */
+    private static void handlePush(File gitletDir, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String branchName = in.readUTF();
+        String oldSHA1 = in.readUTF();
+        String newSHA1 = in.readUTF();
+        ArrayList<String[]> received = new ArrayList<>();
+        Pack.receive(gitletDir, in, received);
+        Pack.checkConnected(gitletDir, received);
+        updateBranch(gitletDir, branchName, oldSHA1.isEmpty() ? null : oldSHA1, newSHA1);
+        out.writeUTF(OK);
+    }
+
+    /** Move BRANCHNAME in the repository at GITLETDIR to NEWSHA1, provided it
+     *  still points at OLDSHA1 (null meaning it must not exist yet). */
+    static synchronized void updateBranch(File gitletDir, String branchName,
+                                          String oldSHA1, String newSHA1) {
+        if (!Pack.hasObject(gitletDir, Pack.COMMIT, newSHA1)) {
+            throw error("No commit with that id exists.");
+        }
+        new RefTransaction(gitletDir, "push", LOCK_TIMEOUT_MILLIS).update(branchName, oldSHA1, newSHA1).commit();
+    }
+
+    static void writeList(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    static void writeObjects(DataOutputStream out, List<String[]> objects) throws IOException {
+        out.writeInt(objects.size());
+        for (String[] obj : objects) {
+            out.writeUTF(obj[0]);
+            out.writeUTF(obj[1]);
+        }
+    }
+
+    static List<String[]> readObjects(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<String[]> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            String type = in.readUTF();
+            String sha1 = in.readUTF();
+            boolean known = type.equals(Pack.COMMIT) || type.equals(Pack.BLOB)
+                    || type.equals(Pack.MANIFEST) || type.equals(Pack.CHUNK);
+            if (!known || !sha1.matches("[0-9a-f]{40}")) {
+                throw error("Invalid object %s %s.", type, sha1);
+            }
+            objects.add(new String[] {type, sha1});
+        }
+        return objects;
+    }
+
+    static List<String> readList(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+}
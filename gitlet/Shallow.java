@@ -0,0 +1,59 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import static gitlet.Utils.*;
+
+/**
+ *  Keeps track of the shallow boundary of a repository: the commits whose
+ *  parents were deliberately not fetched by a clone with --depth. Commits
+ *  on the boundary are loaded as if they had no parents, so log, merge and
+ *  fetch walks stop there instead of looking for missing history.
+ *
+ *  @author Collin Bowers
+ */
+public class Shallow {
+
+    public static final File SHALLOW_FILE = join(Repository.GITLET_DIR, "shallow");
+
+    /** Boundaries that have been read, loaded at most once per repository per command. */
+    private static final ConcurrentHashMap<String, Set<String>> BOUNDARIES = new ConcurrentHashMap<>();
+
+    /** Return true if the commit with the given SHA1 ID is on the shallow
+     *  boundary of the repository at GITLETDIR. */
+    public static boolean isBoundary(File gitletDir, String sha1) {
+        return loadBoundary(gitletDir).contains(sha1);
+    }
+
+    /** Add the given commits to the shallow boundary of the local repository. */
+    public static void addBoundary(Collection<String> sha1s) {
+        if (sha1s.isEmpty()) {
+            return;
+        }
+        TreeSet<String> boundary = new TreeSet<>(loadBoundary(Repository.GITLET_DIR));
+        boundary.addAll(sha1s);
+        StringBuilder contents = new StringBuilder();
+        for (String sha1 : boundary) {
+            contents.append(sha1).append('\n');
+        }
+        LockFile.write(SHALLOW_FILE, contents.toString());
+        BOUNDARIES.remove(Repository.GITLET_DIR.getAbsolutePath());
+    }
+
+    private static Set<String> loadBoundary(File gitletDir) {
+        return BOUNDARIES.computeIfAbsent(gitletDir.getAbsolutePath(), key -> {
+            File shallowFile = join(gitletDir, "shallow");
+            if (!shallowFile.isFile()) {
+                return Collections.emptySet();
+            }
+            HashSet<String> boundary = new HashSet<>();
+            for (String line : readContentsAsString(shallowFile).split("\n")) {
+                if (!line.isEmpty()) {
+                    boundary.add(line);
+                }
+            }
+            return boundary;
+        });
+    }
+}
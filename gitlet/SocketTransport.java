@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ *  Represents a transport to a remote repository served by another gitlet
+ *  process with the serve command, addressed as gitlet://HOST:PORT/REPO.
+ *  Each operation opens one connection, advertises or negotiates what each
+ *  side has, and streams a single pack over the socket channel.
+ *
+ *  @author Collin Bowers
+ */
+public class SocketTransport implements Transport {
+
+    public static final String SCHEME = "gitlet";
+    private String host;
+    private int port;
+    private String repo;
+
+    public SocketTransport(String url) {
+        try {
+            URI uri = new URI(url);
+            if (!SCHEME.equals(uri.getScheme()) || uri.getHost() == null) {
+                throw new URISyntaxException(url, "expected gitlet://host:port/repo");
+            }
+            this.host = uri.getHost();
+            this.port = (uri.getPort() == -1) ? Server.DEFAULT_PORT : uri.getPort();
+            this.repo = (uri.getPath() == null) ? "" : uri.getPath();
+        } catch (URISyntaxException excp) {
+            System.out.println("Invalid remote URL: " + url);
+            System.exit(0);
+        }
+    }
+
+    /** Return true if the remote location LOCATION names a remote served over the network. */
+    public static boolean isURL(String location) {
+        return location.startsWith(SCHEME + "://");
+    }
+
+    @Override
+    public Map<String, String> listRefs() {
+        try (SocketChannel channel = connect(Server.LIST)) {
+            DataInputStream in = input(channel);
+            checkStatus(in);
+            TreeMap<String, String> refs = new TreeMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                String branchName = in.readUTF();
+                refs.put(branchName, in.readUTF());
+            }
+            return refs;
+        } catch (IOException excp) {
+            throw connectionFailed(excp);
+        }
+    }
+
+    @Override
+    public List<String> fetch(Collection<String> wants, Collection<String> haves,
+                              Predicate<String> claim, int depth, long blobLimit) {
+        try (SocketChannel channel = connect(Server.FETCH)) {
+            DataOutputStream out = output(channel);
+            Server.writeList(out, wants);
+            Server.writeList(out, haves);
+            out.writeInt(depth);
+            out.writeLong(blobLimit);
+            out.flush();
+
+            DataInputStream in = input(channel);
+            checkStatus(in);
+            List<String> shallow = Server.readList(in);
+            List<String[]> selected = new ArrayList<>();
+            for (String[] obj : Server.readObjects(in)) {
+                if (!Pack.hasObject(Repository.GITLET_DIR, obj[0], obj[1]) && claim.test(obj[1])) {
+                    selected.add(obj);
+                }
+            }
+            Server.writeObjects(out, selected);
+            out.flush();
+            Pack.receive(Repository.GITLET_DIR, in);
+            return shallow;
+        } catch (IOException excp) {
+            throw connectionFailed(excp);
+        }
+    }
+
+    @Override
+    public void fetchObjects(List<String[]> objects) {
+        try (SocketChannel channel = connect(Server.OBJECTS)) {
+            DataOutputStream out = output(channel);
+            Server.writeObjects(out, objects);
+            out.flush();
+
+            DataInputStream in = input(channel);
+            checkStatus(in);
+            Pack.receive(Repository.GITLET_DIR, in);
+        } catch (IOException excp) {
+            throw connectionFailed(excp);
+        }
+    }
+
+    @Override
+    public void push(String branchName, String oldSHA1, String newSHA1) {
+        Collection<String> haves = listRefs().values();
+        List<String[]> missing = Pack.findMissing(Repository.GITLET_DIR, List.of(newSHA1), haves, 0, null);
+
+        try (SocketChannel channel = connect(Server.PUSH)) {
+            DataOutputStream out = output(channel);
+            out.writeUTF(branchName);
+            out.writeUTF((oldSHA1 == null) ? "" : oldSHA1);
+            out.writeUTF(newSHA1);
+            Pack.send(Repository.GITLET_DIR, missing, out);
+            out.flush();
+
+            checkStatus(input(channel));
+        } catch (IOException excp) {
+            throw connectionFailed(excp);
+        }
+    }
+
+    /** Open a connection to the server and send the repository and COMMAND. */
+    private SocketChannel connect(String command) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+        } catch (IOException excp) {
+            System.out.println("Remote directory not found.");
+            System.exit(0);
+            return null;
+        }
+        DataOutputStream out = output(channel);
+        out.writeUTF(repo);
+        out.writeUTF(command);
+        out.flush();
+        return channel;
+    }
+
+    /** If the server reports an error, print its message and exit. */
+    private static void checkStatus(DataInputStream in) throws IOException {
+        String status = in.readUTF();
+        if (!status.equals(Server.OK)) {
+            System.out.println(in.readUTF());
+            System.exit(0);
+        }
+    }
+
+    private static DataInputStream input(SocketChannel channel) {
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+    }
+
+    private static DataOutputStream output(SocketChannel channel) {
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    private GitletException connectionFailed(IOException excp) {
+        return Utils.error("Lost connection to %s:%d: %s", host, port, excp.getMessage());
+    }
+}
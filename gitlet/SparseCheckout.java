@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Keeps track of the sparse cone of the working directory: the files and
+ *  directories that checkout, reset, merge and status work on. The cone
+ *  is kept in .gitlet/sparse-checkout, one path per line, and covers each
+ *  path and everything below it. When there is no such file the cone is
+ *  the whole working directory.
+ *
+ *  Files outside the cone are never written, deleted, hashed or listed by
+ *  those commands, though commits still track them. The files of a tree in
+ *  the cone are found by binary search and the working directory is only
+ *  walked below the paths of the cone, so a command costs as much as the
+ *  cone rather than the whole repository.
+ *
+ *  @author Collin Bowers
+ */
+public class SparseCheckout {
+
+    public static final File SPARSE_FILE = join(Repository.GITLET_DIR, "sparse-checkout");
+
+    /** The cone covering the whole working directory. */
+    public static final SparseCheckout ALL = new SparseCheckout(null);
+
+    /** The paths of the cone in name order, none below another, or null
+     *  for the whole working directory. */
+    private final TreeSet<String> paths;
+
+    private SparseCheckout(TreeSet<String> paths) {
+        this.paths = paths;
+    }
+
+    /** Return the cone of the local repository. */
+    public static SparseCheckout load() {
+        if (!SPARSE_FILE.isFile()) {
+            return ALL;
+        }
+        return of(Arrays.asList(readContentsAsString(SPARSE_FILE).split("\n")));
+    }
+
+    /** Return the cone made of PATHS, relative to the top of the working
+     *  directory and separated by /. Blank lines and lines starting with #
+     *  are skipped, and paths below another path are left out. */
+    public static SparseCheckout of(List<String> paths) {
+        TreeSet<String> cone = new TreeSet<>();
+        for (String path : paths) {
+            path = path.trim();
+            while (path.startsWith("/")) {
+                path = path.substring(1);
+            }
+            while (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            if (path.isEmpty() || path.startsWith("#")) {
+                continue;
+            }
+            if (path.equals(".")) {
+                return ALL;
+            }
+            cone.add(path);
+        }
+        TreeSet<String> top = new TreeSet<>();
+        for (String path : cone) {
+            if (!new SparseCheckout(top).contains(path)) {
+                top.add(path);
+            }
+        }
+        return new SparseCheckout(top);
+    }
+
+    /** Make this the cone of the local repository. */
+    public void save() {
+        if (paths == null) {
+            SPARSE_FILE.delete();
+            return;
+        }
+        StringBuilder contents = new StringBuilder();
+        for (String path : paths) {
+            contents.append(path).append('\n');
+        }
+        LockFile.write(SPARSE_FILE, contents.toString());
+    }
+
+    /** Return true if this cone is the whole working directory. */
+    public boolean isFull() {
+        return paths == null;
+    }
+
+    /** Return the paths of the cone in name order, or an empty list for the
+     *  whole working directory. */
+    public List<String> getPaths() {
+        return (paths == null) ? List.of() : new ArrayList<>(paths);
+    }
+
+    /** Return true if the file at PATH is in the cone. */
+    public boolean contains(String path) {
+        if (paths == null) {
+            return true;
+        }
+        for (int slash = path.length(); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            if (paths.contains(path.substring(0, slash))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the files of TREE that are in the cone. */
+    public FileTree select(FileTree tree) {
+        return (paths == null) ? tree : tree.within(paths);
+    }
+
+    /** Return every plain file in the cone that is not ignored, mapped to its
+     *  stat information, in path order. Only the directories of the cone are
+     *  walked. */
+    public TreeMap<String, BasicFileAttributes> files() {
+        if (paths == null) {
+            return WorkingTree.files();
+        }
+        IgnoreRules rules = WorkingTree.ignoreRules();
+        TreeMap<String, BasicFileAttributes> files = new TreeMap<>();
+        for (String path : paths) {
+            File file = join(Repository.CWD, path);
+            if (rules.isIgnored(path)) {
+                continue;
+            }
+            else if (file.isDirectory()) {
+                WorkingTree.walk(path + "/", rules, files::put);
+            }
+            else {
+                BasicFileAttributes attributes = StatCache.stat(path);
+                if (attributes != null) {
+                    files.put(path, attributes);
+                }
+            }
+        }
+        return files;
+    }
+}
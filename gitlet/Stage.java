@@ -3,7 +3,7 @@ package gitlet;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import static gitlet.Utils.*;
 
 /**
@@ -14,6 +14,9 @@ import static gitlet.Utils.*;
  *  @author Collin Bowers
  */
 public class Stage implements Serializable {
+    /** The ID Stage has always had, so that files staged by older versions
+     *  of Gitlet can still be read. */
+    private static final long serialVersionUID = 9158713172720130811L;
     public static final File STAGED_DIR = join(Repository.OBJECTS_DIR, "staged");
     public static final File ADDITION_DIR = join(STAGED_DIR, "addition");
     public static final File REMOVAL_DIR = join(STAGED_DIR, "removal");
@@ -47,7 +50,13 @@ public class Stage implements Serializable {
 
     /** Handle the main logic behind staging a file for addition. */
     public void handleAdding() {
-        boolean changed = checkIfFileChanged();
+        handleAdding(Commit.getHeadCommit().getTrackedFiles());
+    }
+
+    /** Stage the file for addition as above, given the files tracked by
+     *  the head commit, HEADFILES. */
+    public void handleAdding(FileTree headFiles) {
+        boolean changed = !currFile.getSHA1().equals(headFiles.get(currFile.getName()));
         if (changed) {
             stageFile();
         }
@@ -58,23 +67,25 @@ public class Stage implements Serializable {
 
     /** Handle the main logic behind staging a file for removal. */
     public void handleRemoving() {
-        HashMap<String, String> trackedFiles = Commit.getHeadCommit().getTrackedFiles();
+        handleRemoving(Commit.getHeadCommit().getTrackedFiles());
+    }
+
+    /** Stage the file for removal as above, given the files tracked by the
+     *  head commit, TRACKEDFILES. */
+    public void handleRemoving(FileTree trackedFiles) {
 
-        String fileNameNoExtension = Blob.getFileNameWithoutExtension(fileName);
-        File additionPath = join(ADDITION_DIR, fileNameNoExtension);
-        File cwdPath = join(Repository.CWD, fileName);
+        String key = keyOf(fileName);
+        File additionPath = join(ADDITION_DIR, key);
 
         if (additionPath.isFile()) {
-            Stage addedFile = loadStagedFile(fileNameNoExtension, "add");
+            Stage addedFile = loadStagedFile(key, "add");
             addedFile.unstageFile();
             this.currFile = addedFile.getCurrFile();
         }
         if (trackedFiles.containsKey(fileName)) {
-            this.currFile = Blob.loadBlob(trackedFiles.get(fileName));
+            this.currFile = Blob.loadBlob(trackedFiles.get(fileName)).withName(fileName);
             stageFile();
-            if (cwdPath.isFile()) {
-                cwdPath.delete();
-            }
+            WorkingTree.deleteFile(fileName);
         }
         if (currFile == null) {
             System.out.println("No reason to remove the file");
@@ -82,32 +93,44 @@ public class Stage implements Serializable {
         }
     }
 
-    /** Return true if file has been changed. */
-    private boolean checkIfFileChanged() {
-        Commit currCommit = Commit.getHeadCommit();
-        return !currCommit.checkIfUnupdatedFile(currFile);
-    }
-
     /** Return true is file has been staged. */
     private boolean isStaged() {
-        return new File(stageDir, currFile.getName()).isFile();
+        return new File(stageDir, keyOf(currFile.getName())).isFile();
     }
 
     /** Stage the file in the specified staging directory. */
     private void stageFile() {
-        String name = currFile.getName();
-        name = Blob.getFileNameWithoutExtension(name);
-
-        File stagedFile = new File(stageDir, name);
+        File stagedFile = new File(stageDir, keyOf(currFile.getName()));
         writeObject(stagedFile, this);
     }
 
     /** Unstage the file from the specified staging directory. */
     private void unstageFile() {
-        File stagedFile = join(stageDir, Blob.getFileNameWithoutExtension(currFile.getName()));
+        File stagedFile = join(stageDir, keyOf(currFile.getName()));
         stagedFile.delete();
     }
 
+    /** Return the name under which the file FILENAME is staged: its path
+     *  with / and % escaped, so that files in subdirectories are staged in
+     *  a single flat directory. */
+    public static String keyOf(String fileName) {
+        return fileName.replace("%", "%25").replace("/", "%2F");
+    }
+
+    /** Rename each file staged by the first version of Gitlet, which staged a
+     *  file under its name without its extension, to the name keyOf gives it. */
+    static void upgradeKeys() {
+        for (File dir : List.of(ADDITION_DIR, REMOVAL_DIR)) {
+            for (String key : plainFilenamesIn(dir)) {
+                Stage staged = readObject(join(dir, key), Stage.class);
+                String name = (staged.currFile != null) ? staged.currFile.getName() : staged.fileName;
+                if (name != null && !keyOf(name).equals(key)) {
+                    join(dir, key).renameTo(join(dir, keyOf(name)));
+                }
+            }
+        }
+    }
+
     /** Return the desired Stage object from the specified staging directory. */
     public static Stage loadStagedFile(String fileName, String stageDir) {
         File dir = (stageDir.equals("add")) ? ADDITION_DIR : REMOVAL_DIR;
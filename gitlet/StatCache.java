@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import static gitlet.Utils.*;
+
+/**
+ *  Remembers the SHA1 ID of each working file along with its size and
+ *  modification time when it was last hashed, so that a file whose stat
+ *  information has not changed since does not have to be read again.
+ *  The cache is kept in .gitlet/stat-cache, one "MTIME SIZE SHA1 NAME" line
+ *  per file in name order, and is consulted in that order: callers ask for
+ *  files in increasing name order and the cache advances alongside them.
+ *
+ *  A file modified in the same clock tick as the cache was written could
+ *  change again without its stat information changing, so entries that are
+ *  not older than the cache file itself are always hashed again.
+ *
+ *  @author Collin Bowers
+ */
+public class StatCache {
+
+    public static final File STAT_CACHE_FILE = join(Repository.GITLET_DIR, "stat-cache");
+
+    private final String[] names;
+    private final long[] mtimes;
+    private final long[] sizes;
+    private final ObjectId[] ids;
+    private final long writtenAt;
+    private int cursor;
+
+    private final StringBuilder updated = new StringBuilder();
+    private int updatedCount;
+    private boolean changed;
+
+    private StatCache(List<String[]> entries, long writtenAt) {
+        int size = entries.size();
+        this.names = new String[size];
+        this.mtimes = new long[size];
+        this.sizes = new long[size];
+        this.ids = new ObjectId[size];
+        for (int i = 0; i < size; i += 1) {
+            String[] entry = entries.get(i);
+            mtimes[i] = Long.parseLong(entry[0]);
+            sizes[i] = Long.parseLong(entry[1]);
+            ids[i] = ObjectId.fromHex(entry[2]);
+            names[i] = entry[3];
+        }
+        this.writtenAt = writtenAt;
+    }
+
+    /** Return the stat cache of the local repository, or an empty cache if
+     *  there is none or it cannot be read. */
+    public static StatCache load() {
+        ArrayList<String[]> entries = new ArrayList<>();
+        long writtenAt = toNanos(STAT_CACHE_FILE);
+        if (writtenAt >= 0) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(STAT_CACHE_FILE))) {
+                String previous = null;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] entry = parseLine(line);
+                    if (entry == null || ObjectId.parse(entry[2]) == null
+                            || (previous != null && previous.compareTo(entry[3]) >= 0)) {
+                        entries.clear();
+                        break;
+                    }
+                    previous = entry[3];
+                    entries.add(entry);
+                }
+            } catch (IOException | NumberFormatException excp) {
+                entries.clear();
+            }
+        }
+        try {
+            return new StatCache(entries, writtenAt);
+        } catch (IllegalArgumentException excp) {
+            return new StatCache(new ArrayList<>(), -1);
+        }
+    }
+
+    /** Return the four fields of the cache entry LINE, or null if it has fewer. */
+    private static String[] parseLine(String line) {
+        String[] entry = new String[4];
+        int start = 0;
+        for (int i = 0; i < 3; i += 1) {
+            int end = line.indexOf(' ', start);
+            if (end < 0) {
+                return null;
+            }
+            entry[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        entry[3] = line.substring(start);
+        return entry;
+    }
+
+    /** Return the stat information of the working file NAME, or null if it is
+     *  not a plain file. */
+    public static BasicFileAttributes stat(String name) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(join(Repository.CWD, name).toPath(),
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the SHA1 ID of the working file NAME, whose stat information is
+     *  ATTRIBUTES, reading the file only if it changed since it was cached.
+     *  NAME must come after every name asked for before. */
+    public ObjectId hash(String name, BasicFileAttributes attributes) {
+        boolean cached = seek(name);
+        long mtime = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long size = attributes.size();
+        ObjectId id;
+        if (cached && mtimes[cursor] == mtime && sizes[cursor] == size && mtime < writtenAt) {
+            id = ids[cursor];
+            Trace.count(Trace.Counter.STAT_CACHE_HITS, 1);
+        }
+        else {
+            id = Hasher.hashFile(join(Repository.CWD, name));
+            changed = true;
+            Trace.count(Trace.Counter.STAT_CACHE_MISSES, 1);
+        }
+        if (cached) {
+            cursor += 1;
+        }
+        record(mtime, size, id, name);
+        return id;
+    }
+
+    /** Return the SHA1 ID of the working file NAME, which the file system
+     *  monitor reports unchanged, without even stat'ing it if its entry can
+     *  be trusted. Returns null if the file turns out not to exist. NAME must
+     *  come after every name asked for before. */
+    public ObjectId hashUnchanged(String name) {
+        if (seek(name) && mtimes[cursor] < writtenAt) {
+            Trace.count(Trace.Counter.STAT_CACHE_HITS, 1);
+            ObjectId id = ids[cursor];
+            record(mtimes[cursor], sizes[cursor], id, name);
+            cursor += 1;
+            return id;
+        }
+        BasicFileAttributes attributes = stat(name);
+        return (attributes == null) ? null : hash(name, attributes);
+    }
+
+    /** Skip the entries before NAME, returning true if NAME has an entry. */
+    private boolean seek(String name) {
+        while (cursor < names.length && names[cursor].compareTo(name) < 0) {
+            cursor += 1;
+            changed = true;
+        }
+        return cursor < names.length && names[cursor].equals(name);
+    }
+
+    /** Add an entry to the cache that will be saved. */
+    private void record(long mtime, long size, ObjectId id, String name) {
+        updated.append(mtime).append(' ').append(size).append(' ').append(id.name()).append(' ')
+                .append(name).append('\n');
+        updatedCount += 1;
+    }
+
+    /** Write back the entries for the files hashed since the cache was loaded
+     *  if any of them changed. The cache is only an optimization, so nothing
+     *  is written if another process holds its lock. */
+    public void save() {
+        if (!changed && updatedCount == names.length) {
+            return;
+        }
+        LockFile lock = LockFile.tryAcquire(STAT_CACHE_FILE, 0);
+        if (lock != null) {
+            lock.commit(updated.toString());
+        }
+    }
+
+    /** Return the modification time of FILE in nanoseconds, or -1 if it does not exist. */
+    private static long toNanos(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return -1;
+        }
+    }
+}
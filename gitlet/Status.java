@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.IntStream;
+import static gitlet.Utils.*;
+
+/**
+ *  Represents the state of every file relative to the head commit and the
+ *  staging area: which are staged for addition or removal, which have
+ *  changes that are not staged, and which are untracked. The files tracked
+ *  by the head commit, the staging area and the working directory are each
+ *  put in name order once and then walked together, so every file is
+ *  classified in a single pass. The working files and their stat
+ *  information come from one walk of the working tree that skips ignored
+ *  directories, and a working file is only hashed when its contents matter
+ *  and its stat information changed since it was cached. When a file system
+ *  monitor is running, only the files it reports changed are stat'ed.
+ *  Tracked files that are ignored are still checked, one at a time. With a
+ *  sparse checkout, files outside its cone are neither walked, hashed nor
+ *  listed, except that files staged there are still reported as staged.
+ *
+ *  @author Collin Bowers
+ */
+public class Status {
+
+    private final List<String> staged = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private final List<String> modified = new ArrayList<>();
+    private final List<String> untracked = new ArrayList<>();
+    private final SparseCheckout sparse = SparseCheckout.load();
+
+    /** Return the status of the working directory of the local repository. */
+    public static Status compute() {
+        try (Trace span = Trace.span("computeStatus")) {
+            Status status = new Status();
+            status.walk();
+            return status;
+        }
+    }
+
+    /** Return the names of the files staged for addition. */
+    public List<String> getStaged() {
+        return staged;
+    }
+
+    /** Return the names of the files staged for removal. */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /** Return each file with changes that are not staged, followed by
+     *  " (modified)" or " (deleted)". */
+    public List<String> getModified() {
+        return modified;
+    }
+
+    /** Return the names of the working files that are neither tracked nor staged. */
+    public List<String> getUntracked() {
+        return untracked;
+    }
+
+    /** Classify every file named by the head commit, the staging area or the
+     *  working directory. */
+    private void walk() {
+        Iterator<Map.Entry<String, String>> head = sparse.select(Commit.getHeadCommit().getTrackedFiles())
+                .entrySet().iterator();
+        Iterator<Map.Entry<String, String>> index = loadIndex().entrySet().iterator();
+        FsMonitor monitor = FsMonitor.query();
+        String[] work;
+        boolean[] unchanged;
+        BasicFileAttributes[] workStats;
+        if (monitor != null && monitor.hasChanges()) {
+            IgnoreRules rules = WorkingTree.ignoreRules();
+            TreeSet<String> names = new TreeSet<>();
+            for (String name : monitor.getKnownFiles()) {
+                if (sparse.contains(name)) {
+                    names.add(name);
+                }
+            }
+            for (String name : monitor.getChanged()) {
+                if (!rules.isIgnored(name) && sparse.contains(name)) {
+                    names.add(name);
+                }
+            }
+            work = names.toArray(new String[0]);
+            unchanged = new boolean[work.length];
+            for (int i = 0; i < work.length; i += 1) {
+                unchanged[i] = !monitor.getChanged().contains(work[i]);
+            }
+            workStats = new BasicFileAttributes[work.length];
+            IntStream.range(0, work.length).parallel().filter(i -> !unchanged[i])
+                    .forEach(i -> workStats[i] = StatCache.stat(work[i]));
+        }
+        else {
+            TreeMap<String, BasicFileAttributes> files = sparse.files();
+            work = files.keySet().toArray(new String[0]);
+            workStats = files.values().toArray(new BasicFileAttributes[0]);
+            unchanged = new boolean[work.length];
+        }
+        StatCache cache = StatCache.load();
+
+        ArrayList<String> plainFiles = new ArrayList<>();
+        Map.Entry<String, String> headFile = next(head);
+        Map.Entry<String, String> indexFile = next(index);
+        int w = 0;
+        while (headFile != null || indexFile != null || w < work.length) {
+            String workFile = w < work.length ? work[w] : null;
+            String name = min(min(headFile == null ? null : headFile.getKey(),
+                    indexFile == null ? null : indexFile.getKey()), workFile);
+            String headSHA1 = null;
+            String indexSHA1 = null;
+            boolean inIndex = false;
+            boolean inWork = false;
+            BasicFileAttributes attributes = null;
+            if (headFile != null && headFile.getKey().equals(name)) {
+                headSHA1 = headFile.getValue();
+                headFile = next(head);
+            }
+            if (indexFile != null && indexFile.getKey().equals(name)) {
+                indexSHA1 = indexFile.getValue();
+                inIndex = true;
+                indexFile = next(index);
+            }
+            if (workFile != null && workFile.equals(name)) {
+                attributes = workStats[w];
+                inWork = unchanged[w] || attributes != null;
+                w += 1;
+            }
+            if (classify(name, headSHA1, inIndex, indexSHA1, inWork, attributes, cache)) {
+                plainFiles.add(name);
+            }
+        }
+        cache.save();
+        if (monitor != null) {
+            monitor.save(plainFiles);
+        }
+    }
+
+    /** Record the state of the file NAME, which HEADSHA1 is the ID of in the
+     *  head commit, or null if it is not tracked. INDEX tells whether it is
+     *  staged, and INDEXSHA1 is its staged ID, or null if it is staged for
+     *  removal. INWORK tells whether the walk of the working directory found
+     *  it, and ATTRIBUTES is its stat information, or null if the file system
+     *  monitor reports it unchanged and it was not stat'ed. Returns whether
+     *  the file is one the walk found and it still exists. */
+    private boolean classify(String name, String headSHA1, boolean inIndex, String indexSHA1,
+                             boolean inWork, BasicFileAttributes attributes, StatCache cache) {
+        if (inIndex && indexSHA1 != null) {
+            staged.add(name);
+        }
+        else if (inIndex) {
+            removed.add(name);
+        }
+
+        String expectedSHA1 = inIndex ? indexSHA1 : headSHA1;
+        ObjectId expected = (expectedSHA1 == null) ? null : ObjectId.parse(expectedSHA1);
+        if (!inWork) {
+            if (expected != null && sparse.contains(name)) {
+                BasicFileAttributes ignored = StatCache.stat(name);
+                if (ignored == null) {
+                    modified.add(name + " (deleted)");
+                }
+                else if (!cache.hash(name, ignored).equals(expected)) {
+                    modified.add(name + " (modified)");
+                }
+            }
+            return false;
+        }
+        if (expected == null) {
+            untracked.add(name);
+            return true;
+        }
+        ObjectId workID = (attributes != null) ? cache.hash(name, attributes) : cache.hashUnchanged(name);
+        if (workID == null) {
+            modified.add(name + " (deleted)");
+            return false;
+        }
+        if (!workID.equals(expected)) {
+            modified.add(name + " (modified)");
+        }
+        return true;
+    }
+
+    /** Return the staging area as a map from file name to staged SHA1 ID,
+     *  or to null for files staged for removal. */
+    private static TreeMap<String, String> loadIndex() {
+        TreeMap<String, String> index = new TreeMap<>();
+        for (String fileName : plainFilenamesIn(Stage.ADDITION_DIR)) {
+            Blob blob = Stage.loadStagedFile(fileName, "add").getCurrFile();
+            index.put(blob.getName(), blob.getSHA1());
+        }
+        for (String fileName : plainFilenamesIn(Stage.REMOVAL_DIR)) {
+            index.put(Stage.loadStagedFile(fileName, "remove").getCurrFile().getName(), null);
+        }
+        return index;
+    }
+
+    /** Return the next element of ITERATOR, or null if there is none. */
+    private static <T> T next(Iterator<T> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /** Return the lesser of A and B, either of which may be null. */
+    private static String min(String a, String b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
@@ -0,0 +1,322 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ *  Records where the time of a command goes. A span covers one phase of a
+ *  command or one call of a low-level operation, and is opened with span
+ *  and closed with close, usually in a try-with-resources statement. Spans
+ *  with the same name under the same parent are added together, so a command
+ *  that hashes fifty thousand files reports one sha1 span with a count of
+ *  fifty thousand and their total time. Counters add up the objects and
+ *  bytes read and written, the directories listed and the cache hits.
+ *
+ *  If GITLET_TRACE is set, the spans and counters of each command are
+ *  written as one line of JSON when it exits, to standard error if the
+ *  variable is 1 or to the end of the file it names otherwise. If the JVM
+ *  runs under Flight Recorder, every span is also committed as a gitlet.Span
+ *  event, and the counters as a gitlet.Counters event at the end of each
+ *  chunk. When neither is on, opening a span and counting only check a flag.
+ *
+ *  @author Collin Bowers
+ */
+public class Trace implements AutoCloseable {
+
+    public static final String TRACE_ENV = "GITLET_TRACE";
+    private static final String TARGET = System.getenv(TRACE_ENV);
+    private static final boolean ENABLED = TARGET != null && !TARGET.isEmpty() && !TARGET.equals("0");
+
+    /** The span returned when nothing is being recorded. */
+    private static final Trace NONE = new Trace();
+
+    /** The quantities counted while a command runs. */
+    public enum Counter {
+        OBJECTS_READ("objectsRead"),
+        OBJECT_BYTES_READ("objectBytesRead"),
+        OBJECTS_WRITTEN("objectsWritten"),
+        OBJECT_BYTES_WRITTEN("objectBytesWritten"),
+        FILES_READ("filesRead"),
+        FILE_BYTES_READ("fileBytesRead"),
+        FILES_WRITTEN("filesWritten"),
+        FILE_BYTES_WRITTEN("fileBytesWritten"),
+        HASHES("hashes"),
+        BYTES_HASHED("bytesHashed"),
+        DIRECTORIES_LISTED("directoriesListed"),
+        STAT_CACHE_HITS("statCacheHits"),
+        STAT_CACHE_MISSES("statCacheMisses"),
+        PACK_INDEX_HITS("packIndexHits"),
+        PACKED_REFS_HITS("packedRefsHits");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(Counter.values().length);
+
+    /** The spans with one name under one parent, added together. */
+    private static class Node {
+        private final String name;
+        private final LinkedHashMap<String, Node> children = new LinkedHashMap<>();
+        private long count;
+        private long nanos;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        synchronized Node child(String childName) {
+            return children.computeIfAbsent(childName, Node::new);
+        }
+
+        synchronized void add(long spanNanos) {
+            count += 1;
+            nanos += spanNanos;
+        }
+    }
+
+    /** The span of the whole command, which spans on other threads go under. */
+    private static volatile Node root;
+    private static volatile Thread commandThread;
+    /** The innermost open span on the command's thread, whose time is still
+     *  added if the command exits inside it. */
+    private static volatile Trace innermost;
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private final Node node;
+    private final Trace outer;
+    private final long start;
+    private final SpanEvent event;
+
+    private Trace() {
+        this.node = null;
+        this.outer = null;
+        this.start = 0;
+        this.event = null;
+    }
+
+    private Trace(String name) {
+        this.outer = CURRENT.get();
+        Node parent = (outer == null) ? root : outer.node;
+        this.node = (parent == null) ? null : parent.child(name);
+        CURRENT.set(this);
+        if (Thread.currentThread() == commandThread) {
+            innermost = this;
+        }
+        if (FlightRecorder.isInitialized()) {
+            event = new SpanEvent();
+            event.name = name;
+            event.begin();
+        }
+        else {
+            event = null;
+        }
+        this.start = System.nanoTime();
+    }
+
+    /** Return true if spans and counters are being recorded. */
+    public static boolean isActive() {
+        return ENABLED || FlightRecorder.isInitialized();
+    }
+
+    /** Open and return a span named NAME, which must be closed on the same thread. */
+    public static Trace span(String name) {
+        if (!isActive()) {
+            return NONE;
+        }
+        return new Trace(name);
+    }
+
+    /** Close this span, adding its time to its totals. */
+    @Override
+    public void close() {
+        if (this == NONE) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        CURRENT.set(outer);
+        if (Thread.currentThread() == commandThread) {
+            innermost = outer;
+        }
+        if (node != null) {
+            node.add(nanos);
+        }
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /** Add AMOUNT to COUNTER. */
+    public static void count(Counter counter, long amount) {
+        if (isActive()) {
+            COUNTS.addAndGet(counter.ordinal(), amount);
+        }
+    }
+
+    /** Start recording the command ARGS, which runs until the program exits. */
+    static void startCommand(String[] args) {
+        if (!isActive()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Node command = new Node(args.length == 0 ? "" : args[0]);
+        root = command;
+        commandThread = Thread.currentThread();
+        if (FlightRecorder.isInitialized()) {
+            FlightRecorder.addPeriodicEvent(CountersEvent.class, Trace::commitCounters);
+        }
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                long end = System.nanoTime();
+                for (Trace span = innermost; span != null; span = span.outer) {
+                    if (span.node != null) {
+                        span.node.add(end - span.start);
+                    }
+                }
+                command.add(end - start);
+                write(toJSON(args, command));
+            }));
+        }
+    }
+
+    /** Write the line of JSON to the trace target. */
+    private static void write(String json) {
+        byte[] line = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        if (TARGET.equals("1")) {
+            System.err.write(line, 0, line.length);
+            System.err.flush();
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(TARGET), true)) {
+            out.write(line);
+        } catch (IOException excp) {
+            System.err.println("Unable to write trace to " + TARGET + ": " + excp.getMessage());
+        }
+    }
+
+    /** Return the trace of the command ARGS, whose spans are under COMMAND. */
+    private static String toJSON(String[] args, Node command) {
+        StringBuilder json = new StringBuilder("{\"command\":[");
+        for (int i = 0; i < args.length; i += 1) {
+            json.append(i == 0 ? "" : ",");
+            appendString(json, args[i]);
+        }
+        json.append("],\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            json.append(counter.ordinal() == 0 ? "" : ",");
+            appendString(json, counter.key);
+            json.append(':').append(COUNTS.get(counter.ordinal()));
+        }
+        json.append("},\"spans\":");
+        appendNode(json, command);
+        return json.append('}').toString();
+    }
+
+    /** Append NODE and the nodes below it to JSON. */
+    private static void appendNode(StringBuilder json, Node node) {
+        synchronized (node) {
+            json.append("{\"name\":");
+            appendString(json, node.name);
+            json.append(",\"count\":").append(node.count).append(",\"nanos\":").append(node.nanos);
+            if (!node.children.isEmpty()) {
+                json.append(",\"children\":[");
+                boolean first = true;
+                for (Node child : node.children.values()) {
+                    json.append(first ? "" : ",");
+                    appendNode(json, child);
+                    first = false;
+                }
+                json.append(']');
+            }
+            json.append('}');
+        }
+    }
+
+    /** Append S to JSON as a string literal. */
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /** Commit the counters so far as a Flight Recorder event. */
+    private static void commitCounters() {
+        CountersEvent event = new CountersEvent();
+        event.objectsRead = COUNTS.get(Counter.OBJECTS_READ.ordinal());
+        event.objectBytesRead = COUNTS.get(Counter.OBJECT_BYTES_READ.ordinal());
+        event.objectsWritten = COUNTS.get(Counter.OBJECTS_WRITTEN.ordinal());
+        event.objectBytesWritten = COUNTS.get(Counter.OBJECT_BYTES_WRITTEN.ordinal());
+        event.hashes = COUNTS.get(Counter.HASHES.ordinal());
+        event.bytesHashed = COUNTS.get(Counter.BYTES_HASHED.ordinal());
+        event.directoriesListed = COUNTS.get(Counter.DIRECTORIES_LISTED.ordinal());
+        event.cacheHits = COUNTS.get(Counter.STAT_CACHE_HITS.ordinal())
+                + COUNTS.get(Counter.PACK_INDEX_HITS.ordinal()) + COUNTS.get(Counter.PACKED_REFS_HITS.ordinal());
+        event.commit();
+    }
+
+    /** A span as a Flight Recorder event, timed from begin to commit. */
+    @Name("gitlet.Span")
+    @Label("Gitlet Span")
+    @Category("Gitlet")
+    @Description("A phase of a command or a call of a low-level operation")
+    static class SpanEvent extends Event {
+        @Label("Name")
+        String name;
+    }
+
+    /** The counters of the command, sampled at the end of each chunk. */
+    @Name("gitlet.Counters")
+    @Label("Gitlet Counters")
+    @Category("Gitlet")
+    @Period("endChunk")
+    static class CountersEvent extends Event {
+        @Label("Objects Read")
+        long objectsRead;
+
+        @Label("Object Bytes Read")
+        long objectBytesRead;
+
+        @Label("Objects Written")
+        long objectsWritten;
+
+        @Label("Object Bytes Written")
+        long objectBytesWritten;
+
+        @Label("Hashes")
+        long hashes;
+
+        @Label("Bytes Hashed")
+        long bytesHashed;
+
+        @Label("Directories Listed")
+        long directoriesListed;
+
+        @Label("Cache Hits")
+        long cacheHits;
+    }
+}
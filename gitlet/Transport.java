@@ -0,0 +1,38 @@
+package gitlet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ *  Represents the connection between the local repository and a remote one.
+ *  A transport advertises the remote's branches, brings down the objects the
+ *  local repository is missing, and sends up the objects the remote is missing.
+ *
+ *  @author Collin Bowers
+ */
+public interface Transport {
+
+    /** Return the commit SHA1 ID of every branch in the remote repository, keyed by branch name. */
+    Map<String, String> listRefs();
+
+    /** Bring every commit and blob reachable from WANTS that is not reachable
+     *  from HAVES into the local repository as a single pack. CLAIM is asked
+     *  about the SHA1 ID of each missing object before it is transferred;
+     *  objects it refuses are left to another transfer running alongside.
+     *  If DEPTH is positive, only that many generations of history are
+     *  transferred, and if BLOBLIMIT is not negative, blobs stored in more
+     *  than that many bytes are left on the remote. Returns the commits
+     *  whose parents were cut off by DEPTH. */
+    List<String> fetch(Collection<String> wants, Collection<String> haves, Predicate<String> claim,
+                       int depth, long blobLimit);
+
+    /** Bring the given {type, SHA1 ID} objects into the local repository as a single pack. */
+    void fetchObjects(List<String[]> objects);
+
+    /** Send every commit and blob reachable from NEWSHA1 that the remote is
+     *  missing, then move the remote branch BRANCHNAME from OLDSHA1 (null if the
+     *  branch does not exist yet) to NEWSHA1. */
+    void push(String branchName, String oldSHA1, String newSHA1);
+}
@@ -1,9 +1,11 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -11,11 +13,9 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -36,24 +36,18 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
+        try (Trace span = Trace.span("sha1")) {
+            Hasher hasher = Hasher.start();
             for (Object val : vals) {
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    hasher.update((byte[]) val);
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    hasher.update((String) val);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return hasher.finish().name();
         }
     }
 
@@ -97,8 +91,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
-        try {
-            return Files.readAllBytes(file.toPath());
+        try (Trace span = Trace.span("readContents")) {
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.Counter.FILES_READ, 1);
+            Trace.count(Trace.Counter.FILE_BYTES_READ, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -113,38 +110,75 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  The bytes are first written to a
+     *  temporary file beside FILE and flushed to disk, which is then renamed
+     *  over FILE, so a crash leaves either the old or the new contents and
+     *  never a truncated file.  Throws IllegalArgumentException in case of
+     *  problems. */
     static void writeContents(File file, Object... contents) {
-        try {
-            if (file.isDirectory()) {
-                throw
-                    new IllegalArgumentException("cannot overwrite directory");
+        if (file.isDirectory()) {
+            throw
+                new IllegalArgumentException("cannot overwrite directory");
+        }
+        File temp = null;
+        try (Trace span = Trace.span("writeContents")) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            temp = File.createTempFile("." + file.getName() + "-", ".tmp", dir);
+            writeSynced(temp, contents);
+            renameAtomically(temp, file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+        }
+    }
+
+    /** Write the result of concatenating the bytes in CONTENTS directly to
+     *  FILE and force them to disk before returning.  Each object in CONTENTS
+     *  may be either a String or a byte array.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void writeSynced(File file, Object... contents) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            BufferedOutputStream str = new BufferedOutputStream(out);
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = (obj instanceof byte[]) ? (byte[]) obj
+                        : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                Trace.count(Trace.Counter.FILE_BYTES_WRITTEN, bytes.length);
             }
-            str.close();
+            Trace.count(Trace.Counter.FILES_WRITTEN, 1);
+            str.flush();
+            out.getChannel().force(true);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Rename FROM to TO in a single step, replacing TO if it exists.
+     *  Throws IllegalArgumentException in case of problems. */
+    static void renameAtomically(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
+        try (Trace span = Trace.span("readObject")) {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.count(Trace.Counter.OBJECTS_READ, 1);
+            Trace.count(Trace.Counter.OBJECT_BYTES_READ, file.length());
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -154,7 +188,12 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        try (Trace span = Trace.span("writeObject")) {
+            byte[] contents = serialize(obj);
+            writeContents(file, contents);
+            Trace.count(Trace.Counter.OBJECTS_WRITTEN, 1);
+            Trace.count(Trace.Counter.OBJECT_BYTES_WRITTEN, contents.length);
+        }
     }
 
     /* DIRECTORIES */
@@ -172,12 +211,15 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
-        if (files == null) {
-            return null;
-        } else {
-            Arrays.sort(files);
-            return Arrays.asList(files);
+        try (Trace span = Trace.span("plainFilenamesIn")) {
+            String[] files = dir.list(PLAIN_FILES);
+            if (files == null) {
+                return null;
+            } else {
+                Trace.count(Trace.Counter.DIRECTORIES_LISTED, 1);
+                Arrays.sort(files);
+                return Arrays.asList(files);
+            }
         }
     }
 
@@ -209,7 +251,7 @@ class Utils {
 
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
-        try {
+        try (Trace span = Trace.span("serialize")) {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
@@ -220,6 +262,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T read from the serialized BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (Trace span = Trace.span("deserialize")) {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
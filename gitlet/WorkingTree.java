@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import static gitlet.Utils.*;
+
+/**
+ *  Provides access to the files in the working directory, including those
+ *  in subdirectories. Paths are relative to the top of the working directory
+ *  and separated by /. Files and directories matched by .gitletignore are
+ *  left out of every walk, and an ignored directory is never entered, so a
+ *  walk only costs as much as the files that are not ignored.
+ *
+ *  @author Collin Bowers
+ */
+public class WorkingTree {
+
+    public static final String IGNORE_FILE_NAME = ".gitletignore";
+
+    /** Receives the entries found by a walk. */
+    public interface Visitor {
+        /** Called with the PATH and ATTRIBUTES of each plain file. */
+        void file(String path, BasicFileAttributes attributes);
+
+        /** Called with the PATH and location DIR of each directory before its
+         *  contents; PATH is empty for the top of the walk. */
+        default void directory(String path, Path dir) {
+        }
+    }
+
+    /** Return the ignore rules of the working directory. */
+    public static IgnoreRules ignoreRules() {
+        return IgnoreRules.load(join(Repository.CWD, IGNORE_FILE_NAME));
+    }
+
+    /** Return every plain file in the working directory that is not ignored,
+     *  mapped to its stat information, in path order. */
+    public static TreeMap<String, BasicFileAttributes> files() {
+        TreeMap<String, BasicFileAttributes> files = new TreeMap<>();
+        walk("", ignoreRules(), files::put);
+        return files;
+    }
+
+    /** Visit every plain file and directory that RULES do not ignore below the
+     *  directory PREFIX, which is empty for the whole working directory or a
+     *  path ending with /, calling VISITOR for each. Cookie files and the
+     *  .gitlet directory are skipped. */
+    public static void walk(String prefix, IgnoreRules rules, Visitor visitor) {
+        IgnoreRules.State start = rules.start();
+        if (!prefix.isEmpty()) {
+            for (String component : prefix.split("/")) {
+                start = rules.step(start, component);
+            }
+        }
+        ArrayList<IgnoreRules.State> states = new ArrayList<>();
+        ArrayList<String> paths = new ArrayList<>();
+        states.add(start);
+        paths.add(prefix);
+        Path top = join(Repository.CWD, prefix).toPath();
+
+        try (Trace span = Trace.span("walkWorkingTree")) {
+            Files.walkFileTree(top, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    Trace.count(Trace.Counter.DIRECTORIES_LISTED, 1);
+                    if (dir.equals(top)) {
+                        visitor.directory(prefix, dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String name = dir.getFileName().toString();
+                    String parent = paths.get(paths.size() - 1);
+                    if (parent.isEmpty() && name.equals(Repository.GITLET_DIR.getName())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    IgnoreRules.State state = rules.step(states.get(states.size() - 1), name);
+                    if (IgnoreRules.isIgnored(state, true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    String path = parent + name + "/";
+                    states.add(state);
+                    paths.add(path);
+                    visitor.directory(path, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    String name = file.getFileName().toString();
+                    if (!attributes.isRegularFile() || name.startsWith(FsMonitor.COOKIE_PREFIX)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    IgnoreRules.State state = rules.step(states.get(states.size() - 1), name);
+                    if (!IgnoreRules.isIgnored(state, false)) {
+                        visitor.file(paths.get(paths.size() - 1) + name, attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException excp) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException excp) {
+                    if (!dir.equals(top)) {
+                        states.remove(states.size() - 1);
+                        paths.remove(paths.size() - 1);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw error("Unable to read %s: %s", top, excp.getMessage());
+        }
+    }
+
+    /** Return PATH with / separators and without a leading ./, or null if it
+     *  is absolute or leaves the working directory. */
+    public static String normalize(String path) {
+        path = path.replace(File.separatorChar, '/');
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        if (path.isEmpty() || path.startsWith("/")) {
+            return null;
+        }
+        for (String component : path.split("/")) {
+            if (component.equals("..")) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    /** Write CONTENTS to the file at PATH, creating its directories as needed. */
+    public static void writeFile(String path, String contents) {
+        writeContents(prepareFile(path), contents);
+    }
+
+    /** Write the contents of BLOB to the file at PATH as above, streaming
+     *  the chunks of a large file rather than reading it into memory. */
+    public static void writeFile(String path, Blob blob) {
+        blob.writeTo(prepareFile(path));
+    }
+
+    /** Return the file at PATH, creating the directories above it. */
+    private static File prepareFile(String path) {
+        File file = join(Repository.CWD, path);
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("Unable to create directory %s.", dir);
+        }
+        return file;
+    }
+
+    /** Delete the file at PATH if it exists, along with any directories above
+     *  it that are left empty. Refuses to delete anything outside a Gitlet
+     *  working directory. */
+    public static boolean deleteFile(String path) {
+        if (!Repository.GITLET_DIR.isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File file = join(Repository.CWD, path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File top = Repository.CWD.getAbsoluteFile();
+        for (File dir = file.getAbsoluteFile().getParentFile(); dir != null && !dir.equals(top);
+             dir = dir.getParentFile()) {
+            if (!dir.delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+}
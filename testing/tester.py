@@ -1,6 +1,8 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+from threading import Thread
+from queue import Queue, Empty
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
 from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
@@ -47,6 +49,9 @@ The instructions each have one of the following forms:
           intended to let you set up remote repositories.
    T N    Set the timeout for gitlet commands in the rest of this test to N
           seconds.
+   V VAR VALUE
+          Set the environment variable VAR to VALUE for gitlet commands in
+          the rest of this test.
    + NAME F
           Copy the contents of src/F into a file named NAME.
    - NAME
@@ -63,6 +68,14 @@ The instructions each have one of the following forms:
           Python regular expressions and matched accordingly. The directory
           or JAR file containing the gitlet.Main program is assumed to be
           in directory DIR specifed by --progdir (default is ..).
+   & COMMAND OPERANDS
+   LINE1
+   ...
+   <<<
+          Start gitlet.Main with COMMAND OPERANDS in the background, as for
+          a server, and compare the first lines it prints with LINE1, etc.,
+          as for ">".  The command keeps running until the end of the test,
+          when it is killed.
    = NAME F
           Check that the file named NAME is identical to src/F, and report an
           error if not.
@@ -156,7 +169,7 @@ def doCopy(dest, src, dir):
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
 
-def doExecute(cmnd, dir, timeout, line_num):
+def doExecute(cmnd, dir, timeout, env, line_num):
     here = getcwd()
     out = ""
     try:
@@ -176,7 +189,7 @@ def doExecute(cmnd, dir, timeout, line_num):
                 full_cmnd = "{} {} {} {}".format(JAVA_COMMAND, JVM_OPTIONS, GITLET_CLASS, cmnd)
                 timeout, skip_first_line = None, True
 
-        out = doCommand(full_cmnd, timeout, skip_first_line)
+        out = doCommand(full_cmnd, timeout, env, skip_first_line)
         return "OK", out
     except CalledProcessError as excp:
         return ("java gitlet.Main exited with code {}".format(excp.args[0]),
@@ -186,9 +199,31 @@ def doExecute(cmnd, dir, timeout, line_num):
     finally:
         chdir(here)
 
-def doCommand(full_cmnd, timeout, skip_first_line=False):
+def doStart(cmnd, dir, timeout, env, num_lines):
+    full_cmnd = "{} {} {}".format(JAVA_COMMAND, GITLET_CLASS, cmnd)
+    proc = Popen(full_cmnd, shell=True, universal_newlines=True, cwd=dir,
+                 stdin=DEVNULL, stdout=PIPE, stderr=STDOUT, env=env)
+    lines = Queue()
+    def read_lines():
+        for line in proc.stdout:
+            lines.put(line)
+        lines.put("")
+    Thread(target=read_lines, daemon=True).start()
+    out = ""
+    try:
+        for _ in range(num_lines):
+            line = lines.get(timeout=timeout)
+            if line == "":
+                break
+            out += line
+    except Empty:
+        return "timeout", out, proc
+    return "OK", out, proc
+
+def doCommand(full_cmnd, timeout, env=None, skip_first_line=False):
     out = check_output(full_cmnd, shell=True, universal_newlines=True,
-                        stdin=DEVNULL, stderr=STDOUT, timeout=timeout)
+                        stdin=DEVNULL, stderr=STDOUT, timeout=timeout,
+                        env=env)
     if skip_first_line:
         out = out.split("\n", 1)[1]
 
@@ -280,6 +315,8 @@ def doTest(test):
         print(DEBUG_MSG)
 
     timeout = TIMEOUT
+    env = None
+    started = []
     defns = {}
 
     def do_substs(L):
@@ -334,12 +371,17 @@ def doTest(test):
                     timeout = float(Group(1))
                 except:
                     ValueError("bad time: {}".format(line))
+            elif Match(r'V\s*(\S+)\s+(\S+)', line):
+                if env is None:
+                    env = dict(environ)
+                env[Group(1)] = Group(2)
             elif Match(r'\+\s*(\S+)\s+(\S+)', line):
                 doCopy(Group(1), Group(2), cdir)
             elif Match(r'-\s*(\S+)', line):
                 doDelete(Group(1), cdir)
-            elif Match(r'>\s*(.*)', line):
-                cmnd = Group(1)
+            elif Match(r'([>&])\s*(.*)', line):
+                background = Group(1) == "&"
+                cmnd = Group(2)
                 expected = []
                 while True:
                     line_num, L = next(inp, (line_num, ''))
@@ -351,7 +393,12 @@ def doTest(test):
                         is_regexp = Group(1)
                         break
                     expected.append(do_substs(L))
-                msg, out = doExecute(cmnd, cdir, timeout, line_num)
+                if background:
+                    msg, out, proc = doStart(cmnd, cdir, timeout, env,
+                                             len(expected))
+                    started.append(proc)
+                else:
+                    msg, out = doExecute(cmnd, cdir, timeout, env, line_num)
                 if verbose:
                     if out:
                         print(re.sub(r'(?m)^', '- ', chop_nl(out)))
@@ -385,6 +432,9 @@ def doTest(test):
             else:
                 raise ValueError("bad test line at {}".format(line_num))
     finally:
+        for proc in started:
+            proc.kill()
+            proc.wait()
         if not keep:
             cleanTempDir(tmpdir)
 